@@ -0,0 +1,154 @@
+package net.thornydev;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Parses a JSON document that holds one huge array without ever holding the array: its
+ * entries are parsed one at a time and handed to an {@link ElementHandler}, and the array
+ * itself is left empty in the returned document.
+ *
+ * The array is found by its key path from the document root, e.g.
+ * <code>KeyedResponse/Response/records</code> for
+ * <code>{"KeyedResponse":{"Response":{"records":[ ... ]}}}</code>.  Everything outside the
+ * array is parsed as usual, so memory is bounded by the rest of the document plus the
+ * largest array entry.  The streamed array is never held, so the array length limit does not
+ * apply to it, only to the arrays in its entries.
+ */
+public class ArrayStreamParser {
+
+	/**
+	 * Receives the entries of the streamed array in document order.
+	 */
+	public interface ElementHandler {
+		void element(Object value) throws Exception;
+	}
+
+	private final String[] path;
+	private final DocumentParser parser;
+	private final ElementHandler handler;
+	private long elements = 0;
+
+	/**
+	 * @param path the keys leading from the document root to the array
+	 * @param parser parses the keys and the values off the path, within its limits
+	 * @param handler receives every entry of the array
+	 */
+	public ArrayStreamParser(String[] path, DocumentParser parser, ElementHandler handler) {
+		if (path.length == 0) {
+			throw new IllegalArgumentException("Empty array path.");
+		}
+		this.path = path.clone();
+		this.parser = parser;
+		this.handler = handler;
+	}
+
+	/**
+	 * Parses one document.
+	 *
+	 * @return the document, with the streamed array left empty
+	 * @throws JSONException if the document does not parse correctly
+	 * @throws Exception whatever the handler throws
+	 */
+	public JSONObject parse(JSONTokener x) throws Exception {
+		return parseObject(x, 0);
+	}
+
+	/**
+	 * @return the number of array entries handed to the handler so far
+	 */
+	public long getElements() {
+		return elements;
+	}
+
+	/**
+	 * Same grammar as {@link JSONObject#JSONObject(JSONTokener)}, except for the values on the array path.
+	 */
+	private JSONObject parseObject(JSONTokener x, int depth) throws Exception {
+		JSONObject o = new JSONObject();
+		if (x.nextClean() != '{') {
+			throw x.syntaxError("A JSONObject text must begin with '{'");
+		}
+		for (;;) {
+			char c = x.nextClean();
+			switch (c) {
+			case 0:
+				throw x.syntaxError("A JSONObject text must end with '}'");
+			case '}':
+				return o;
+			default:
+				x.back();
+			}
+			parser.checkKeys(x, o);
+			String key = parser.nextKey(x);
+			o.putOnce(key, key.equals(path[depth]) ? parseOnPath(x, depth) : parser.nextValue(x, depth + 1));
+
+			switch (x.nextClean()) {
+			case ';':
+			case ',':
+				if (x.nextClean() == '}') {
+					return o;
+				}
+				x.back();
+				break;
+			case '}':
+				return o;
+			default:
+				throw x.syntaxError("Expected a ',' or '}'");
+			}
+		}
+	}
+
+	private Object parseOnPath(JSONTokener x, int depth) throws Exception {
+		char c = x.nextClean();
+		x.back();
+		if (depth < path.length - 1 && c == '{') {
+			return parseObject(x, depth + 1);
+		}
+		if (depth == path.length - 1 && c == '[') {
+			streamArray(x);
+			return new JSONArray();
+		}
+		return parser.nextValue(x, depth + 1); // not the shape we were looking for, parse it as usual
+	}
+
+	/**
+	 * Same grammar as {@link JSONArray#JSONArray(JSONTokener)}, but every entry goes to the handler.
+	 */
+	private void streamArray(JSONTokener x) throws Exception {
+		x.nextClean(); // '['
+		if (x.nextClean() == ']') {
+			return;
+		}
+		x.back();
+		for (;;) {
+			if (x.nextClean() == ',') {
+				x.back();
+				handle(JSONObject.NULL);
+			}
+			else {
+				x.back();
+				handle(parser.nextValue(x, path.length + 1));
+			}
+			switch (x.nextClean()) {
+			case ',':
+				if (x.nextClean() == ']') {
+					return;
+				}
+				x.back();
+				break;
+			case ']':
+				return;
+			default:
+				throw x.syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
+	private void handle(Object value) throws Exception {
+		elements++;
+		handler.element(value);
+	}
+}
@@ -0,0 +1,191 @@
+package net.thornydev;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.json.CDL;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Generates the DDL of many tables in one JVM, so JIT warm-up and startup are paid once
+ * for a whole batch instead of once per table.
+ *
+ * The manifest lists one table per entry, either as a JSON array of objects or as CSV with
+ * a header row.  Entry keys are the {@link JsonHiveSchema} option names without the dash:
+ * <pre>
+ *   [{"input": "orders.xml", "output": "orders.ddl", "tableName": "orders", "inputType": "XML",
+ *     "typePaths": ["Response", "Order/Item@sku:x2"]},
+ *    {"input": "events.json", "output": "events.ddl", "discriminator": "type"}]
+ * </pre>
+ * List values are joined with commas.  Flags are given as <code>true</code> or
+ * <code>false</code> (or yes/no, 1/0, on/off, and an empty CSV cell is false); anything else
+ * fails the entry.  Relative paths are resolved against the manifest's directory.
+ *
+ * Tables run concurrently on a shared worker pool, largest input first, so one big input
+ * does not end up running alone after all the small ones are done.  Each table's parallel
+ * stages run on the same pool, so a batch never has more than <code>threads</code> workers.
+ */
+public class BatchRunner {
+	private static final List<String> TRUE = Arrays.asList("true", "yes", "y", "1", "on");
+	private static final List<String> FALSE = Arrays.asList("false", "no", "n", "0", "off", "");
+
+	private final File baseDir;
+	private final int threads;
+
+	public BatchRunner(File baseDir, int threads) {
+		this.baseDir = baseDir;
+		this.threads = threads;
+	}
+
+	/**
+	 * Reads a JSON (array of objects) or CSV (with a header row) manifest.
+	 */
+	public static JSONArray readManifest(File manifest) throws IOException {
+		String text = new String(Files.readAllBytes(manifest.toPath()), StandardCharsets.UTF_8);
+		if (manifest.getName().toLowerCase().endsWith(".csv")) {
+			JSONArray entries = CDL.toJSONArray(text);
+			return (entries == null ? new JSONArray() : entries);
+		}
+		return new JSONArray(text);
+	}
+
+	/**
+	 * Turns a manifest entry into the command line arguments of the same run.
+	 */
+	static String[] toArgs(JSONObject entry) {
+		List<String> args = new ArrayList<String>();
+		Options options = JsonHiveSchema.options();
+		Iterator<String> keys = entry.keys();
+		while (keys.hasNext()) {
+			String key = keys.next();
+			Object value = entry.opt(key);
+			Option option = options.getOption(key);
+			if (option != null && !option.hasArg()) {
+				if (flag(key, value)) {
+					args.add("-" + key);
+				}
+				continue;
+			}
+			if (value.toString().isEmpty()) {
+				continue; // empty CSV cell
+			}
+			args.add("-" + key);
+			if (value instanceof JSONArray) {
+				JSONArray list = (JSONArray)value;
+				StringBuilder sb = new StringBuilder();
+				for (int i = 0; i < list.length(); i++) {
+					sb.append(i > 0 ? "," : "").append(list.get(i));
+				}
+				args.add(sb.toString());
+			}
+			else {
+				args.add(value.toString());
+			}
+		}
+		return args.toArray(new String[args.size()]);
+	}
+
+	/**
+	 * Parses the value of a flag strictly, so a typo is not taken as either.
+	 */
+	private static boolean flag(String key, Object value) {
+		String text = value.toString().trim().toLowerCase();
+		if (TRUE.contains(text)) {
+			return true;
+		}
+		if (FALSE.contains(text)) {
+			return false;
+		}
+		throw new IllegalArgumentException(key + " expects true or false, not " + value + ".");
+	}
+
+	/**
+	 * Runs every entry of the manifest and reports each table on stdout.
+	 *
+	 * @return the number of tables that failed
+	 */
+	public int run(JSONArray entries) throws InterruptedException {
+		List<CommandLine> jobs = new ArrayList<CommandLine>();
+		int failures = 0;
+		for (int i = 0; i < entries.length(); i++) {
+			try {
+				CommandLine cmd = new DefaultParser().parse(JsonHiveSchema.options(), toArgs(entries.getJSONObject(i)));
+				if ((!cmd.hasOption("input") && !cmd.hasOption("merge")) || !cmd.hasOption("output")) {
+					throw new IllegalArgumentException("Input & Output files must be specified.");
+				}
+				if (cmd.hasOption("manifest") || cmd.hasOption("watch")) {
+					throw new IllegalArgumentException("An entry cannot run another -manifest or -watch.");
+				}
+				jobs.add(cmd);
+			}
+			catch (Exception e) {
+				System.err.println("ERROR: manifest entry " + (i + 1) + ": " + e.getMessage());
+				failures++;
+			}
+		}
+
+		// Largest first: the longest jobs start while there are still small ones to fill the other threads
+		Collections.sort(jobs, new Comparator<CommandLine>() {
+			public int compare(CommandLine a, CommandLine b) {
+				return Long.compare(inputSize(b), inputSize(a));
+			}
+		});
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<String>> results = new ArrayList<Future<String>>();
+		try {
+			for (final CommandLine cmd : jobs) {
+				results.add(pool.submit(new Callable<String>() {
+					public String call() throws Exception {
+						long start = System.currentTimeMillis();
+						JsonHiveSchema.run(cmd, baseDir, pool);
+						return "OK " + source(cmd) + " -> " + cmd.getOptionValue("output") + " (" + (System.currentTimeMillis() - start) + " ms)";
+					}
+				}));
+			}
+			for (int i = 0; i < results.size(); i++) {
+				try {
+					System.out.println(results.get(i).get());
+				}
+				catch (ExecutionException e) {
+					System.err.println("ERROR: " + source(jobs.get(i)) + ": " + e.getCause());
+					failures++;
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+		return failures;
+	}
+
+	private static String source(CommandLine cmd) {
+		return cmd.getOptionValue(cmd.hasOption("merge") ? "merge" : "input");
+	}
+
+	private long inputSize(CommandLine cmd) {
+		long size = 0;
+		for (File file : JsonHiveSchema.files(baseDir, cmd.getOptionValue(cmd.hasOption("merge") ? "merge" : "input"))) {
+			size += file.length();
+		}
+		return size;
+	}
+}
@@ -0,0 +1,168 @@
+package net.thornydev;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns JSON keys and XML tags into Hive identifiers: ':' becomes '_', '-' and '.' are dropped,
+ * and Hive's reserved keywords are quoted with backticks.  Column names are lowercased, struct
+ * field names keep their case.
+ *
+ * The same few keys are normalized over and over, so an instance caches its results.  A
+ * {@link SchemaInferencer} owns one for as long as it lives, which in a server is as long as
+ * the process, and renders every run of its config with it.  So the caches stop growing at
+ * {@link #MAX_CACHED} keys each, and keys beyond that are normalized on every call.
+ *
+ * Different keys can normalize to the same identifier, e.g. <code>a-b</code> and <code>ab</code>.
+ * Hive rejects a table or struct with such duplicates, so {@link #collisions} lists them.
+ */
+public final class ColumnNames {
+	private static final Set<String> RESERVED = new HashSet<String>(Arrays.asList(new String[] {"ALL","ALTER","AND","ARRAY","AS","AUTHORIZATION","BETWEEN","BIGINT","BINARY","BOOLEAN","BOTH","BY","CASE","CAST","CHAR","COLUMN","CONF","CREATE","CROSS","CUBE","CURRENT","CURRENT_DATE","CURRENT_TIMESTAMP","CURSOR","DATABASE","DATE","DECIMAL","DELETE","DESCRIBE","DISTINCT","DOUBLE","DROP","ELSE","END","EXCHANGE","EXISTS","EXTENDED","EXTERNAL","FALSE","FETCH","FLOAT","FOLLOWING","FOR","FROM","FULL","FUNCTION","GRANT","GROUP","GROUPING","HAVING","IF","IMPORT","IN","INNER","INSERT","INT","INTERSECT","INTERVAL","INTO","IS","JOIN","LATERAL","LEFT","LESS","LIKE","LOCAL","MACRO","MAP","MORE","NONE","NOT","NULL","OF","ON","OR","ORDER","OUT","OUTER","OVER","PARTIALSCAN","PARTITION","PERCENT","PRECEDING","PRESERVE","PROCEDURE","RANGE","READS","REDUCE","REGEXP","REVOKE","RIGHT","RLIKE","ROLLUP","ROW","ROWS","SELECT","SET","SMALLINT","TABLE","TABLESAMPLE","THEN","TIMESTAMP","TO","TRANSFORM","TRIGGER","TRUE","TRUNCATE","UNBOUNDED","UNION","UNIQUEJOIN","UPDATE","USER","USING","VALUES","VARCHAR","WHEN","WHERE","WINDOW","WITH"}));
+
+	/**
+	 * Case insensitive, and keys that only differ in case in their natural order.
+	 */
+	private static final Comparator<String> COLUMN_ORDER = new Comparator<String>() {
+		public int compare(String a, String b) {
+			int c = String.CASE_INSENSITIVE_ORDER.compare(a, b);
+			return (c != 0 ? c : a.compareTo(b));
+		}
+	};
+
+	static final int MAX_CACHED = 10000;
+
+	private final int maxCached;
+	private final Map<String, String> columns = new ConcurrentHashMap<String, String>();
+	private final Map<String, String> fields = new ConcurrentHashMap<String, String>();
+	private final Map<String, String> lowercase = new ConcurrentHashMap<String, String>();
+
+	public ColumnNames() {
+		this(MAX_CACHED);
+	}
+
+	ColumnNames(int maxCached) {
+		this.maxCached = maxCached;
+	}
+
+	/**
+	 * @return true if the word is a Hive reserved keyword, in any case
+	 */
+	public static boolean isReserved(String word) {
+		return RESERVED.contains(word.toUpperCase());
+	}
+
+	/**
+	 * @return the lowercased, quoted if need be, column name of a top-level key
+	 */
+	public String column(String key) {
+		String name = columns.get(key);
+		if (name == null) {
+			name = quote(strip(key).toLowerCase(), key);
+			cache(columns, key, name);
+		}
+		return name;
+	}
+
+	/**
+	 * @return the quoted if need be struct field name of a nested key
+	 */
+	public String field(String key) {
+		String name = fields.get(key);
+		if (name == null) {
+			name = quote(strip(key), key);
+			cache(fields, key, name);
+		}
+		return name;
+	}
+
+	/**
+	 * @return the key lowercased, as the view refers to it
+	 */
+	public String lower(String key) {
+		String name = lowercase.get(key);
+		if (name == null) {
+			name = key.toLowerCase();
+			cache(lowercase, key, name);
+		}
+		return name;
+	}
+
+	private void cache(Map<String, String> cache, String key, String name) {
+		// racing threads may take a cache a few keys past the limit, which is harmless
+		if (cache.size() < maxCached) {
+			cache.put(key, name);
+		}
+	}
+
+	private static String strip(String key) {
+		return key.replace(":", "_").replace("-", "").replace(".", "");
+	}
+
+	private static String quote(String name, String key) {
+		return (isReserved(key) ? "`" + name + "`" : name);
+	}
+
+	/**
+	 * Lists the keys of a table's schema that normalize to the same column or struct field,
+	 * compared case insensitively as Hive does.  A struct's collisions come before those of
+	 * the structs nested in it, and the keys of a collision are in column order.
+	 *
+	 * @return one line per collision, e.g. "column ab in table events: keys a-b, ab", empty if there are none
+	 */
+	public List<String> collisions(String tableName, SchemaNode schema) {
+		List<String> collisions = new ArrayList<String>();
+		// structs still to check, next first: the node, its dotted path (null for the table's
+		// columns) and the key it belongs to, whose name XML text content takes
+		Deque<Object[]> work = new ArrayDeque<Object[]>();
+		work.push(new Object[] {schema, null, null});
+		while (!work.isEmpty()) {
+			Object[] item = work.pop();
+			SchemaNode node = (SchemaNode)item[0];
+			String path = (String)item[1];
+			String parent = (String)item[2];
+			while (node.isArray() && node.getElement() != null) {
+				node = node.getElement();
+			}
+			if (!node.isStruct()) {
+				continue;
+			}
+			List<String> keys = new ArrayList<String>(node.getChildNames());
+			Collections.sort(keys, COLUMN_ORDER);
+			Map<String, List<String>> byName = new LinkedHashMap<String, List<String>>();
+			for (String k : keys) {
+				String name = (parent != null && k.equals("content") ? field(parent) : field(k)).toLowerCase();
+				List<String> same = byName.get(name);
+				if (same == null) {
+					same = new ArrayList<String>();
+					byName.put(name, same);
+				}
+				same.add(k);
+			}
+			for (Map.Entry<String, List<String>> entry : byName.entrySet()) {
+				if (entry.getValue().size() > 1) {
+					StringBuilder sb = new StringBuilder();
+					for (String k : entry.getValue()) {
+						sb.append(sb.length() > 0 ? ", " : "").append(k);
+					}
+					collisions.add((path == null ? "column " : "field ") + entry.getKey() + (path == null ? "" : " of " + path)
+							+ " in table " + tableName + ": keys " + sb);
+				}
+			}
+			for (int i = keys.size() - 1; i >= 0; i--) {
+				String k = keys.get(i);
+				work.push(new Object[] {node.getChild(k), (path == null ? k : path + "." + k), k});
+			}
+		}
+		return collisions;
+	}
+}
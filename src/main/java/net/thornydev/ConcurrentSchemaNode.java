@@ -0,0 +1,227 @@
+package net.thornydev;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * A {@link SchemaNode} that many threads add records to directly, so worker threads share
+ * one schema trie instead of each building its own copy to be merged at the end.
+ *
+ * Nothing is locked on the path of an existing key: child lookups are plain
+ * <code>ConcurrentHashMap</code> reads, the kind flags are only compare-and-set when a new
+ * kind shows up, and value counts are <code>LongAdder</code>s.  New children, child maps and
+ * array element nodes are published with <code>putIfAbsent</code> or a compare-and-set,
+ * whichever thread wins the race supplies the node everyone uses.
+ *
+ * Rendering works on a {@link #snapshot()}, which also folds single values seen at array
+ * paths into the element the way {@link SchemaNode#add} does eagerly.
+ */
+public class ConcurrentSchemaNode {
+	private static final AtomicIntegerFieldUpdater<ConcurrentSchemaNode> KINDS =
+			AtomicIntegerFieldUpdater.newUpdater(ConcurrentSchemaNode.class, "kinds");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<ConcurrentSchemaNode, ConcurrentHashMap> CHILDREN =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentSchemaNode.class, ConcurrentHashMap.class, "children");
+	private static final AtomicReferenceFieldUpdater<ConcurrentSchemaNode, ConcurrentSchemaNode> ELEMENT =
+			AtomicReferenceFieldUpdater.newUpdater(ConcurrentSchemaNode.class, ConcurrentSchemaNode.class, "element");
+
+	private volatile int kinds = 0;
+	// non-null values seen here, and how many of them were arrays
+	private final LongAdder count = new LongAdder();
+	private final LongAdder arrays = new LongAdder();
+	private volatile ConcurrentHashMap<String, ConcurrentSchemaNode> children = null;
+	private volatile ConcurrentSchemaNode element = null;
+
+	/**
+	 * Merges one parsed JSON value into this node.  Safe to call from any number of threads.
+	 * The value is walked with an explicit stack, so deep values need no deep thread stack.
+	 *
+	 * @return true if this call recorded a new path or a new value kind
+	 */
+	public boolean add(Object value) {
+		boolean changed = false;
+		// the nodes still to add a value to, and those values, next last
+		List<ConcurrentSchemaNode> nodes = new ArrayList<ConcurrentSchemaNode>();
+		List<Object> values = new ArrayList<Object>();
+		nodes.add(this);
+		values.add(value);
+		while (!nodes.isEmpty()) {
+			ConcurrentSchemaNode node = nodes.remove(nodes.size() - 1);
+			Object v = values.remove(values.size() - 1);
+			if (v instanceof JSONArray) {
+				changed |= node.addKind(SchemaNode.ARRAY);
+				node.count.increment();
+				node.arrays.increment();
+				JSONArray a = (JSONArray)v;
+				if (a.length() > 0) {
+					ConcurrentSchemaNode e = node.element();
+					for (int i = 0; i < a.length(); i++) {
+						nodes.add(e);
+						values.add(a.opt(i));
+					}
+				}
+			}
+			else if (v instanceof JSONObject) {
+				changed |= node.addKind(SchemaNode.STRUCT);
+				node.count.increment();
+				JSONObject o = (JSONObject)v;
+				ConcurrentHashMap<String, ConcurrentSchemaNode> map = node.children();
+				for (String k : o.keySet()) {
+					ConcurrentSchemaNode child = map.get(k);
+					if (child == null) {
+						ConcurrentSchemaNode created = new ConcurrentSchemaNode();
+						child = map.putIfAbsent(k, created);
+						if (child == null) {
+							child = created;
+							changed = true;
+						}
+					}
+					nodes.add(child);
+					values.add(o.opt(k));
+				}
+			}
+			else {
+				int kind = SchemaNode.kindOf(v);
+				changed |= node.addKind(kind);
+				if (kind != SchemaNode.NULL) {
+					node.count.increment();
+				}
+			}
+		}
+		return changed;
+	}
+
+	private boolean addKind(int kind) {
+		for (;;) {
+			int current = kinds;
+			if ((current & kind) == kind) {
+				return false;
+			}
+			if (KINDS.compareAndSet(this, current, current | kind)) {
+				return true;
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private ConcurrentHashMap<String, ConcurrentSchemaNode> children() {
+		ConcurrentHashMap<String, ConcurrentSchemaNode> map = children;
+		if (map == null) {
+			CHILDREN.compareAndSet(this, null, new ConcurrentHashMap<String, ConcurrentSchemaNode>());
+			map = children;
+		}
+		return map;
+	}
+
+	private ConcurrentSchemaNode element() {
+		ConcurrentSchemaNode e = element;
+		if (e == null) {
+			ELEMENT.compareAndSet(this, null, new ConcurrentSchemaNode());
+			e = element;
+		}
+		return e;
+	}
+
+	/**
+	 * Copies the current state into a plain {@link SchemaNode} for rendering or merging.
+	 * Values added while the snapshot is taken may or may not be included, and a value may be
+	 * included in part: a struct whose kind is read before any of its fields, or an array
+	 * before its entries.  The snapshot never holds fields or entries without the kind that
+	 * goes with them.  Once every add has returned, the snapshot is the same trie a
+	 * {@link SchemaNode} would have built from the same values.
+	 *
+	 * The state is read top down with an explicit stack, and the nodes are built bottom up
+	 * from that, since folding a node's single values into its element needs the folded
+	 * nodes below it.
+	 */
+	public SchemaNode snapshot() {
+		// every node read so far, parents before their children
+		List<Copy> copies = new ArrayList<Copy>();
+		// the nodes still to read and their copies, next last
+		List<ConcurrentSchemaNode> nodes = new ArrayList<ConcurrentSchemaNode>();
+		List<Copy> pending = new ArrayList<Copy>();
+		nodes.add(this);
+		pending.add(new Copy(null, null));
+		while (!nodes.isEmpty()) {
+			ConcurrentSchemaNode node = nodes.remove(nodes.size() - 1);
+			Copy copy = pending.remove(pending.size() - 1);
+			// children and element before kinds: add sets a kind before it publishes the
+			// children or element that go with it, so every one read here has its kind
+			ConcurrentHashMap<String, ConcurrentSchemaNode> map = node.children;
+			if (map != null) {
+				copy.children = new HashMap<String, SchemaNode>(map.size() * 4 / 3 + 1);
+				for (Map.Entry<String, ConcurrentSchemaNode> e : map.entrySet()) {
+					nodes.add(e.getValue());
+					pending.add(new Copy(copy, e.getKey()));
+				}
+			}
+			ConcurrentSchemaNode e = node.element;
+			if (e != null) {
+				nodes.add(e);
+				pending.add(new Copy(copy, null));
+			}
+			copy.kinds = node.kinds;
+			copy.arrays = node.arrays.sum();
+			copy.count = node.count.sum();
+			copies.add(copy);
+		}
+		SchemaNode root = null;
+		for (int i = copies.size() - 1; i >= 0; i--) {
+			Copy copy = copies.get(i);
+			SchemaNode node = copy.build();
+			if (copy.parent == null) {
+				root = node;
+			}
+			else if (copy.name == null) {
+				copy.parent.element = node;
+			}
+			else {
+				copy.parent.children.put(copy.name, node);
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * One node of a snapshot, read but not built yet.
+	 */
+	private static final class Copy {
+		private final Copy parent;
+		private final String name; // null for an array element
+		private int kinds;
+		private long count;
+		private long arrays;
+		private Map<String, SchemaNode> children = null;
+		private SchemaNode element = null;
+
+		private Copy(Copy parent, String name) {
+			this.parent = parent;
+			this.name = name;
+		}
+
+		/**
+		 * Builds the node once everything below it is built, folding single values seen at
+		 * an array path into its element.  The merge counts them at both.
+		 */
+		private SchemaNode build() {
+			if ((kinds & SchemaNode.ARRAY) == 0) {
+				return new SchemaNode(kinds, count, children, null);
+			}
+			SchemaNode array = new SchemaNode(kinds & (SchemaNode.ARRAY | SchemaNode.NULL), arrays, null, element);
+			int single = kinds & ~(SchemaNode.ARRAY | SchemaNode.NULL);
+			if (single != 0) {
+				array.merge(new SchemaNode(single, count - arrays, children, null));
+			}
+			return array;
+		}
+	}
+}
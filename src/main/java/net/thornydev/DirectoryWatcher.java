@@ -0,0 +1,351 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Watches a landing directory (<code>-watch</code>) and infers every file that lands in it as
+ * soon as it is complete, merging its schema into a schema kept across runs, so a continuous
+ * feed is inferred within seconds of landing instead of by rescanning the directory.
+ *
+ * New files and partition directories are noticed through a {@link WatchService}.  There is no
+ * event for a file being closed, so a file is taken as complete once it has not been modified
+ * for the quiet period; files moved into the directory whole are complete at once.  Entries
+ * starting with '.' or '_' are skipped, as by <code>-input</code>.  Complete files are inferred
+ * on a pool of worker threads, each into its own {@link PartialSchema} that is then merged.
+ *
+ * The merged schema and the size and modification time of every file inferred are saved to the
+ * state file, so a restarted watcher only infers the files that are new or have changed since.
+ * The watching thread saves them between polls, at most every half quiet period and only if
+ * files were merged since the last save, so a burst of files costs one save, not one per file.
+ * A file that fails is not saved and is tried again once it changes.  A changed file is
+ * inferred again and merged on top, which can only widen the schema.  The DDL (or, with
+ * <code>-partial</code>, the partial schema) is rewritten, and a notice printed, only when the
+ * DDL actually changes; the output and state files are replaced whole through a temporary file.
+ */
+public class DirectoryWatcher {
+	public static final int STATE_VERSION = 1;
+
+	private final SchemaInferencer inferencer;
+	private final File dir;
+	private final File stateFile;
+	private final File outputFile;
+	private final boolean partialOutput;
+	private final int threads;
+	private final long quietMillis;
+	private final Quarantine quarantine;
+
+	// the state, guarded by this
+	private final PartialSchema schema;
+	private final Map<String, String> inferred = new HashMap<String, String>();
+	private final Set<String> running = new HashSet<String>();
+	// files merged since the state was last saved
+	private int merged = 0;
+
+	// the DDL last written, only touched by the watching thread once running
+	private String ddl;
+
+	// files noticed but not yet complete, only touched by the watching thread
+	private final Set<Path> pending = new LinkedHashSet<Path>();
+
+	/**
+	 * @param stateFile the file the state is kept in, read if it exists
+	 * @param outputFile the file to write the DDL to, null for standard output
+	 * @param partialOutput whether to write a partial schema instead of DDL
+	 * @param quietMillis how long a file must be left unmodified to count as complete
+	 * @param quarantine receives the records that fail to parse, null to skip the whole file
+	 */
+	public DirectoryWatcher(SchemaInferencer inferencer, File dir, File stateFile, File outputFile, boolean partialOutput,
+			int threads, long quietMillis, Quarantine quarantine) throws IOException {
+		this.inferencer = inferencer;
+		this.dir = dir;
+		this.stateFile = stateFile;
+		this.outputFile = outputFile;
+		this.partialOutput = partialOutput;
+		this.threads = threads;
+		this.quietMillis = quietMillis;
+		this.quarantine = quarantine;
+		this.schema = new PartialSchema(inferencer.getConfig().isXml());
+		if (stateFile.exists()) {
+			readState();
+			ddl = inferencer.render(schema);
+		}
+	}
+
+	/**
+	 * Infers the files already in the directory that are not in the state, then every file that
+	 * lands after them, until the thread is interrupted.
+	 */
+	public void run() throws IOException, InterruptedException {
+		WatchService watcher = FileSystems.getDefault().newWatchService();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			register(watcher, dir.toPath());
+			System.err.println("Watching " + dir + ", " + inferred.size() + " files already inferred.");
+			for (;;) {
+				WatchKey key = watcher.poll(Math.max(100, quietMillis / 2), TimeUnit.MILLISECONDS);
+				while (key != null) {
+					Path parent = (Path)key.watchable();
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							// events were lost, list the directories again (without reading any file)
+							register(watcher, dir.toPath());
+							continue;
+						}
+						Path path = parent.resolve((Path)event.context());
+						if (skipped(path)) {
+							continue;
+						}
+						if (Files.isDirectory(path)) {
+							// a new partition directory, files may have landed in it before it was registered
+							register(watcher, path);
+						}
+						else {
+							pending.add(path);
+						}
+					}
+					key.reset();
+					key = watcher.poll();
+				}
+				submitComplete(pool);
+				save();
+			}
+		}
+		finally {
+			pool.shutdownNow();
+			save(); // whatever was merged before the workers stopped
+			watcher.close();
+		}
+	}
+
+	private static boolean skipped(Path path) {
+		String name = path.getFileName().toString();
+		return name.startsWith(".") || name.startsWith("_");
+	}
+
+	/**
+	 * Watches a directory and the directories below it, and notes the files in them.
+	 */
+	private void register(WatchService watcher, Path path) throws IOException {
+		try {
+			path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		}
+		catch (NoSuchFileException e) {
+			if (path.equals(dir.toPath())) {
+				throw e;
+			}
+			return; // a partition directory deleted since it was noticed
+		}
+		File[] children = path.toFile().listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			if (skipped(child.toPath()) || child.isHidden()) {
+				continue;
+			}
+			if (child.isDirectory()) {
+				register(watcher, child.toPath());
+			}
+			else if (child.isFile()) {
+				pending.add(child.toPath());
+			}
+		}
+	}
+
+	/**
+	 * Hands the pending files that are complete, and not inferred as they are now, to the workers.
+	 */
+	private void submitComplete(ExecutorService pool) {
+		long now = System.currentTimeMillis();
+		for (Iterator<Path> i = pending.iterator(); i.hasNext();) {
+			final File file = i.next().toFile();
+			if (!file.isFile()) {
+				i.remove();
+				continue;
+			}
+			if (now - file.lastModified() < quietMillis) {
+				continue;
+			}
+			final String stamp = file.length() + " " + file.lastModified();
+			synchronized (this) {
+				if (running.contains(file.getPath())) {
+					// looked at again once it is done
+					continue;
+				}
+				i.remove();
+				if (stamp.equals(inferred.get(file.getPath()))) {
+					continue;
+				}
+				running.add(file.getPath());
+			}
+			pool.execute(new Runnable() {
+				public void run() {
+					inferFile(file, stamp);
+				}
+			});
+		}
+	}
+
+	private void inferFile(File file, String stamp) {
+		PartialSchema partial = null;
+		try {
+			SchemaRouter router = inferencer.newRouter();
+			BufferedReader br = ReadAheadInputStream.open(file);
+			try {
+				if (inferencer.getConfig().getStreamArray() != null) {
+					inferencer.inferStreaming(router, br, 1);
+				}
+				else {
+					inferencer.infer(router, file.getPath(), br, Shard.ALL, new InferenceBudget());
+				}
+			}
+			finally {
+				br.close();
+			}
+			partial = PartialSchema.of(router, inferencer.getConfig().isXml());
+		}
+		catch (Exception e) {
+			System.err.println("WARNING: could not infer " + file + ", " + e.getMessage() + ".");
+		}
+		synchronized (this) {
+			running.remove(file.getPath());
+			if (partial != null) {
+				schema.merge(partial);
+				inferred.put(file.getPath(), stamp);
+				merged++;
+			}
+		}
+	}
+
+	/**
+	 * Saves the state, and writes the output if the DDL changed, when files were merged since
+	 * the last save.  Only called by the watching thread, the workers go on merging meanwhile.
+	 */
+	private void save() {
+		int files;
+		String state;
+		String rendered;
+		String output = null;
+		synchronized (this) {
+			if (merged == 0) {
+				return;
+			}
+			files = merged;
+			merged = 0;
+			state = stateJSON().toString();
+			rendered = inferencer.render(schema);
+			if (!rendered.equals(ddl)) {
+				output = (partialOutput ? schema.toJSON().toString() : rendered);
+			}
+		}
+		try {
+			replace(stateFile, state);
+			if (output != null) {
+				writeOutput(output);
+				ddl = rendered;
+				System.err.println("Schema changed by the " + files + (files == 1 ? " file" : " files") + " inferred since the last save, " + (outputFile == null ? "printed" : "written to " + outputFile) + ".");
+			}
+			if (quarantine != null) {
+				quarantine.flush();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("WARNING: could not save the schema, " + e.getMessage() + ".");
+			synchronized (this) {
+				merged += files; // tried again after the next poll
+			}
+		}
+	}
+
+	private void writeOutput(String output) throws IOException {
+		if (outputFile == null) {
+			System.out.println(output);
+			System.out.flush();
+		}
+		else {
+			replace(outputFile, output);
+		}
+	}
+
+	/**
+	 * Writes a file whole, so whatever reads it never sees half of it.
+	 */
+	private static void replace(File file, String text) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8);
+		try {
+			writer.write(text);
+			writer.write('\n');
+		}
+		finally {
+			writer.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * The state file is JSON:
+	 * <pre>
+	 *   {"watchState": 1, "files": {"landing/part-0001": "1048576 1717171717000", ...}, "schema": partialSchema}
+	 * </pre>
+	 * with the size and modification time of every file inferred, and the merged partial schema.
+	 */
+	private JSONObject stateJSON() {
+		JSONObject json = new JSONObject();
+		json.put("watchState", STATE_VERSION);
+		json.put("files", new JSONObject(inferred));
+		json.put("schema", schema.toJSON());
+		return json;
+	}
+
+	private void readState() throws IOException {
+		JSONObject json;
+		Reader reader = new InputStreamReader(Files.newInputStream(stateFile.toPath()), StandardCharsets.UTF_8);
+		try {
+			json = new JSONObject(new JSONTokener(reader));
+		}
+		finally {
+			reader.close();
+		}
+		if (json.optInt("watchState", -1) != STATE_VERSION) {
+			throw new IllegalArgumentException(stateFile + " is not a version " + STATE_VERSION + " watch state.");
+		}
+		PartialSchema state = PartialSchema.fromJSON(json.getJSONObject("schema"));
+		schema.merge(state);
+		JSONObject files = json.getJSONObject("files");
+		for (String path : files.keySet()) {
+			inferred.put(path, files.getString(path));
+		}
+	}
+}
@@ -0,0 +1,157 @@
+package net.thornydev;
+
+import org.json.JSONException;
+
+/**
+ * Caps on the size and shape of one input document (or record), so a malformed or hostile
+ * input fails fast with a clear error instead of exhausting memory.  The document size is
+ * enforced by the readers before the text is held, the others by {@link DocumentParser} as it
+ * reads each token, before the value is built.
+ *
+ * Every limit but the nesting depth is off (0) by default.  Instances are immutable; build
+ * one with {@link #builder()}.
+ */
+public final class DocumentLimits {
+	public static final int DEFAULT_MAX_DEPTH = 1000;
+	public static final DocumentLimits DEFAULT = builder().build();
+
+	private final int maxDepth;
+	private final long maxDocumentSize;
+	private final int maxStringLength;
+	private final int maxKeys;
+	private final int maxArrayLength;
+	private final int maxNumberDigits;
+
+	private DocumentLimits(Builder b) {
+		if (b.maxDepth < 1) {
+			throw new IllegalArgumentException("The depth limit must be at least 1, not " + b.maxDepth + ".");
+		}
+		if (b.maxDocumentSize < 0 || b.maxStringLength < 0 || b.maxKeys < 0 || b.maxArrayLength < 0 || b.maxNumberDigits < 0) {
+			throw new IllegalArgumentException("Document limits cannot be negative.");
+		}
+		this.maxDepth = b.maxDepth;
+		this.maxDocumentSize = b.maxDocumentSize;
+		this.maxStringLength = b.maxStringLength;
+		this.maxKeys = b.maxKeys;
+		this.maxArrayLength = b.maxArrayLength;
+		this.maxNumberDigits = b.maxNumberDigits;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return a builder initialized with these limits
+	 */
+	public Builder toBuilder() {
+		Builder b = new Builder();
+		b.maxDepth = maxDepth;
+		b.maxDocumentSize = maxDocumentSize;
+		b.maxStringLength = maxStringLength;
+		b.maxKeys = maxKeys;
+		b.maxArrayLength = maxArrayLength;
+		b.maxNumberDigits = maxNumberDigits;
+		return b;
+	}
+
+	/**
+	 * @return the deepest nesting of objects and arrays, or XML elements, a document may have
+	 */
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return the most characters of one document or record, 0 for no limit
+	 */
+	public long getMaxDocumentSize() {
+		return maxDocumentSize;
+	}
+
+	/**
+	 * @return the most characters of one string, key, unquoted value or XML text, 0 for no limit
+	 */
+	public int getMaxStringLength() {
+		return maxStringLength;
+	}
+
+	/**
+	 * @return the most keys of one object, or attributes and child tags of one XML element, 0 for no limit
+	 */
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	/**
+	 * @return the most entries of one array, or repeats of one XML tag, 0 for no limit
+	 */
+	public int getMaxArrayLength() {
+		return maxArrayLength;
+	}
+
+	/**
+	 * @return the most digits of one number, 0 for no limit
+	 */
+	public int getMaxNumberDigits() {
+		return maxNumberDigits;
+	}
+
+	/**
+	 * @throws JSONException if <code>size</code> characters are more than a document may have
+	 */
+	void checkDocumentSize(long size, String what) throws JSONException {
+		if (maxDocumentSize > 0 && size > maxDocumentSize) {
+			throw tooLong(what, maxDocumentSize);
+		}
+	}
+
+	static JSONException tooLong(String what, long limit) {
+		return new JSONException(what + " is longer than the limit of " + limit + " characters");
+	}
+
+	public static final class Builder {
+		private int maxDepth = DEFAULT_MAX_DEPTH;
+		private long maxDocumentSize = 0;
+		private int maxStringLength = 0;
+		private int maxKeys = 0;
+		private int maxArrayLength = 0;
+		private int maxNumberDigits = 0;
+
+		private Builder() {}
+
+		public Builder maxDepth(int maxDepth) {
+			this.maxDepth = maxDepth;
+			return this;
+		}
+
+		public Builder maxDocumentSize(long maxDocumentSize) {
+			this.maxDocumentSize = maxDocumentSize;
+			return this;
+		}
+
+		public Builder maxStringLength(int maxStringLength) {
+			this.maxStringLength = maxStringLength;
+			return this;
+		}
+
+		public Builder maxKeys(int maxKeys) {
+			this.maxKeys = maxKeys;
+			return this;
+		}
+
+		public Builder maxArrayLength(int maxArrayLength) {
+			this.maxArrayLength = maxArrayLength;
+			return this;
+		}
+
+		public Builder maxNumberDigits(int maxNumberDigits) {
+			this.maxNumberDigits = maxNumberDigits;
+			return this;
+		}
+
+		public DocumentLimits build() {
+			return new DocumentLimits(this);
+		}
+	}
+}
@@ -0,0 +1,803 @@
+package net.thornydev;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.json.XML;
+import org.json.XMLTokener;
+
+/**
+ * Parses JSON and XML documents with an explicit stack instead of recursion, so a deeply
+ * nested document cannot overflow the thread's stack and worker threads can run with small
+ * stacks.  A document beyond any of its {@link DocumentLimits} fails fast with a
+ * {@link JSONException}: JSON strings, numbers and values are checked as they are read, keys
+ * and array entries before they are added, XML text and tags as soon as they are read.
+ *
+ * The grammar is that of {@link JSONObject#JSONObject(JSONTokener)},
+ * {@link JSONArray#JSONArray(JSONTokener)} and {@link XML#toJSONObject(String)}, and the
+ * results are the same, except that an object or array is not accepted as a key.
+ *
+ * A parser keeps its tokenizers, a scratch buffer for strings and a table of the keys it has
+ * seen from one document to the next, so parsing a stream of small records allocates little
+ * beyond the parsed values themselves, and a key that recurs in every record is one shared
+ * String.  A parser is therefore not thread safe: every thread uses its own, see
+ * {@link SchemaInferencer}.
+ */
+public class DocumentParser {
+	private static final int MAX_RECURSION = 32;
+	private static final int SCRATCH_SIZE = 256;
+	// a scratch buffer grown past this by one huge string is not kept for the next document
+	private static final int MAX_SCRATCH_SIZE = 64 * 1024;
+	static final int MAX_SYMBOLS = 4096;
+
+	private final DocumentLimits limits;
+	// the limits, with Integer.MAX_VALUE for none
+	private final int maxDepth;
+	private final int maxStringLength;
+	private final int maxKeys;
+	private final int maxArrayLength;
+	private final int maxNumberDigits;
+
+	private final RecordText.Json json = new RecordText.Json();
+	private final RecordText.Xml xml = new RecordText.Xml();
+	private final Symbols symbols = new Symbols();
+	private char[] scratch = new char[SCRATCH_SIZE];
+
+	public DocumentParser(DocumentLimits limits) {
+		this.limits = limits;
+		this.maxDepth = limits.getMaxDepth();
+		this.maxStringLength = orMax(limits.getMaxStringLength());
+		this.maxKeys = orMax(limits.getMaxKeys());
+		this.maxArrayLength = orMax(limits.getMaxArrayLength());
+		this.maxNumberDigits = orMax(limits.getMaxNumberDigits());
+	}
+
+	private static int orMax(int limit) {
+		return (limit > 0 ? limit : Integer.MAX_VALUE);
+	}
+
+	public DocumentLimits getLimits() {
+		return limits;
+	}
+
+	/**
+	 * Parses a JSON object, like <code>new JSONObject(text)</code>.
+	 */
+	public JSONObject parseJson(String text) throws JSONException {
+		limits.checkDocumentSize(text.length(), "The document");
+		JSONTokener x = json.reset(text);
+		try {
+			if (x.nextClean() != '{') {
+				throw x.syntaxError("A JSONObject text must begin with '{'");
+			}
+			x.back();
+			return (JSONObject)nextValue(x, 0);
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Lets go of the last document's text, and of a scratch buffer a huge string grew.
+	 */
+	private void release() {
+		json.reset("");
+		xml.reset("");
+		if (scratch.length > MAX_SCRATCH_SIZE) {
+			scratch = new char[SCRATCH_SIZE];
+		}
+	}
+
+	/**
+	 * Parses the next JSON value, like {@link JSONTokener#nextValue()}.
+	 *
+	 * @param depth the number of objects and arrays the value is nested in
+	 */
+	public Object nextValue(JSONTokener x, int depth) throws JSONException {
+		return nextValue(x, depth, 0);
+	}
+
+	/**
+	 * Recursive descent through the shallow levels of a document, where nearly all of it is,
+	 * handing anything nested deeper than {@link #MAX_RECURSION} to {@link #nextValueDeep}, so
+	 * the thread stack used stays bounded.
+	 *
+	 * @param recursion the number of calls of this method already on the stack
+	 */
+	private Object nextValue(JSONTokener x, int depth, int recursion) throws JSONException {
+		char c = x.nextClean();
+		switch (c) {
+		case '"':
+		case '\'':
+			return nextString(x, c, false);
+		case '{':
+		case '[':
+			if (recursion >= MAX_RECURSION) {
+				x.back();
+				return nextValueDeep(x, depth);
+			}
+			if (depth >= maxDepth) {
+				throw x.syntaxError("Nesting deeper than " + maxDepth + " levels");
+			}
+			return (c == '{' ? nextObject(x, depth + 1, recursion + 1) : nextArray(x, depth + 1, recursion + 1));
+		default:
+			return nextScalar(x, c);
+		}
+	}
+
+	/**
+	 * The rest of an object after its '{'.
+	 */
+	private JSONObject nextObject(JSONTokener x, int depth, int recursion) throws JSONException {
+		JSONObject o = new JSONObject();
+		if (x.nextClean() == '}') {
+			return o;
+		}
+		x.back();
+		for (;;) {
+			checkKeys(x, o);
+			String key = nextKey(x);
+			o.putOnce(key, nextValue(x, depth, recursion));
+			switch (x.nextClean()) {
+			case ';':
+			case ',':
+				if (x.nextClean() == '}') {
+					return o;
+				}
+				x.back();
+				break;
+			case '}':
+				return o;
+			default:
+				throw x.syntaxError("Expected a ',' or '}'");
+			}
+		}
+	}
+
+	/**
+	 * The rest of an array after its '['.
+	 */
+	private JSONArray nextArray(JSONTokener x, int depth, int recursion) throws JSONException {
+		JSONArray a = new JSONArray();
+		if (x.nextClean() == ']') {
+			return a;
+		}
+		x.back();
+		for (;;) {
+			checkLength(x, a);
+			if (x.nextClean() == ',') {
+				x.back();
+				a.put(JSONObject.NULL);
+			}
+			else {
+				x.back();
+				a.put(nextValue(x, depth, recursion));
+			}
+			switch (x.nextClean()) {
+			case ',':
+				if (x.nextClean() == ']') {
+					return a;
+				}
+				x.back();
+				break;
+			case ']':
+				return a;
+			default:
+				throw x.syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * The same grammar, walked with an explicit stack instead of recursion.
+	 */
+	private Object nextValueDeep(JSONTokener x, int depth) throws JSONException {
+		// the open objects and arrays, with the key each open object's next value goes to
+		List<Object> open = new ArrayList<Object>();
+		List<String> keys = new ArrayList<String>();
+		char c = x.nextClean();
+		for (;;) {
+			// c is the first character of a value
+			Object value = null;
+			if (c == '{' || c == '[') {
+				if (depth + open.size() >= maxDepth) {
+					throw x.syntaxError("Nesting deeper than " + maxDepth + " levels");
+				}
+				if (c == '{') {
+					open.add(new JSONObject());
+					keys.add(null);
+					c = x.nextClean();
+					if (c == '}') {
+						value = pop(open, keys);
+					}
+					else {
+						x.back();
+						c = nextKeyOf(x, open, keys);
+					}
+				}
+				else {
+					open.add(new JSONArray());
+					keys.add(null);
+					c = x.nextClean();
+					if (c == ']') {
+						value = pop(open, keys);
+					}
+					else if (c == ',') {
+						x.back();
+						value = JSONObject.NULL;
+					}
+				}
+				if (value == null) {
+					continue;
+				}
+			}
+			else if (c == '"' || c == '\'') {
+				value = nextString(x, c, false);
+			}
+			else {
+				value = nextScalar(x, c);
+			}
+
+			// Add the finished value to the innermost open object or array, closing those that end
+			for (;;) {
+				if (open.isEmpty()) {
+					return value;
+				}
+				Object parent = open.get(open.size() - 1);
+				if (parent instanceof JSONObject) {
+					((JSONObject)parent).putOnce(keys.get(keys.size() - 1), value);
+					char separator = x.nextClean();
+					if (separator == ';' || separator == ',') {
+						if (x.nextClean() == '}') {
+							value = pop(open, keys);
+							continue;
+						}
+						x.back();
+						c = nextKeyOf(x, open, keys);
+						break;
+					}
+					if (separator == '}') {
+						value = pop(open, keys);
+						continue;
+					}
+					throw x.syntaxError("Expected a ',' or '}'");
+				}
+				JSONArray array = (JSONArray)parent;
+				checkLength(x, array);
+				array.put(value);
+				char separator = x.nextClean();
+				if (separator == ',') {
+					if (x.nextClean() == ']') {
+						value = pop(open, keys);
+						continue;
+					}
+					x.back();
+					c = x.nextClean();
+					if (c == ',') {
+						x.back();
+						value = JSONObject.NULL;
+						continue;
+					}
+					break;
+				}
+				if (separator == ']') {
+					value = pop(open, keys);
+					continue;
+				}
+				throw x.syntaxError("Expected a ',' or ']'");
+			}
+		}
+	}
+
+	/**
+	 * Reads a key and its ':'.
+	 */
+	String nextKey(JSONTokener x) throws JSONException {
+		char c = x.nextClean();
+		if (c == 0) {
+			throw x.syntaxError("A JSONObject text must end with '}'");
+		}
+		if (c == '{' || c == '[') {
+			throw x.syntaxError("Expected a key");
+		}
+		String key = (c == '"' || c == '\'' ? nextString(x, c, true) : nextScalar(x, c).toString());
+		if (x.nextClean() != ':') {
+			throw x.syntaxError("Expected a ':' after a key");
+		}
+		return key;
+	}
+
+	/**
+	 * Reads a key and its ':' for the innermost open object.
+	 *
+	 * @return the first character of the key's value
+	 */
+	private char nextKeyOf(JSONTokener x, List<Object> open, List<String> keys) throws JSONException {
+		checkKeys(x, (JSONObject)open.get(open.size() - 1));
+		keys.set(keys.size() - 1, nextKey(x));
+		return x.nextClean();
+	}
+
+	/**
+	 * Reads the four hex digits of a unicode escape, which unlike <code>Integer.parseInt</code>
+	 * takes no sign and only ASCII digits.
+	 */
+	private static char unicode(JSONTokener x) throws JSONException {
+		String hex = x.next(4);
+		int c = 0;
+		for (int i = 0; i < 4; i++) {
+			char h = hex.charAt(i);
+			int digit = (h >= '0' && h <= '9' ? h - '0' : h >= 'a' && h <= 'f' ? h - 'a' + 10 : h >= 'A' && h <= 'F' ? h - 'A' + 10 : -1);
+			if (digit < 0) {
+				throw x.syntaxError("Illegal escape.");
+			}
+			c = c * 16 + digit;
+		}
+		return (char)c;
+	}
+
+	/**
+	 * Reads a quoted string, like {@link JSONTokener#nextString(char)}.
+	 *
+	 * @param key true for a key, which is looked up in the symbol table
+	 */
+	private String nextString(JSONTokener x, char quote, boolean key) throws JSONException {
+		if (x == json) {
+			// Most strings have no escapes, they are cut straight out of the text
+			RecordText text = json.text;
+			int start = text.skipPlainString(quote, maxStringLength);
+			if (start >= 0) {
+				int length = text.position() - 1 - start;
+				return (key ? symbols.get(text.getText(), start, length) : text.getText().substring(start, start + length));
+			}
+		}
+		int length = 0;
+		for (;;) {
+			if (length >= maxStringLength) {
+				// one more character is fine if it is the closing quote
+				if (x.next() == quote) {
+					return string(length, key);
+				}
+				throw x.syntaxError("String longer than " + maxStringLength + " characters");
+			}
+			if (length == scratch.length) {
+				scratch = Arrays.copyOf(scratch, (int)Math.min(2L * length, Integer.MAX_VALUE - 8));
+			}
+			char c = x.next();
+			switch (c) {
+			case 0:
+			case '\n':
+			case '\r':
+				throw x.syntaxError("Unterminated string");
+			case '\\':
+				c = x.next();
+				switch (c) {
+				case 'b':
+					scratch[length++] = '\b';
+					break;
+				case 't':
+					scratch[length++] = '\t';
+					break;
+				case 'n':
+					scratch[length++] = '\n';
+					break;
+				case 'f':
+					scratch[length++] = '\f';
+					break;
+				case 'r':
+					scratch[length++] = '\r';
+					break;
+				case 'u':
+					scratch[length++] = unicode(x);
+					break;
+				case '"':
+				case '\'':
+				case '\\':
+				case '/':
+					scratch[length++] = c;
+					break;
+				default:
+					throw x.syntaxError("Illegal escape.");
+				}
+				break;
+			default:
+				if (c == quote) {
+					return string(length, key);
+				}
+				scratch[length++] = c;
+			}
+		}
+	}
+
+	private String string(int length, boolean key) {
+		return (key ? symbols.get(scratch, length) : new String(scratch, 0, length));
+	}
+
+	/**
+	 * Reads unquoted text: true, false, null, a number or a bare string, like the end of
+	 * {@link JSONTokener#nextValue()}.
+	 *
+	 * @param c the text's first character, already read
+	 */
+	private Object nextScalar(JSONTokener x, char c) throws JSONException {
+		boolean number = (c >= '0' && c <= '9') || c == '-';
+		int digits = 0;
+		int length = 0;
+		while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+			if (length >= maxStringLength) {
+				throw x.syntaxError("Value longer than " + maxStringLength + " characters");
+			}
+			if (c >= '0' && c <= '9' && ++digits > maxNumberDigits && number) {
+				throw x.syntaxError("Number with more than " + maxNumberDigits + " digits");
+			}
+			if (length == scratch.length) {
+				scratch = Arrays.copyOf(scratch, (int)Math.min(2L * length, Integer.MAX_VALUE - 8));
+			}
+			scratch[length++] = c;
+			c = x.next();
+		}
+		x.back();
+
+		// trimmed, as String.trim() would
+		int start = 0;
+		while (start < length && scratch[start] <= ' ') {
+			start++;
+		}
+		while (length > start && scratch[length - 1] <= ' ') {
+			length--;
+		}
+		if (start == length) {
+			throw x.syntaxError("Missing value");
+		}
+		Object value = scalar(start, length);
+		return (value != null ? value : JSONObject.stringToValue(new String(scratch, start, length - start)));
+	}
+
+	/**
+	 * The commonest scalars, read straight from the scratch buffer: the values
+	 * {@link JSONObject#stringToValue(String)} gives for true, false, null and an int.
+	 *
+	 * @return the value of <code>scratch[start, end)</code>, null for anything else
+	 */
+	private Object scalar(int start, int end) {
+		int length = end - start;
+		char c = scratch[start];
+		if (length == 4 && (c == 't' || c == 'T') && matches(start, "true")) {
+			return Boolean.TRUE;
+		}
+		if (length == 5 && (c == 'f' || c == 'F') && matches(start, "false")) {
+			return Boolean.FALSE;
+		}
+		if (length == 4 && (c == 'n' || c == 'N') && matches(start, "null")) {
+			return JSONObject.NULL;
+		}
+		boolean negative = (c == '-');
+		int i = (negative ? start + 1 : start);
+		// at most 9 digits, without a leading zero (except 0 itself), always fits an int
+		if (i == end || end - i > 9 || (scratch[i] == '0' && (end - i > 1 || negative))) {
+			return null;
+		}
+		int n = 0;
+		for (; i < end; i++) {
+			c = scratch[i];
+			if (c < '0' || c > '9') {
+				return null;
+			}
+			n = n * 10 + (c - '0');
+		}
+		return Integer.valueOf(negative ? -n : n);
+	}
+
+	private boolean matches(int start, String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.toLowerCase(scratch[start + i]) != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @throws JSONException if the object cannot take another key
+	 */
+	void checkKeys(JSONTokener x, JSONObject o) throws JSONException {
+		if (o.length() >= maxKeys) {
+			throw x.syntaxError("Object with more than " + maxKeys + " keys");
+		}
+	}
+
+	/**
+	 * @throws JSONException if the array cannot take another entry
+	 */
+	private void checkLength(JSONTokener x, JSONArray a) throws JSONException {
+		if (a.length() >= maxArrayLength) {
+			throw x.syntaxError("Array with more than " + maxArrayLength + " entries");
+		}
+	}
+
+	private static Object pop(List<Object> open, List<String> keys) {
+		keys.remove(keys.size() - 1);
+		return open.remove(open.size() - 1);
+	}
+
+	/**
+	 * Converts an XML document, like {@link XML#toJSONObject(String)}.
+	 */
+	public JSONObject parseXml(String text) throws JSONException {
+		limits.checkDocumentSize(text.length(), "The document");
+		JSONObject root = new JSONObject();
+		XMLTokener x = xml.reset(text);
+		try {
+			while (x.more() && x.skipPast("<")) {
+				parseElement(x, root);
+			}
+			return root;
+		}
+		finally {
+			release();
+		}
+	}
+
+	/**
+	 * Parses the markup after a '&lt;' and, for an element, everything up to its end tag.
+	 */
+	private void parseElement(XMLTokener x, JSONObject root) throws JSONException {
+		Deque<Element> open = new ArrayDeque<Element>();
+		for (;;) {
+			// x is just past a '<'
+			JSONObject context = (open.isEmpty() ? root : open.peek().object);
+			Object token = x.nextToken();
+			if (token == XML.BANG) {
+				skipBang(x, context);
+			}
+			else if (token == XML.QUEST) {
+				x.skipPast("?>");
+			}
+			else if (token == XML.SLASH) {
+				token = x.nextToken();
+				if (open.isEmpty()) {
+					throw x.syntaxError("Mismatched close tag " + token);
+				}
+				if (!token.equals(open.peek().tagName)) {
+					throw x.syntaxError("Mismatched " + open.peek().tagName + " and " + token);
+				}
+				if (x.nextToken() != XML.GT) {
+					throw x.syntaxError("Misshaped close tag");
+				}
+				Element element = open.pop();
+				JSONObject parent = (open.isEmpty() ? root : open.peek().object);
+				if (element.object.length() == 0) {
+					accumulate(x, parent, element.tagName, "");
+				}
+				else if (element.object.length() == 1 && element.object.opt("content") != null) {
+					accumulate(x, parent, element.tagName, element.object.opt("content"));
+				}
+				else {
+					accumulate(x, parent, element.tagName, element.object);
+				}
+			}
+			else if (token instanceof Character) {
+				throw x.syntaxError("Misshaped tag");
+			}
+			else {
+				String tagName = checkText(x, (String)token);
+				JSONObject object = new JSONObject();
+				token = x.nextToken();
+				// attribute = value
+				while (token instanceof String) {
+					String name = checkText(x, (String)token);
+					token = x.nextToken();
+					if (token == XML.EQ) {
+						token = x.nextToken();
+						if (!(token instanceof String)) {
+							throw x.syntaxError("Missing value");
+						}
+						accumulate(x, object, name, xmlValue(x, (String)token));
+						token = x.nextToken();
+					}
+					else {
+						accumulate(x, object, name, "");
+					}
+				}
+				if (token == XML.SLASH) {
+					// Empty tag <.../>
+					if (x.nextToken() != XML.GT) {
+						throw x.syntaxError("Misshaped tag");
+					}
+					accumulate(x, context, tagName, object.length() > 0 ? object : "");
+				}
+				else if (token == XML.GT) {
+					if (open.size() >= maxDepth) {
+						throw x.syntaxError("Nesting deeper than " + maxDepth + " elements");
+					}
+					open.push(new Element(tagName, object));
+				}
+				else {
+					throw x.syntaxError("Misshaped tag");
+				}
+			}
+
+			if (open.isEmpty()) {
+				return;
+			}
+			// Content of the innermost open element, up to its next '<'
+			Element element = open.peek();
+			for (;;) {
+				token = x.nextContent();
+				if (token == null) {
+					throw x.syntaxError("Unclosed tag " + element.tagName);
+				}
+				if (token == XML.LT) {
+					break;
+				}
+				if (token instanceof String && ((String)token).length() > 0) {
+					accumulate(x, element.object, "content", xmlValue(x, (String)token));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Skips a comment or declaration, or adds a CDATA section to the context.
+	 */
+	private void skipBang(XMLTokener x, JSONObject context) throws JSONException {
+		char c = x.next();
+		if (c == '-') {
+			if (x.next() == '-') {
+				x.skipPast("-->");
+				return;
+			}
+			x.back();
+		}
+		else if (c == '[') {
+			Object token = x.nextToken();
+			if ("CDATA".equals(token) && x.next() == '[') {
+				String string = checkText(x, x.nextCDATA());
+				if (string.length() > 0) {
+					accumulate(x, context, "content", string);
+				}
+				return;
+			}
+			throw x.syntaxError("Expected 'CDATA['");
+		}
+		int i = 1;
+		do {
+			Object token = x.nextMeta();
+			if (token == null) {
+				throw x.syntaxError("Missing '>' after '<!'.");
+			}
+			else if (token == XML.LT) {
+				i += 1;
+			}
+			else if (token == XML.GT) {
+				i -= 1;
+			}
+		} while (i > 0);
+	}
+
+	/**
+	 * Adds a value to an element like {@link JSONObject#accumulate}, a repeated key making an
+	 * array, within the key and array limits.
+	 */
+	private void accumulate(XMLTokener x, JSONObject o, String key, Object value) throws JSONException {
+		Object existing = o.opt(key);
+		if (existing == null) {
+			checkKeys(x, o);
+		}
+		else if (existing instanceof JSONArray) {
+			checkLength(x, (JSONArray)existing);
+		}
+		else if (maxArrayLength < 2) {
+			throw x.syntaxError("Array with more than " + maxArrayLength + " entries");
+		}
+		o.accumulate(key, value);
+	}
+
+	/**
+	 * Converts XML text to a value like {@link JSONObject#stringToValue(String)}, within the text and number limits.
+	 */
+	private Object xmlValue(XMLTokener x, String text) throws JSONException {
+		checkText(x, text);
+		char initial = (text.length() > 0 ? text.charAt(0) : 0);
+		if (maxNumberDigits < text.length() && ((initial >= '0' && initial <= '9') || initial == '-')) {
+			int digits = 0;
+			for (int i = 0; i < text.length(); i++) {
+				char c = text.charAt(i);
+				if (c >= '0' && c <= '9' && ++digits > maxNumberDigits) {
+					throw x.syntaxError("Number with more than " + maxNumberDigits + " digits");
+				}
+			}
+		}
+		return JSONObject.stringToValue(text);
+	}
+
+	/**
+	 * @return the text, if it is within the string limit
+	 */
+	private String checkText(XMLTokener x, String text) throws JSONException {
+		if (text.length() > maxStringLength) {
+			throw x.syntaxError("Text longer than " + maxStringLength + " characters");
+		}
+		return text;
+	}
+
+	/**
+	 * The keys seen so far, so a key that recurs record after record is one shared String
+	 * instead of a new one each time.  Holds at most {@link #MAX_SYMBOLS} keys, later new keys
+	 * are not kept.
+	 */
+	private static final class Symbols {
+		private final String[] table = new String[2 * MAX_SYMBOLS];
+		private int size = 0;
+
+		String get(String text, int start, int length) {
+			int hash = 0;
+			for (int i = start; i < start + length; i++) {
+				hash = 31 * hash + text.charAt(i);
+			}
+			int mask = table.length - 1;
+			for (int i = (hash ^ (hash >>> 16)) & mask;; i = (i + 1) & mask) {
+				String key = table[i];
+				if (key == null) {
+					return add(i, text.substring(start, start + length));
+				}
+				if (key.hashCode() == hash && key.length() == length && key.regionMatches(0, text, start, length)) {
+					return key;
+				}
+			}
+		}
+
+		String get(char[] chars, int length) {
+			int hash = 0;
+			for (int i = 0; i < length; i++) {
+				hash = 31 * hash + chars[i];
+			}
+			int mask = table.length - 1;
+			for (int i = (hash ^ (hash >>> 16)) & mask;; i = (i + 1) & mask) {
+				String key = table[i];
+				if (key == null) {
+					return add(i, new String(chars, 0, length));
+				}
+				if (key.hashCode() == hash && key.length() == length && equals(key, chars)) {
+					return key;
+				}
+			}
+		}
+
+		private static boolean equals(String key, char[] chars) {
+			for (int i = 0; i < key.length(); i++) {
+				if (key.charAt(i) != chars[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private String add(int slot, String key) {
+			// never more than half full, so a lookup always ends at an empty slot
+			if (size < MAX_SYMBOLS) {
+				table[slot] = key;
+				size++;
+			}
+			return key;
+		}
+	}
+
+	private static final class Element {
+		private final String tagName;
+		private final JSONObject object;
+
+		private Element(String tagName, JSONObject object) {
+			this.tagName = tagName;
+			this.object = object;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package net.thornydev;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * The first part of a single JSON or XML document that is too big to read whole, made well
+ * formed so the schema can be inferred from it.
+ *
+ * Reading stops once the byte budget is used up or the time budget has run out.  The prefix
+ * is then cut back to the last point where every value (or element) before it is complete,
+ * and the brackets or end tags still open at that point are appended, innermost first.
+ * The nesting is tracked with a stack while scanning, quoted strings, comments and CDATA
+ * sections included, so no bracket or tag inside them is mistaken for structure.
+ */
+public class DocumentPrefix {
+	private static final int CHUNK_SIZE = 64 * 1024;
+	static final int MAX_PREFIX = Integer.MAX_VALUE - 8;
+
+	private final String text;
+	private final long bytesRead;
+	private final long length;
+	private final int closers;
+
+	private DocumentPrefix(String text, long bytesRead, long length, int closers) {
+		this.text = text;
+		this.bytesRead = bytesRead;
+		this.length = length;
+		this.closers = closers;
+	}
+
+	/**
+	 * Reads a file up to the given budgets.  The buffer grows as the bytes come in, so a short
+	 * time budget on a huge file only holds what was read in time.  A prefix holds at most
+	 * {@link #MAX_PREFIX} bytes, the largest array Java allows, whatever the budgets.
+	 *
+	 * @param maxBytes the most bytes to read, or 0 for no limit
+	 * @param maxMillis the most milliseconds to spend reading, or 0 for no limit
+	 * @param xml true for an XML document, false for JSON
+	 */
+	public static DocumentPrefix read(File file, long maxBytes, long maxMillis, boolean xml) throws IOException {
+		long length = file.length();
+		int limit = (int)(maxBytes > 0 ? Math.min(maxBytes, MAX_PREFIX) : MAX_PREFIX);
+		long deadline = (maxMillis > 0 ? System.currentTimeMillis() + maxMillis : Long.MAX_VALUE);
+		byte[] bytes = new byte[Math.min(limit, CHUNK_SIZE)];
+		int read = 0;
+		boolean complete = false;
+		InputStream in = new FileInputStream(file);
+		try {
+			// the first chunk is always read, however short the time budget
+			while (read < limit && (read == 0 || System.currentTimeMillis() < deadline)) {
+				if (read == bytes.length) {
+					bytes = Arrays.copyOf(bytes, (int)Math.min(limit, bytes.length * 2L));
+				}
+				int n = in.read(bytes, read, Math.min(CHUNK_SIZE, bytes.length - read));
+				if (n < 0) {
+					complete = true;
+					break;
+				}
+				read += n;
+			}
+			if (read == limit && !complete) {
+				complete = (in.read() < 0);
+			}
+		}
+		finally {
+			in.close();
+		}
+		String text = new String(bytes, 0, read, StandardCharsets.UTF_8);
+		if (complete) {
+			return new DocumentPrefix(text, read, read, 0);
+		}
+		return (xml ? closeXml(text, read, length) : closeJson(text, read, length));
+	}
+
+	static DocumentPrefix closeJson(String s, long bytesRead, long length) {
+		StringBuilder stack = new StringBuilder();
+		boolean inString = false;
+		int cut = -1;
+		String closers = "";
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (inString) {
+				if (c == '\\') {
+					i++;
+				}
+				else if (c == '"') {
+					inString = false;
+				}
+				continue;
+			}
+			switch (c) {
+			case '"':
+				inString = true;
+				break;
+			case '{':
+			case '[':
+				stack.append(c);
+				cut = i + 1;
+				closers = closersOf(stack);
+				break;
+			case '}':
+			case ']':
+				if (stack.length() > 0) {
+					stack.setLength(stack.length() - 1);
+				}
+				cut = i + 1;
+				closers = closersOf(stack);
+				break;
+			case ',':
+				// everything before a separator is complete
+				cut = i;
+				closers = closersOf(stack);
+				break;
+			default:
+			}
+		}
+		if (cut < 0) {
+			return new DocumentPrefix(s, bytesRead, length, 0);
+		}
+		return new DocumentPrefix(s.substring(0, cut) + closers, bytesRead, length, closers.length());
+	}
+
+	private static String closersOf(CharSequence stack) {
+		StringBuilder sb = new StringBuilder(stack.length());
+		for (int i = stack.length() - 1; i >= 0; i--) {
+			sb.append(stack.charAt(i) == '{' ? '}' : ']');
+		}
+		return sb.toString();
+	}
+
+	static DocumentPrefix closeXml(String s, long bytesRead, long length) {
+		Deque<String> stack = new ArrayDeque<String>();
+		int cut = -1;
+		String closers = "";
+		int count = 0;
+		int i = 0;
+		for (;;) {
+			int lt = s.indexOf('<', i);
+			if (lt < 0) {
+				break;
+			}
+			int end;
+			if (s.startsWith("<?", lt)) {
+				end = endOf(s, "?>", lt + 2);
+			}
+			else if (s.startsWith("<!--", lt)) {
+				end = endOf(s, "-->", lt + 4);
+			}
+			else if (s.startsWith("<![CDATA[", lt)) {
+				end = endOf(s, "]]>", lt + 9);
+			}
+			else if (s.startsWith("<!", lt)) {
+				end = endOf(s, ">", lt + 2);
+			}
+			else {
+				end = tagEnd(s, lt + 1);
+				if (end < 0) {
+					break;
+				}
+				if (s.charAt(lt + 1) == '/') {
+					stack.pollFirst();
+				}
+				else if (s.charAt(end - 2) != '/') {
+					stack.push(tagName(s, lt + 1));
+				}
+			}
+			if (end < 0) {
+				break;
+			}
+			i = end;
+			cut = end;
+			StringBuilder sb = new StringBuilder();
+			for (Iterator<String> it = stack.iterator(); it.hasNext();) {
+				sb.append("</").append(it.next()).append('>');
+			}
+			closers = sb.toString();
+			count = stack.size();
+		}
+		if (cut < 0) {
+			return new DocumentPrefix(s, bytesRead, length, 0);
+		}
+		return new DocumentPrefix(s.substring(0, cut) + closers, bytesRead, length, count);
+	}
+
+	private static int endOf(String s, String terminator, int from) {
+		int i = s.indexOf(terminator, from);
+		return (i < 0 ? -1 : i + terminator.length());
+	}
+
+	/**
+	 * @return the index after the tag's closing '&gt;', skipping quoted attribute values, or -1 if the tag is cut off
+	 */
+	private static int tagEnd(String s, int from) {
+		char quote = 0;
+		for (int i = from; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			}
+			else if (c == '"' || c == '\'') {
+				quote = c;
+			}
+			else if (c == '>') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	private static String tagName(String s, int from) {
+		int i = from;
+		while (i < s.length() && !Character.isWhitespace(s.charAt(i)) && s.charAt(i) != '>' && s.charAt(i) != '/') {
+			i++;
+		}
+		return s.substring(from, i);
+	}
+
+	/**
+	 * @return the well formed document text
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return true if only part of the document was read
+	 */
+	public boolean isTruncated() {
+		return bytesRead < length;
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return the number of closing brackets or end tags appended to the prefix
+	 */
+	public int getClosers() {
+		return closers;
+	}
+
+	/**
+	 * @return a one line summary for the report, e.g. "1048576 of 8911223 bytes (11.77%), 3 closers added"
+	 */
+	public String describe() {
+		return bytesRead + " of " + length + " bytes (" + InferenceReport.percent(bytesRead, length) + ")"
+				+ (isTruncated() ? ", " + closers + " closers added" : "");
+	}
+}
@@ -0,0 +1,138 @@
+package net.thornydev;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on how much of a record stream is read: at most so many records, bytes or seconds,
+ * or only until the schema has stopped changing.
+ *
+ * The schema of most record streams stops changing long before the end of the input.  With
+ * a convergence limit of <code>n</code>, reading stops once <code>n</code> records in a row
+ * have added no new path and widened no type.  Having seen <code>n</code> such records, the
+ * chance that a further record would change the schema is below <code>3/n</code> with 95%
+ * confidence (the "rule of three"), which {@link #confidence(long)} reports.
+ *
+ * One budget may be shared by the threads reading the splits of one input, the record, byte
+ * and time limits then apply to all of them together and the convergence limit to each.  A
+ * {@link #part} of a budget has limits of its own, e.g. the quota of one stratum of a sample,
+ * and also counts every record against the budget it is part of.
+ */
+public class InferenceBudget {
+	private final long maxRecords;
+	private final long maxBytes;
+	private final long deadline;
+	private final long convergence;
+	private final InferenceBudget parent;
+	private final AtomicLong records = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private volatile String stopReason = null;
+
+	/**
+	 * An unlimited budget.
+	 */
+	public InferenceBudget() {
+		this(0, 0, 0, 0);
+	}
+
+	/**
+	 * @param maxRecords the most records to infer, 0 for no limit
+	 * @param maxBytes the most bytes of records to infer, 0 for no limit
+	 * @param maxMillis the most milliseconds to spend, counted from now, 0 for no limit
+	 * @param convergence stop after this many records in a row did not change the schema, 0 to read on
+	 */
+	public InferenceBudget(long maxRecords, long maxBytes, long maxMillis, long convergence) {
+		this(null, maxRecords, maxBytes, (maxMillis > 0 ? System.currentTimeMillis() + maxMillis : 0), convergence);
+	}
+
+	private InferenceBudget(InferenceBudget parent, long maxRecords, long maxBytes, long deadline, long convergence) {
+		this.parent = parent;
+		this.maxRecords = maxRecords;
+		this.maxBytes = maxBytes;
+		this.deadline = deadline;
+		this.convergence = convergence;
+	}
+
+	/**
+	 * A budget for one part of what this budget covers.  It stops at its own limits, or when
+	 * the records spent on it and the other parts use up this budget's record, byte or time
+	 * limits.  Its convergence limit replaces this budget's.
+	 *
+	 * @param maxRecords the most records of the part, 0 for no limit of its own
+	 * @param maxBytes the most bytes of the part, 0 for no limit of its own
+	 * @param convergence stop the part after this many records in a row did not change its schema, 0 to read on
+	 */
+	public InferenceBudget part(long maxRecords, long maxBytes, long convergence) {
+		return new InferenceBudget(this, maxRecords, maxBytes, 0, convergence);
+	}
+
+	/**
+	 * Counts one record that was just added to the router.
+	 *
+	 * @param length the record's length
+	 * @return false once reading should stop
+	 */
+	public boolean spend(long length, SchemaRouter router) {
+		if (!count(length)) {
+			return false;
+		}
+		if (convergence > 0 && router.getRecordsSinceChange() >= convergence) {
+			stop("schema unchanged for " + convergence + " records");
+		}
+		return stopReason == null;
+	}
+
+	/**
+	 * Counts one record against the record, byte and time limits of this budget and the budgets
+	 * it is part of.
+	 *
+	 * @return false once reading should stop
+	 */
+	private boolean count(long length) {
+		if (stopReason != null) {
+			return false;
+		}
+		if (parent != null && !parent.count(length)) {
+			stop(parent.getStopReason());
+			return false;
+		}
+		long r = records.incrementAndGet();
+		long b = bytes.addAndGet(length);
+		if (maxRecords > 0 && r >= maxRecords) {
+			stop("record budget of " + maxRecords + " reached");
+		}
+		else if (maxBytes > 0 && b >= maxBytes) {
+			stop("byte budget of " + maxBytes + " reached");
+		}
+		else if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+			stop("time budget reached");
+		}
+		return stopReason == null;
+	}
+
+	private synchronized void stop(String reason) {
+		if (stopReason == null) {
+			stopReason = reason;
+		}
+	}
+
+	/**
+	 * @return why reading stopped early, or null if it did not
+	 */
+	public String getStopReason() {
+		if (stopReason == null && parent != null) {
+			return parent.getStopReason();
+		}
+		return stopReason;
+	}
+
+	/**
+	 * @param stableRecords the number of records in a row that did not change the schema
+	 * @return the rule of three bound on the share of further records that would change the schema
+	 */
+	public static String confidence(long stableRecords) {
+		if (stableRecords == 0) {
+			return "none, the last record changed the schema";
+		}
+		return "95% that at most " + String.format("%.4f%%", Math.min(100.0, 300.0 / stableRecords)) + " of further records would add a path or widen a type";
+	}
+}
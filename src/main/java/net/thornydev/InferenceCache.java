@@ -0,0 +1,174 @@
+package net.thornydev;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * An on-disk cache (<code>-cache</code>) of the partial schema inferred from every input file,
+ * so a run over a directory where only a few files are new only parses those; the others are
+ * merged from the cache.
+ *
+ * An entry is keyed by the file's absolute path, size, modification time and a hash of its
+ * first and last {@value #HASH_BYTES} bytes, plus every option that affects inference.  The
+ * hash catches files rewritten in place with the same size and time stamp at the cost of two
+ * small reads; the file is never parsed on a hit.  Each entry is one JSON file in the cache
+ * directory, named by the SHA-1 of its key and holding the key itself, which is compared on
+ * every lookup:
+ * <pre>
+ *   {"inferenceCache": 1, "key": "...", "schema": partialSchema}
+ * </pre>
+ * Entries are written through a temporary file, so runs sharing the cache directory never
+ * read half an entry.  Stale entries are not removed.
+ */
+public class InferenceCache {
+	public static final int VERSION = 1;
+	static final int HASH_BYTES = 64 * 1024;
+
+	private final File dir;
+	private final String config;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param dir the cache directory, created if missing
+	 * @param config the config the files are inferred with
+	 */
+	public InferenceCache(File dir, SchemaConfig config) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create the cache directory " + dir + ".");
+		}
+		this.dir = dir;
+		this.config = describe(config);
+	}
+
+	/**
+	 * @return everything about a config that changes the schema inferred from a file
+	 */
+	private static String describe(SchemaConfig config) {
+		DocumentLimits limits = config.getLimits();
+		return "tableName=" + config.getTableName() + " xml=" + config.isXml() + " rootTag=" + config.getRootTag()
+				+ " responseTag=" + config.getResponseTag() + " metadataTags=" + config.getMetadataTags()
+				+ " typePaths=" + config.getTypePaths() + " allTypesString=" + config.isAllTypesString()
+				+ " records=" + config.isRecords() + " discriminator=" + config.getDiscriminator()
+				+ " maxTables=" + config.getMaxTables() + " streamArray=" + config.getStreamArray()
+				+ " limits=" + limits.getMaxDepth() + "," + limits.getMaxDocumentSize() + "," + limits.getMaxStringLength()
+				+ "," + limits.getMaxKeys() + "," + limits.getMaxArrayLength() + "," + limits.getMaxNumberDigits();
+	}
+
+	/**
+	 * Reads a file's size, time stamp and the ends of its content; taken before the file is
+	 * inferred, so a file changed while it is read is inferred again next time.
+	 *
+	 * @return the key of the file's entry
+	 */
+	public String key(File file) throws IOException {
+		long modified = file.lastModified();
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			long length = in.length();
+			CRC32 crc = new CRC32();
+			byte[] buffer = new byte[(int)Math.min(HASH_BYTES, length)];
+			in.readFully(buffer);
+			crc.update(buffer);
+			if (length > HASH_BYTES) {
+				in.seek(Math.max(HASH_BYTES, length - HASH_BYTES));
+				buffer = new byte[(int)(length - in.getFilePointer())];
+				in.readFully(buffer);
+				crc.update(buffer);
+			}
+			return "path=" + file.getAbsolutePath() + " size=" + length + " modified=" + modified
+					+ " crc=" + Long.toHexString(crc.getValue()) + " " + config;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return the partial schema cached under the key, null if there is none
+	 */
+	public PartialSchema get(String key) throws IOException {
+		File entry = entry(key);
+		if (entry.isFile()) {
+			JSONObject json;
+			Reader reader = new InputStreamReader(Files.newInputStream(entry.toPath()), StandardCharsets.UTF_8);
+			try {
+				json = new JSONObject(new JSONTokener(reader));
+			}
+			finally {
+				reader.close();
+			}
+			if (json.optInt("inferenceCache", -1) == VERSION && key.equals(json.optString("key"))) {
+				hits.incrementAndGet();
+				return PartialSchema.fromJSON(json.getJSONObject("schema"));
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	public void put(String key, PartialSchema partial) throws IOException {
+		JSONObject json = new JSONObject();
+		json.put("inferenceCache", VERSION);
+		json.put("key", key);
+		json.put("schema", partial.toJSON());
+		File entry = entry(key);
+		File tmp = File.createTempFile(entry.getName(), ".tmp", dir);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8);
+		try {
+			json.write(writer);
+			writer.write('\n');
+		}
+		finally {
+			writer.close();
+		}
+		Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File entry(String key) {
+		try {
+			StringBuilder name = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8))) {
+				name.append(String.format("%02x", b & 0xff));
+			}
+			return new File(dir, name.append(".json").toString());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the share of lookups that found an entry, between 0 and 1
+	 */
+	public double getHitRatio() {
+		long lookups = hits.get() + misses.get();
+		return (lookups == 0 ? 0 : (double)hits.get() / lookups);
+	}
+
+	/**
+	 * Adds the cache hits and misses to the report.
+	 */
+	public void report(InferenceReport report) {
+		report.section("cache");
+		report.add("directory", dir.getPath());
+		report.add("files from cache", hits.get() + " of " + (hits.get() + misses.get()));
+		report.add("hit ratio", String.format("%.1f%%", 100 * getHitRatio()));
+	}
+}
@@ -0,0 +1,74 @@
+package net.thornydev;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A plain text summary of an inference run: how many records went into each table, the
+ * record shapes that were seen and anything else worth knowing about how the schema was
+ * derived.  Written with <code>-report</code>.
+ */
+public class InferenceReport {
+	private final List<String> lines = new ArrayList<String>();
+
+	public InferenceReport section(String title) {
+		if (!lines.isEmpty()) {
+			lines.add("");
+		}
+		lines.add("== " + title + " ==");
+		return this;
+	}
+
+	public InferenceReport add(String name, Object value) {
+		lines.add(name + ": " + value);
+		return this;
+	}
+
+	/**
+	 * Adds the table's record count and, if they were counted, its most frequent record shapes.
+	 */
+	public InferenceReport addTable(TableAccumulator table, int maxShapes) {
+		section("table " + table.getTableName());
+		add("records", table.getRecords());
+		ShapeCounts shapes = table.getShapes();
+		if (shapes == null) {
+			return this;
+		}
+		add("distinct shapes counted", shapes.getShapes());
+		if (shapes.getUncountedRecords() > 0) {
+			add("records of shapes beyond -maxShapes", shapes.getUncountedRecords());
+		}
+		int n = 0;
+		for (Map.Entry<Long, Long> shape : shapes.getCountsByRecords()) {
+			if (n++ == maxShapes) {
+				break;
+			}
+			add("shape " + ShapeFingerprint.toHex(shape.getKey()), shape.getValue() + " records (" + percent(shape.getValue(), table.getRecords()) + ")");
+		}
+		return this;
+	}
+
+	static String percent(long part, long whole) {
+		return whole == 0 ? "0%" : String.format("%.2f%%", 100.0 * part / whole);
+	}
+
+	public void writeTo(Appendable out) throws IOException {
+		for (String line : lines) {
+			out.append(line).append('\n');
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeTo(sb);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return sb.toString();
+	}
+}
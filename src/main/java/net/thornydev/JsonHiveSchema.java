@@ -1,25 +1,34 @@
 package net.thornydev;
 
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Executor;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.XML;
 
 /**
  * Generates Hive schemas for use with the JSON SerDe from
@@ -37,19 +46,24 @@ import org.json.XML;
  * library, since it has not been packaged and made available for maven/ivy/gradle dependency
  * resolution.
  * 
+ * To generate schemas from code, build a {@link SchemaConfig} and a {@link SchemaInferencer}
+ * from it.  Both are immutable and can be shared across threads; every run keeps its own
+ * state in a {@link SchemaRouter}.
+ * 
  * <strong>Use of main method:</strong> <br>
  *   JsonHiveSchema has a main method that takes a file path to a JSON doc - this file should have
  *   only one JSON file in it.  An optional second argument can be provided to name the Hive table
  *   that is generated.
  */
 public class JsonHiveSchema  {
+	static final long SPLIT_SIZE = 64L * 1024 * 1024;
+	static final String DEFAULT_MAX_IN_FLIGHT = "256m";
+	// "-" as the input or output file: standard input or output
+	static final String STDIO = "-";
+	static final File STDIN = new File(STDIO);
 	static final String XPATH_SERDE = "column.xpath.";
 	static final String JSON_SERDE = "ROW FORMAT SERDE 'org.apache.hive.hcatalog.data.JsonSerDe';";
 	static final String XML_SERDE = "ROW FORMAT SERDE 'com.ibm.spss.hive.serde2.xml.XmlSerDe'";
-	static String KEYED_RESPONSE_ROOT = "KeyedResponse";
-	static String RESPONSE_ROOT = "Response";
-	static String[] METADATA_RESPONSE_TAGS = {""}; // {"TPSSourceRecord","ApplicationData","keyData"};
-	static boolean ALL_TYPES_STRING = false;
 	
 	static void help(Options options) {
 	  HelpFormatter formatter = new HelpFormatter();
@@ -63,20 +77,64 @@ public class JsonHiveSchema  {
 		map
 	}
   
-  public static void main( String[] args ) throws Exception {
-	  
-	try {
+  /**
+   * @return the command line options understood by {@link #main} and {@link SchemaConfig#fromCommandLine}
+   */
+  static Options options() {
 		Options options = new Options();
 		options.addOption("help","Print this message.");
 		options.addOption("inputType",true,"Inform schema tool what type of file is being input. Defaults to 'JSON'.");
 		options.addOption("tableName",true,"Tablename for the hive schema. Defaults to 'hive_table'.");
-		options.addOption("input",true,"File to build schema from.");
-		options.addOption("output",true,"File to output schema to.");
+		options.addOption("input",true,"File to build schema from. Several files or directories can be given separated by commas, their schemas are merged. '-' reads standard input.");
+		options.addOption("output",true,"File to output schema to, '-' for standard output only.");
 		options.addOption("allTypesString",false,"This flag makes all table types strings instead of the detected scalar type.");
 		options.addOption("rootTag",true,"Root tag in XML documents to parse. Default is '<KeyedResponse> and this option is ignored for JSON.");
 		options.addOption("responseTag",true,"Response tag within the Root tag for XML to parse for table structures. Default is '<Response>' and this option is ignored for JSON.");
 		options.addOption("metadataTags",true,"Tags not within the ResponseTag used for metadata. No default and not used for JSON.");
 		options.addOption("typePaths", true, "Paths to define independent primitive & complex types. Defaults to the root Response object.");
+		options.addOption("records",false,"Input holds many records: one JSON document per line, or one Root tag element after another for XML. Their schemas are merged.");
+		options.addOption("discriminator",true,"Path (relative to the Response object) of a field whose value routes each record to its own table. Implies -records.");
+		options.addOption("maxTables",true,"Maximum number of discriminator values that get their own table, the rest are merged into <tableName>_other. Defaults to 100.");
+		options.addOption("report",true,"File to write an inference report (records and record shapes per table) to, '-' for stderr.");
+		options.addOption("maxShapes",true,"Number of distinct record shapes counted per table for the -report. Defaults to 1024.");
+		options.addOption("manifest",true,"JSON or CSV file listing many tables (input, output, tableName and any other option) to generate in one run.");
+		options.addOption("threads",true,"Number of worker threads. Defaults to the number of processors.");
+		options.addOption("streamArray",true,"Path (relative to the Response object) of one huge array in a single JSON document. Its entries are parsed one at a time and inferred on -threads workers instead of loading the whole document.");
+		options.addOption("maxDepth",true,"Deepest nesting of objects and arrays, or XML elements, a document may have before it is rejected. Defaults to " + DocumentLimits.DEFAULT_MAX_DEPTH + ".");
+		options.addOption("maxDocumentSize",true,"Most characters of one document or record, e.g. 16m, longer input is rejected before it is held in memory. No limit by default.");
+		options.addOption("maxStringLength",true,"Most characters of one string, key or XML text, e.g. 1m. No limit by default.");
+		options.addOption("maxKeys",true,"Most keys of one object, or attributes and child tags of one XML element. No limit by default.");
+		options.addOption("maxArrayLength",true,"Most entries of one array, or repeats of one XML tag. No limit by default.");
+		options.addOption("maxNumberDigits",true,"Most digits of one number. No limit by default.");
+		options.addOption("quarantine",true,"Tolerant mode: records that fail to parse or exceed a limit are written to this file, with their file, position and error, and skipped instead of failing the run.");
+		options.addOption("snapshotEvery",true,"Write the schema inferred so far every this many records of a record stream, e.g. to watch a pipe into standard input.");
+		options.addOption("snapshot",true,"File to keep the latest -snapshotEvery schema in, replaced by every snapshot. Defaults to '-', every snapshot to stderr.");
+		options.addOption("watch",false,"Keep watching the -input directory and infer every file that lands in it once it is complete, rewriting the output only when the schema changes. Runs until killed.");
+		options.addOption("watchState",true,"File the -watch schema and the files already inferred are kept in across runs. Defaults to the output file with '.state' appended.");
+		options.addOption("watchQuiet",true,"Seconds a landing file must be left unmodified before -watch takes it as complete. Defaults to 2.");
+		options.addOption("prefix",true,"Infer a single document from only its first bytes, e.g. 64m (k, m and g suffixes are understood). The prefix is closed off to parse; -report shows how much was read.");
+		options.addOption("prefixTime",true,"Infer a single document from only what can be read in this many seconds, like -prefix.");
+		options.addOption("maxRecords",true,"Stop reading a record stream after this many records.");
+		options.addOption("maxBytes",true,"Stop reading a record stream after this many bytes of records, e.g. 512m.");
+		options.addOption("maxTime",true,"Stop reading a record stream after this many seconds.");
+		options.addOption("convergence",true,"Stop reading a record stream once this many records in a row added no new path and widened no type. -report states the confidence reached.");
+		options.addOption("sampleRecords",true,"Infer a record stream from a sample of this many records in total, divided among the input files or partitions (see -sampleBy).");
+		options.addOption("sampleBytes",true,"Like -sampleRecords, with a total budget of bytes, e.g. 256m.");
+		options.addOption("sampleBy",true,"'file' to sample every input file, 'partition' to sample every key=value partition directory. Defaults to 'partition' if the input has any.");
+		options.addOption("sampleQuota",true,"'proportional' to divide the sample in proportion to the size of each file or partition, 'even' to divide it evenly. Defaults to 'proportional'.");
+		options.addOption("maxInFlight",true,"Most bytes of input worked on at once when inferring many files, e.g. 1g. Defaults to 256m.");
+		options.addOption("cache",true,"Directory caching the partial schema of every input file, keyed by path, size, modification time and a hash of its ends. Unchanged files are merged from it instead of parsed again.");
+		options.addOption("splits",true,"Number of byte ranges a single newline delimited JSON input is split into and inferred from in parallel. Defaults to -threads for inputs of 64 MB or more, 1 otherwise.");
+		options.addOption("shard","shard",true,"Infer only shard i of n (given as i/n): every n-th input file, the i-th byte range of a single JSON record stream, or every n-th record of a single XML one. Implies -partial.");
+		options.addOption("partial",false,"Write a partial schema that -merge can combine with others to the output file instead of DDL.");
+		options.addOption("merge",true,"Comma separated partial schema files (or directories of them) to merge into the DDL written to the output file, or into another partial schema with -partial.");
+		return options;
+  }
+  
+  public static void main( String[] args ) throws Exception {
+	  
+	try {
+		Options options = options();
 
     	CommandLineParser parser = new DefaultParser();
     	CommandLine cmd = parser.parse(options,args);
@@ -86,159 +144,381 @@ public class JsonHiveSchema  {
     		help(options);
     		System.exit(0);
     	}
-    	else if (!cmd.hasOption("input") && !cmd.hasOption("output")) {
+    	else if (cmd.hasOption("manifest")) {
+    		File manifest = new File(cmd.getOptionValue("manifest"));
+    		int failures = new BatchRunner(manifest.getAbsoluteFile().getParentFile(), threads(cmd)).run(BatchRunner.readManifest(manifest));
+    		System.exit(failures == 0 ? 0 : 1);
+    	}
+    	else if ((!cmd.hasOption("input") && !cmd.hasOption("merge")) || !cmd.hasOption("output")) {
     		System.out.println("ERROR: Input & Output files must be specified.");
     		help(options);
     		System.exit(0);
     	}
     	
-    	// Set defaults for execution
-    	String inputFile = cmd.getOptionValue("input");
-    	String outputFile = cmd.getOptionValue("output");
-    	String tableName = (cmd.hasOption("tableName") ? cmd.getOptionValue("tableName") : "hive_table");
-    	boolean convertXML = (cmd.hasOption("inputType") ? (cmd.getOptionValue("inputType").equalsIgnoreCase("XML") ? true : false) : false);
-    	ALL_TYPES_STRING = (cmd.hasOption("allTypesString") ? true : false);
-    	KEYED_RESPONSE_ROOT = (cmd.hasOption("rootTag") ? cmd.getOptionValue("rootTag") : "KeyedResponse");
-    	RESPONSE_ROOT = (cmd.hasOption("responseTag") ? cmd.getOptionValue("responseTag") : "Response");
-    	String metadataTagsOption = (cmd.hasOption("metadataTags") ? cmd.getOptionValue("metadataTags") : "");
-    	String typePaths = (cmd.hasOption("typePaths") ? cmd.getOptionValue("typePaths").toString() : "Response");
-    	String fileText = "";
-    	String jsonText = "";
-        JsonHiveSchema schemaWriter = new JsonHiveSchema(tableName);
-        
-        // Convert Nested Levels to a collection to iterate.
-        List<String> primaryHiveTypes;
-        
-        if(typePaths.contains(",")){
-        	primaryHiveTypes = Arrays.asList(typePaths.split(","));
-        }
-        else {
-        	primaryHiveTypes = Arrays.asList(typePaths);
-        }
-        
-        if(metadataTagsOption.contains(",")){
-        	METADATA_RESPONSE_TAGS = metadataTagsOption.split(",");
-        }
-        else {
-        	METADATA_RESPONSE_TAGS = new String[] {metadataTagsOption};
-        }
-               
-    	// Read in the input file
-        StringBuilder sb = new StringBuilder();
-        BufferedReader br = new BufferedReader( new FileReader(inputFile) );
-        String line;
-        while ( (line = br.readLine()) != null ) {
-          sb.append(line).append("\n");
-        }
-        br.close();
-        
-        fileText = sb.toString();
-        
-        // Manipulate JSONObject to create template object of Hive structure
-        JSONObject initialObj;
-        JSONObject finalObj;
-        JSONObject respRoot;
-
-        if(convertXML) {
-        	schemaWriter.serdeType = "XML";
-
-        	// Convert the XML to a JSON Object
-        	initialObj = XML.toJSONObject(fileText);
-
-        	// Add the Keyed Data to the new object
-        	for(String item : Arrays.asList(METADATA_RESPONSE_TAGS)){
-        		if(item != "") 
-        			schemaWriter._xPaths.add(formatXPath(item, item.replace("/", "_"), HIVE_TYPE.struct));        		
-        	}       	
-        }
-        else
-        {
-    		initialObj = new JSONObject(fileText);
-        }
+    	if (cmd.hasOption("watch")) {
+    		watch(cmd, null);
+    		return;
+    	}
+    	System.out.println(run(cmd, null));
+	}
+	finally {}
+  }
+  
+  /**
+   * Generates the DDL for one set of parsed command line options, writing the output and report
+   * files they name.  Used by {@link #main} and by {@link SchemaServer} for every request.
+   * 
+   * @param cmd options parsed with {@link #options()}
+   * @param baseDir directory relative file names are resolved against, null for the working directory
+   * @return the generated DDL, or a note saying where the partial schema was written
+   */
+  static String run(CommandLine cmd, File baseDir) throws Exception {
+	  return run(cmd, baseDir, null);
+  }
 
-       	// Take the known parts of the Key Data and create a new object that will be the final output
-    	finalObj = new JSONObject(initialObj.getJSONObject(KEYED_RESPONSE_ROOT), METADATA_RESPONSE_TAGS );
+  /**
+   * Like {@link #run(CommandLine, File)}, but runs the parallel stages on a shared executor
+   * instead of pools of their own, so the runs of a {@link BatchRunner} share one pool.
+   *
+   * @param executor the executor for the parallel stages, null for pools of <code>-threads</code> threads
+   */
+  static String run(CommandLine cmd, File baseDir, Executor executor) throws Exception {
+    	// Both run until they are done with runs of their own, which a server or batch cannot wait for
+    	if (cmd.hasOption("watch") || cmd.hasOption("manifest")) {
+    		throw new IllegalArgumentException("-watch and -manifest can only be run on their own, not by a batch or the server.");
+    	}
+    	if (cmd.hasOption("merge")) {
+    		return merge(cmd, baseDir);
+    	}
+    	// Tolerant mode: records that fail go to the quarantine file instead of failing the run
+    	Quarantine quarantine = (cmd.hasOption("quarantine") ? new Quarantine(resolve(baseDir, cmd.getOptionValue("quarantine"))) : null);
+    	try {
+    		return infer(cmd, baseDir, executor, quarantine);
+    	}
+    	finally {
+    		if (quarantine != null) {
+    			quarantine.close();
+    		}
+    	}
+  }
 
-    	// Get the root response object, list of all keys, then determine if we iterate for certain sub-keys or type the whole response.
-    	respRoot = initialObj.getJSONObject(KEYED_RESPONSE_ROOT).getJSONObject(RESPONSE_ROOT);
+  /**
+   * Watches the <code>-input</code> directory with a {@link DirectoryWatcher} until killed.
+   *
+   * @param baseDir directory relative file names are resolved against, null for the working directory
+   */
+  static void watch(CommandLine cmd, File baseDir) throws Exception {
+	  File dir = resolve(baseDir, cmd.getOptionValue("input"));
+	  if (!dir.isDirectory()) {
+		  throw new IllegalArgumentException("-watch needs a directory as -input, not " + dir + ".");
+	  }
+	  if (isStdout(cmd) && !cmd.hasOption("watchState")) {
+		  throw new IllegalArgumentException("-watch with -output - needs a -watchState file.");
+	  }
+	  File stateFile = resolve(baseDir, cmd.getOptionValue("watchState", cmd.getOptionValue("output") + ".state"));
+	  Quarantine quarantine = (cmd.hasOption("quarantine") ? new Quarantine(resolve(baseDir, cmd.getOptionValue("quarantine"))) : null);
+	  try {
+		  SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.fromCommandLine(cmd), quarantine);
+		  new DirectoryWatcher(inferencer, dir, stateFile, isStdout(cmd) ? null : resolve(baseDir, cmd.getOptionValue("output")), cmd.hasOption("partial"),
+				  threads(cmd), (long)(Double.parseDouble(cmd.getOptionValue("watchQuiet", "2")) * 1000), quarantine).run();
+	  }
+	  finally {
+		  if (quarantine != null) {
+			  quarantine.close();
+		  }
+	  }
+  }
 
-        // Testing method for all keys
-    	ArrayList<String> keys = schemaWriter.getKeys(respRoot);
-    	keys.size();
-        
-    	for(String type : primaryHiveTypes){
-    		if(type.equalsIgnoreCase("Response")){
-    			finalObj.put(type, respRoot);
+  /**
+   * Infers the schema of the <code>-input</code> files for {@link #run}.
+   *
+   * @param executor the executor for the parallel stages, null for pools of <code>-threads</code> threads
+   * @param quarantine receives the records that fail, null to fail on the first one
+   */
+  private static String infer(CommandLine cmd, File baseDir, Executor executor, Quarantine quarantine) throws Exception {
+    	// Set defaults for execution
+    	List<File> inputFiles = files(baseDir, cmd.getOptionValue("input"));
+    	File outputFile = resolve(baseDir, cmd.getOptionValue("output"));
+    	String reportFile = cmd.getOptionValue("report");
+    	Shard shard = (cmd.hasOption("shard") ? Shard.parse(cmd.getOptionValue("shard")) : Shard.ALL);
+    	SchemaConfig config = SchemaConfig.fromCommandLine(cmd);
+    	boolean stdin = inputFiles.contains(STDIN);
+    	if (stdin && inputFiles.size() > 1) {
+    		throw new IllegalArgumentException("Standard input cannot be combined with other inputs.");
+    	}
+    	// Intermediate schemas every so many records, of a stream read on this thread
+    	SchemaSnapshots snapshots = null;
+    	if (cmd.hasOption("snapshotEvery")) {
+    		String snapshotFile = cmd.getOptionValue("snapshot", STDIO);
+    		snapshots = new SchemaSnapshots(Long.parseLong(cmd.getOptionValue("snapshotEvery")), snapshotFile.equals(STDIO) ? null : resolve(baseDir, snapshotFile));
+    	}
+    	SchemaInferencer inferencer = new SchemaInferencer(config, quarantine);
+    	// Unchanged files are merged from the cache of earlier runs
+    	InferenceCache cache = null;
+    	if (cmd.hasOption("cache")) {
+    		if (stdin || snapshots != null || config.getStreamArray() != null || cmd.hasOption("prefix") || cmd.hasOption("prefixTime")) {
+    			throw new IllegalArgumentException("-cache cannot be combined with standard input, -snapshotEvery, -streamArray or -prefix.");
     		}
-    		else if(type.contains("/")){
-				Object o;
-				String queryPath = "";
-				if(type.contains("@")) {
-					// Our type is an array that needs to be parsed as independent objects
-					queryPath = type.split("@")[0];
-					String key = type.split("@")[1].split(":")[0];
-					String value = type.split("@")[1].split(":")[1];
-					o = respRoot.query((!queryPath.startsWith("/")? "/" + queryPath : queryPath));
-					String xpathValue = "";
-					for(int i = 0; i < ((JSONArray)o).length(); i++) {
-						JSONObject j = ((JSONArray)o).getJSONObject(i);
-						if(j.get(key).equals(value)) {
-							o = j;
-							xpathValue = "[@" + key + "='" + value + "']";
-							break;
-						}
-					}
-					finalObj.put(queryPath.replace("/", "_") + "_" + value,o);
-					if(convertXML){
-						HIVE_TYPE hiveType;
-						if(o instanceof JSONObject) {
-							hiveType = HIVE_TYPE.struct;
-						}
-						else if(o instanceof JSONArray){
-							hiveType = HIVE_TYPE.array;
-						}
-						else {
-							hiveType = HIVE_TYPE.primitive;
-						}
-						schemaWriter._xPaths.add(formatXPath(RESPONSE_ROOT + "/" + queryPath + xpathValue, queryPath.replace("/", "_") + "_" + value, hiveType));
-					}
-				}
-				else {
-					queryPath = type;
-					o = respRoot.query((!queryPath.startsWith("/")? "/" + queryPath : queryPath));
-					String queryPathName = (queryPath.endsWith("/") ? queryPath.substring(0, queryPath.lastIndexOf("/")).replace("/", "_") : queryPath.replace("/", "_"));
-					finalObj.put(queryPathName,o);
-					if(convertXML){
-						HIVE_TYPE hiveType;
-						if(o instanceof JSONObject) {
-							hiveType = HIVE_TYPE.struct;
-						}
-						else if(o instanceof JSONArray){
-							hiveType = HIVE_TYPE.array;
-						}
-						else {
-							hiveType = HIVE_TYPE.primitive;
-						}
-						schemaWriter._xPaths.add(formatXPath(RESPONSE_ROOT + "/" + queryPath, queryPathName, hiveType));
-					}
-				}
+    		if (cmd.hasOption("shard") && inputFiles.size() == 1) {
+    			throw new IllegalArgumentException("-cache keeps whole files, so it cannot be combined with -shard of a single file.");
     		}
-    		else {
-    			throw new IllegalArgumentException("Invalid path specified.");
+    		// A file merged from the cache is not read, so it could not count against a budget
+    		if (cmd.hasOption("maxRecords") || cmd.hasOption("maxBytes") || cmd.hasOption("maxTime") || cmd.hasOption("convergence")) {
+    			throw new IllegalArgumentException("-cache cannot be combined with -maxRecords, -maxBytes, -maxTime or -convergence.");
     		}
+    		cache = new InferenceCache(resolve(baseDir, cmd.getOptionValue("cache")), config);
     	}
-    	
-    	jsonText = finalObj.toString(); 
-        
-    	// Use the schema writer to build out DDL & write to console/file
-        StringBuilder output = new StringBuilder();
-        output.append(schemaWriter.createHiveSchema(jsonText)).append("\n").append(schemaWriter.createHiveQuery(jsonText));
-        //output.append("\n\n\n\n\n").append(initialObj.toString(3));
-        System.out.println(output.toString());
+               
+    	SchemaRouter router;
+    	Map<String, DocumentPrefix> prefixes = new LinkedHashMap<String, DocumentPrefix>();
+    	InferenceBudget budget = new InferenceBudget(Long.parseLong(cmd.getOptionValue("maxRecords", "0")), bytes(cmd.getOptionValue("maxBytes", "0")),
+    			(long)(Double.parseDouble(cmd.getOptionValue("maxTime", "0")) * 1000), Long.parseLong(cmd.getOptionValue("convergence", "0")));
+    	StratifiedSampler sampler = null;
+    	WorkScheduler scheduler = null;
+    	if (cmd.hasOption("sampleRecords") || cmd.hasOption("sampleBytes")) {
+    		if (cmd.hasOption("shard") || stdin || snapshots != null || cache != null) {
+    			throw new IllegalArgumentException("-sampleRecords and -sampleBytes cannot be combined with -shard, -snapshotEvery, -cache or standard input.");
+    		}
+    		// Every file or partition gets its share of the sample
+    		boolean byPartition = (cmd.hasOption("sampleBy") ? cmd.getOptionValue("sampleBy").equalsIgnoreCase("partition") : StratifiedSampler.hasPartitions(inputFiles));
+    		sampler = new StratifiedSampler(inferencer, inputFiles, byPartition, !cmd.getOptionValue("sampleQuota", "proportional").equalsIgnoreCase("even"));
+    		router = sampler.sample(Long.parseLong(cmd.getOptionValue("sampleRecords", "0")), bytes(cmd.getOptionValue("sampleBytes", "0")),
+    				Long.parseLong(cmd.getOptionValue("convergence", "0")), budget, threads(cmd), executor);
+    	}
+    	else if (config.isRecords() && !config.isXml() && inputFiles.size() == 1 && inputFiles.get(0).isFile() && !ReadAheadInputStream.isCompressed(inputFiles.get(0))
+    			&& snapshots == null && cache == null) {
+    		// A single newline delimited JSON file is sharded by byte range, and each shard split across threads
+    		File inputFile = inputFiles.get(0);
+    		long[] range = SplitLineReader.boundaries(0, inputFile.length(), shard.getCount());
+    		long start = range[shard.getIndex()];
+    		long end = range[shard.getIndex() + 1];
+    		router = inferencer.infer(inputFile, start, end, splits(cmd, end - start), threads(cmd), budget, executor);
+    	}
+    	else if ((inputFiles.size() > 1 || cache != null) && config.getStreamArray() == null && !cmd.hasOption("prefix") && !cmd.hasOption("prefixTime")
+    			&& snapshots == null) {
+    		// Many inputs (or cached ones) are sharded by file and spread over the worker threads
+    		List<File> selected = new ArrayList<File>();
+    		for (int i = 0; i < inputFiles.size(); i++) {
+    			if (shard.selects(i)) {
+    				selected.add(inputFiles.get(i));
+    			}
+    		}
+    		// Ranges small enough that every thread can work on one within the in-flight cap
+    		long maxInFlight = bytes(cmd.getOptionValue("maxInFlight", DEFAULT_MAX_IN_FLIGHT));
+    		scheduler = new WorkScheduler(inferencer, executor, threads(cmd), maxInFlight, Math.max(1, Math.min(SPLIT_SIZE, maxInFlight / threads(cmd))), cache);
+    		router = scheduler.run(selected, budget);
+    	}
+    	else {
+    		// Several inputs (or single documents) are sharded by file, a single XML record stream (or
+    		// a pipe) by record
+    		boolean shardFiles = (inputFiles.size() > 1 || !config.isRecords());
+    		router = inferencer.newRouter();
+    		for (int i = 0; i < inputFiles.size(); i++) {
+    			if (budget.getStopReason() != null) {
+    				break;
+    			}
+    			if (shardFiles && !shard.selects(i)) {
+    				continue;
+    			}
+    			BufferedReader br;
+    			if (!config.isRecords() && (cmd.hasOption("prefix") || cmd.hasOption("prefixTime"))) {
+    				if (stdin || ReadAheadInputStream.isCompressed(inputFiles.get(i))) {
+    					throw new IllegalArgumentException("-prefix and -prefixTime cannot read " + (stdin ? "standard input" : "compressed input " + inputFiles.get(i)) + ".");
+    				}
+    				// Only infer from the start of a huge document, closed off so it parses
+    				DocumentPrefix prefix = DocumentPrefix.read(inputFiles.get(i), bytes(cmd.getOptionValue("prefix", "0")),
+    						(long)(Double.parseDouble(cmd.getOptionValue("prefixTime", "0")) * 1000), config.isXml());
+    				if (prefix.isTruncated()) {
+    					System.err.println("WARNING: schema of " + inputFiles.get(i) + " inferred from a prefix of " + prefix.describe() + ".");
+    				}
+    				prefixes.put(inputFiles.get(i).getPath(), prefix);
+    				br = new BufferedReader(new StringReader(prefix.getText()));
+    			}
+    			else if (stdin) {
+    				// Read as it arrives, e.g. from zcat, and never closed
+    				br = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    			}
+    			else {
+    				br = ReadAheadInputStream.open(inputFiles.get(i));
+    			}
+    			try {
+    				if (config.getStreamArray() != null) {
+    					inferencer.inferStreaming(router, br, threads(cmd), executor);
+    				}
+    				else {
+    					inferencer.infer(router, inputFiles.get(i).getPath(), br, shardFiles ? Shard.ALL : shard, budget, snapshots);
+    				}
+    			}
+    			finally {
+    				if (!stdin) {
+    					br.close();
+    				}
+    			}
+    		}
+    	}
+    	if (budget.getStopReason() != null) {
+    		System.err.println("WARNING: stopped reading after " + router.getRecords() + " records, " + budget.getStopReason() + ".");
+    	}
+    	for (String collision : inferencer.collisions(router)) {
+    		System.err.println("WARNING: name collision, " + collision + ".");
+    	}
+    	if (quarantine != null && quarantine.getRecords() > 0) {
+    		System.err.println("WARNING: " + quarantine.getRecords() + " records failed and were written to " + quarantine.getFile() + ".");
+    	}
+    	if (router.getOverflowRecords() > 0) {
+    		System.err.println("WARNING: " + router.getOverflowRecords() + " records exceeded -maxTables " + config.getMaxTables() + " and were merged into " + config.getTableName() + SchemaRouter.OTHER_SUFFIX + ".");
+    	}
+
+    	if (reportFile != null) {
+        	InferenceReport report = new InferenceReport();
+        	report.section("input").add("file", cmd.getOptionValue("input"));
+        	if (cmd.hasOption("shard")) {
+        		report.add("shard", shard);
+        	}
+        	for (Map.Entry<String, DocumentPrefix> prefix : prefixes.entrySet()) {
+        		report.add("prefix read of " + prefix.getKey(), prefix.getValue().describe());
+        	}
+        	if (sampler != null) {
+        		sampler.report(report);
+        	}
+        	if (scheduler != null) {
+        		scheduler.report(report);
+        	}
+        	if (cache != null) {
+        		cache.report(report);
+        	}
+        	if (quarantine != null) {
+        		quarantine.report(report);
+        	}
+        	if (snapshots != null) {
+        		report.add("schema snapshots", snapshots.getSnapshots() + " to " + cmd.getOptionValue("snapshot", "stderr"));
+        	}
+        	if (config.isRecords()) {
+        		report.section("convergence");
+        		report.add("records inferred", router.getRecords());
+        		String stopped = budget.getStopReason();
+        		if (stopped == null && sampler != null) {
+        			stopped = sampler.getStopReason();
+        		}
+        		report.add("stopped", stopped == null ? "end of input" : stopped);
+        		report.add("records since last schema change", router.getRecordsSinceChange());
+        		report.add("confidence", InferenceBudget.confidence(router.getRecordsSinceChange()));
+        	}
+        	inferencer.report(router, report);
+        	writeReport(report, reportFile.equals("-") ? reportFile : resolve(baseDir, reportFile).getPath());
+        }
+    	if (cmd.hasOption("partial") || cmd.hasOption("shard")) {
+    		PartialSchema partial = PartialSchema.of(router, config.isXml());
+    		if (isStdout(cmd)) {
+    			return partial.toJSON().toString();
+    		}
+    		partial.write(outputFile);
+    		return "Partial schema of " + cmd.getOptionValue("input") + (cmd.hasOption("shard") ? " shard " + shard : "") + " written to " + cmd.getOptionValue("output") + ".";
+    	}
+
+    	// Use the schema writer to build out DDL for every table & write to console/file
+        String output = inferencer.render(router);
+        if (!isStdout(cmd)) {
+        	write(outputFile, output);
+        }
+        return output;
+  }
+  
+  /**
+   * Merges the partial schema files named by <code>-merge</code> and writes either the DDL or,
+   * with <code>-partial</code>, the merged partial schema.
+   */
+  static String merge(CommandLine cmd, File baseDir) throws Exception {
+	  File outputFile = resolve(baseDir, cmd.getOptionValue("output"));
+	  PartialSchema merged = null;
+	  for (File file : files(baseDir, cmd.getOptionValue("merge"))) {
+		  PartialSchema partial = PartialSchema.read(file);
+		  merged = (merged == null ? partial : merged.merge(partial));
+	  }
+	  if (merged == null) {
+		  throw new IllegalArgumentException("No partial schema files found in " + cmd.getOptionValue("merge"));
+	  }
+	  if (cmd.hasOption("partial")) {
+		  if (isStdout(cmd)) {
+			  return merged.toJSON().toString();
+		  }
+		  merged.write(outputFile);
+		  return "Merged partial schema written to " + cmd.getOptionValue("output") + ".";
+	  }
+	  if (merged.getOverflowRecords() > 0) {
+		  System.err.println("WARNING: " + merged.getOverflowRecords() + " records exceeded -maxTables and were merged into the " + SchemaRouter.OTHER_SUFFIX + " table.");
+	  }
+	  // The input type was fixed when the partial schemas were inferred
+	  SchemaConfig config = SchemaConfig.fromCommandLine(cmd).toBuilder().xml(merged.isXml()).build();
+	  SchemaInferencer inferencer = new SchemaInferencer(config);
+	  for (String collision : inferencer.collisions(merged)) {
+		  System.err.println("WARNING: name collision, " + collision + ".");
+	  }
+	  String output = inferencer.render(merged);
+	  if (!isStdout(cmd)) {
+		  write(outputFile, output);
+	  }
+	  return output;
+  }
+  
+  /**
+   * Expands a comma separated list of files and directories into the files it names.  Directories
+   * are walked recursively, e.g. the <code>key=value</code> partition directories of a Hive table,
+   * with each directory's entries in name order so every process sees the same list.  Hidden
+   * entries and those starting with '_' (like Hadoop's <code>_SUCCESS</code>) are skipped.
+   */
+  static List<File> files(File baseDir, String paths) {
+	  List<File> files = new ArrayList<File>();
+	  for (String path : paths.split(",")) {
+		  if (path.trim().isEmpty()) {
+			  continue;
+		  }
+		  if (path.trim().equals(STDIO)) {
+			  files.add(STDIN);
+			  continue;
+		  }
+		  File file = resolve(baseDir, path.trim());
+		  if (file.isDirectory()) {
+			  addFiles(file, files);
+		  }
+		  else {
+			  files.add(file);
+		  }
+	  }
+	  return files;
+  }
+  
+  private static void addFiles(File dir, List<File> files) {
+	  File[] children = dir.listFiles();
+	  if (children == null) {
+		  return;
+	  }
+	  Arrays.sort(children);
+	  for (File child : children) {
+		  if (child.isHidden() || child.getName().startsWith(".") || child.getName().startsWith("_")) {
+			  continue;
+		  }
+		  if (child.isDirectory()) {
+			  addFiles(child, files);
+		  }
+		  else if (child.isFile()) {
+			  files.add(child);
+		  }
+	  }
+  }
+  
+  /**
+   * @return whether the output goes to standard output only, as <code>-output -</code>
+   */
+  static boolean isStdout(CommandLine cmd) {
+	  return STDIO.equals(cmd.getOptionValue("output"));
+  }
+  
+  static void write(File outputFile, String output) throws IOException {
         FileWriter writer = null;
         try {
         	writer = new FileWriter(outputFile);
-        	writer.write(output.toString());
+        	writer.write(output);
         }
         finally {
         	if(writer != null){
@@ -246,20 +526,97 @@ public class JsonHiveSchema  {
         		writer.close();
         	}
         }
-	}
-	finally {}
   }
   
+  static int threads(CommandLine cmd) {
+	  return (cmd.hasOption("threads") ? Integer.parseInt(cmd.getOptionValue("threads")) : Runtime.getRuntime().availableProcessors());
+  }
+  
+  /**
+   * @return the number of byte ranges to split a newline delimited JSON input of <code>length</code> bytes into
+   */
+  static int splits(CommandLine cmd, long length) {
+	  if (cmd.hasOption("splits")) {
+		  return Integer.parseInt(cmd.getOptionValue("splits"));
+	  }
+	  return (length >= SPLIT_SIZE ? threads(cmd) : 1);
+  }
+  
+  /**
+   * Parses a byte count with an optional k, m or g suffix, e.g. <code>512k</code> or <code>64m</code>.
+   */
+  static long bytes(String size) {
+	  String s = size.trim().toLowerCase();
+	  int shift = 0;
+	  if (s.endsWith("k")) {
+		  shift = 10;
+	  }
+	  else if (s.endsWith("m")) {
+		  shift = 20;
+	  }
+	  else if (s.endsWith("g")) {
+		  shift = 30;
+	  }
+	  return Long.parseLong(shift == 0 ? s : s.substring(0, s.length() - 1).trim()) << shift;
+  }
+  
+  static File resolve(File baseDir, String path) {
+	  File file = new File(path);
+	  return (baseDir == null || file.isAbsolute() ? file : new File(baseDir, path));
+  }
+  
+  static void writeReport(InferenceReport report, String reportFile) throws IOException {
+	  if (reportFile.equals("-")) {
+		  report.writeTo(System.err);
+		  return;
+	  }
+	  FileWriter writer = new FileWriter(reportFile);
+	  try {
+		  report.writeTo(writer);
+	  }
+	  finally {
+		  writer.close();
+	  }
+  }
+  
+  private final SchemaConfig config;
+  private final ColumnNames names;
   private String tableName = "hive_table";
   private String serdeType = "JSON";
   private ArrayList<String> _xPaths = new ArrayList<String>();
-  private ArrayList<String> _reservedKeywords = new ArrayList<String>();
   
-  public JsonHiveSchema() {}
+  public JsonHiveSchema() {
+    this(SchemaConfig.DEFAULT_TABLE_NAME);
+  }
   
   public JsonHiveSchema(String tableName) {
+    this(tableName, SchemaConfig.builder().tableName(tableName).build());
+  }
+  
+  /**
+   * A schema writer for one table, using the XML tags and type settings of <code>config</code>.
+   * Instances are cheap and not thread-safe, create one per table rendered.
+   * 
+   * @param tableName the name of the table, which may differ from the config's when discriminating
+   * @param config the settings to render with
+   */
+  public JsonHiveSchema(String tableName, SchemaConfig config) {
+    this(tableName, config, new ColumnNames());
+  }
+
+  /**
+   * A schema writer for one table that normalizes its column names through a cache shared
+   * with the other tables its inferencer renders.
+   */
+  public JsonHiveSchema(String tableName, SchemaConfig config, ColumnNames names) {
+    this.config = config;
+    this.names = names;
     this.tableName = tableName;
-    _reservedKeywords.addAll(Arrays.asList(new String[] {"ALL","ALTER","AND","ARRAY","AS","AUTHORIZATION","BETWEEN","BIGINT","BINARY","BOOLEAN","BOTH","BY","CASE","CAST","CHAR","COLUMN","CONF","CREATE","CROSS","CUBE","CURRENT","CURRENT_DATE","CURRENT_TIMESTAMP","CURSOR","DATABASE","DATE","DECIMAL","DELETE","DESCRIBE","DISTINCT","DOUBLE","DROP","ELSE","END","EXCHANGE","EXISTS","EXTENDED","EXTERNAL","FALSE","FETCH","FLOAT","FOLLOWING","FOR","FROM","FULL","FUNCTION","GRANT","GROUP","GROUPING","HAVING","IF","IMPORT","IN","INNER","INSERT","INT","INTERSECT","INTERVAL","INTO","IS","JOIN","LATERAL","LEFT","LESS","LIKE","LOCAL","MACRO","MAP","MORE","NONE","NOT","NULL","OF","ON","OR","ORDER","OUT","OUTER","OVER","PARTIALSCAN","PARTITION","PERCENT","PRECEDING","PRESERVE","PROCEDURE","RANGE","READS","REDUCE","REGEXP","REVOKE","RIGHT","RLIKE","ROLLUP","ROW","ROWS","SELECT","SET","SMALLINT","TABLE","TABLESAMPLE","THEN","TIMESTAMP","TO","TRANSFORM","TRIGGER","TRUE","TRUNCATE","UNBOUNDED","UNION","UNIQUEJOIN","UPDATE","USER","USING","VALUES","VARCHAR","WHEN","WHERE","WINDOW","WITH"}));
+    this.serdeType = (config.isXml() ? "XML" : "JSON");
+  }
+  
+  void addXPaths(Collection<String> xPaths) {
+    _xPaths.addAll(xPaths);
   }
   
   /**
@@ -274,239 +631,259 @@ public class JsonHiveSchema  {
    * @throws JSONException if the JSON does not parse correctly
    */
   public String createHiveSchema(String json) throws JSONException {
-    JSONObject jo = new JSONObject(json);
-    
-    Iterator<String> keys = jo.keys();
-    StringBuilder columnDDL = new StringBuilder();
-    ArrayList<String> columns = new ArrayList<String>();
-    columnDDL.append("%%");
-	while (keys.hasNext()) {
-		StringBuilder column = new StringBuilder();
-		String k = keys.next();
-		column.append("\t,");
-		column.append((_reservedKeywords.contains(k.toUpperCase()) ? "`" + k.replace(":", "_").replace("-", "").replace(".","").toLowerCase() + "`" : k.replace(":", "_").replace("-", "").replace(".","").toLowerCase()));
-		column.append(' ');
-		column.append(valueToHiveSchema(jo.opt(k), k));
-		column.append("\n");
-		
-		columns.add(column.toString());
-	}
-	Collections.sort(columns);
-	for(String column : columns){
-		columnDDL.append(column);
-	}
-	String columnDDLText = columnDDL.toString().replace("%%\t,","\t"); // remove first comma
-    return formatHiveTable(tableName, columnDDLText);
+    return createHiveSchema(SchemaNode.of(new JSONObject(json)));
   }
   
-  public String createHiveQuery(String json) throws JSONException {
-	  JSONObject jo = new JSONObject(json);
-	    
-	    Iterator<String> keys = jo.keys();
-	    StringBuilder sb = new StringBuilder("CREATE VIEW view_name AS SELECT\n");
-	    ArrayList<String> columns = new ArrayList<String>();
-	    sb.append("%%");
-	    while (keys.hasNext()) {
-	    	StringBuilder column = new StringBuilder();
-			String k = keys.next();
-			column.append(valueToHiveQuery(jo.opt(k),k));
-			columns.add(column.toString());
-	    }
-		Collections.sort(columns);
-		for(String column : columns){
-			sb.append(column);
-		}	
-	    
-	    return sb.append("FROM ").append(tableName).append(" \n").toString().replace("%%\t,","\t"); // remove first comma
+  /**
+   * Renders the Hive schema of an accumulated schema trie, see {@link TableAccumulator}.
+   * 
+   * @param schema the trie whose top-level fields become the table columns
+   * @return string Hive schema
+   */
+  public String createHiveSchema(SchemaNode schema) {
+    StringBuilder sb = new StringBuilder();
+    try {
+      writeHiveSchema(sb, schema);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // a StringBuilder does not throw
+    }
+    return sb.toString();
   }
 
-  private String toHiveSchema(JSONObject o, String parent) throws JSONException { 
-    Iterator<String> keys = o.keys();
-    StringBuilder sb = new StringBuilder("struct<");
-    
-    while (keys.hasNext()) {
-      String k = keys.next(); 
-      String fieldName = (k.equals("content") ? parent : k);
-      sb.append((_reservedKeywords.contains(fieldName.toUpperCase()) ? "`" + fieldName.replace(":", "_").replace("-", "").replace(".","") + "`" : fieldName.replace(":", "_").replace("-", "").replace(".","")));
-      sb.append(':');
-      sb.append(valueToHiveSchema(o.opt(k), k));
-      sb.append(",");
+  /**
+   * Streams the Hive schema of a schema trie to <code>out</code> in one walk of the trie, so
+   * very wide schemas are written without building and copying a string per column.
+   * 
+   * @param schema the trie whose top-level fields become the table columns
+   */
+  public void writeHiveSchema(Appendable out, SchemaNode schema) throws IOException {
+    out.append("CREATE EXTERNAL TABLE ").append(tableName).append(" (\n");
+    String separator = "\t";
+    for (String k : sortedColumns(schema)) {
+      out.append(separator).append(names.column(k)).append(' ');
+      appendHiveType(out, schema.getChild(k), k);
+      out.append('\n');
+      separator = "\t,";
     }
-    sb.replace(sb.length() - 1, sb.length(), ">"); // remove last comma
-    return sb.toString();
+    out.append(")\n");
+    appendTableProperties(out);
   }
   
-  private String toHiveSchema(JSONArray a, String parent) throws JSONException {
-	    return "array<" + arrayJoin(a, ",", parent) + '>';
+  public String createHiveQuery(String json) throws JSONException {
+	  return createHiveQuery(SchemaNode.of(new JSONObject(json)));
   }
- 
-  private String toHiveQuery(JSONObject o, String keyName) throws JSONException { 
-	    Iterator<String> keys = o.keys();
-	    StringBuilder sb = new StringBuilder();
-	    
-	    while (keys.hasNext()) {
-	      String k = keys.next();
-		  if (isScalar(o.opt(k))) {
-		      sb.append("\t,").append(keyName.toLowerCase()).append(".").append(k.toString().toLowerCase()); // first part
-		      sb.append(" AS ").append((keyName.contains(".") ? keyName.replace('.', '_').toLowerCase() : keyName.toLowerCase() )).append("_").append(k.toLowerCase()).append("\n"); // AS part
-		  } else if (o.opt(k) instanceof JSONObject) {
-			  sb.append(toHiveQuery((JSONObject)o.opt(k),keyName + "." + k));
-		  } else if (o.opt(k) instanceof JSONArray) {
-		      sb.append("\t,").append(keyName.toLowerCase()).append(".").append(k.toString().toLowerCase()); // first part
-		      sb.append(" AS ").append((keyName.contains(".") ? keyName.replace('.', '_').toLowerCase() : keyName.toLowerCase() )).append("_").append(k.toLowerCase()).append("\n"); // AS part
-		  }  
-	    }    
-	    return sb.toString();
+  
+  public String createHiveQuery(SchemaNode schema) {
+	  StringBuilder sb = new StringBuilder();
+	  try {
+		  writeHiveQuery(sb, schema);
+	  } catch (IOException e) {
+		  throw new IllegalStateException(e); // a StringBuilder does not throw
 	  }
-
-  private String valueToHiveSchema(Object o, String parent) throws JSONException {
-    if ( isScalar(o) ) {
-      return scalarType(o);
-    } else if (o instanceof JSONObject) {
-      return toHiveSchema((JSONObject)o, parent);
-    } else if (o instanceof JSONArray) {
-      return toHiveSchema((JSONArray)o, parent);
-    } else {
-      throw new IllegalArgumentException("unknown type: " + o.getClass());
-    }
+	  return sb.toString();
   }
-  
-  private String valueToHiveQuery(Object o, String keyName) throws JSONException {
-	  if (isScalar(o)) {
-		  StringBuilder sb = new StringBuilder("\t,");
-		  return sb.append(keyName.toLowerCase()).append(" AS ").append(keyName.toLowerCase().replace(".", "_")).append("\n").toString();
-	  } else if (o instanceof JSONObject) {
-		  return toHiveQuery((JSONObject)o,keyName);
-	  } else if (o instanceof JSONArray) {
-		  StringBuilder sb = new StringBuilder("\t,");
-		  return sb.append(keyName.toLowerCase()).append(" AS ").append(keyName.toLowerCase().replace(".", "_")).append("\n").toString();
-	  } else {
-		  throw new IllegalArgumentException("unknown type: " + o.getClass());
+
+  /**
+   * Streams the view flattening every column of a schema trie to <code>out</code>.
+   */
+  public void writeHiveQuery(Appendable out, SchemaNode schema) throws IOException {
+	  out.append("CREATE VIEW view_name AS SELECT\n");
+	  boolean first = true;
+	  for (String k : sortedQueryColumns(schema)) {
+		  first = appendHiveQuery(out, schema.getChild(k), k, first);
 	  }
+	  out.append("FROM ").append(tableName).append(" \n");
   }
-   
-  private ArrayList<String> getKeys(Object o)
-  {
-	  ArrayList<String> keys = new ArrayList<String>();
-	  if(o instanceof JSONObject){
-		    Iterator<String> objKeys = ((JSONObject)o).keys();
-		    while(objKeys.hasNext()){
-		    	String key = objKeys.next();
-		    	keys.add(key);
-		    	if(((JSONObject)o).get(key) instanceof JSONObject){
-		    		keys.addAll(getKeys(((JSONObject)o).get(key)));
-		    	}
-		    	else if(((JSONObject)o).get(key) instanceof JSONArray){
-		    		JSONArray array = ((JSONObject)o).getJSONArray(key);
-		    		for(int i = 0; i < array.length(); i++) {
-		    			keys.addAll(getKeys(array.optJSONObject(i)));
-		    		}
-		    	}
-		    }
+
+
+  /**
+   * @return the top-level keys in the order of their column definitions, i.e. by column name
+   *         and, for names that collide, by type
+   */
+  private List<String> sortedColumns(final SchemaNode schema) {
+	  final Map<String, String> sortKeys = new LinkedHashMap<String, String>();
+	  for (String k : schema.getChildNames()) {
+		  sortKeys.put(k, names.column(k) + " ");
 	  }
-	  
+	  List<String> keys = new ArrayList<String>(sortKeys.keySet());
+	  Collections.sort(keys, new Comparator<String>() {
+		  public int compare(String a, String b) {
+			  int c = sortKeys.get(a).compareTo(sortKeys.get(b));
+			  return (c != 0 ? c : hiveType(schema.getChild(a), a).compareTo(hiveType(schema.getChild(b), b)));
+		  }
+	  });
 	  return keys;
   }
-  
-  @SuppressWarnings("unused")
-private ArrayList<String> getArrayValueTypes(Object o)
-  {  
-	  ArrayList<String> valueTypes = new ArrayList<String>();
-	  if(o instanceof JSONArray) {
-		  for(int i = 0; i < ((JSONArray)o).length(); i++) {
-			  valueTypes.addAll(getArrayValueTypes(((JSONArray)o).get(i)));
-		  }
+
+  /**
+   * @return the top-level keys in the order of their view columns: by lowercased key, a
+   *         scalar before the fields of a struct, and keys that only differ in case by their lines
+   */
+  private List<String> sortedQueryColumns(final SchemaNode schema) {
+	  final Map<String, String> sortKeys = new LinkedHashMap<String, String>();
+	  for (String k : schema.getChildNames()) {
+		  sortKeys.put(k, names.lower(k) + (isStruct(schema.getChild(k)) ? "." : " "));
 	  }
-	  else if(o instanceof JSONObject){
-		    Iterator<String> objKeys = ((JSONObject)o).keys();
-		    while(objKeys.hasNext()){
-		    	String key = objKeys.next();
-		    	if(((JSONObject)o).get(key) instanceof JSONObject){
-		    		valueTypes.addAll(getArrayValueTypes(((JSONObject)o).get(key)));
-		    	}
-		    	else if(((JSONObject)o).get(key) instanceof JSONArray){
-		    		JSONArray array = ((JSONObject)o).getJSONArray(key);
-		    		for(int i = 0; i < array.length(); i++) {
-		    			valueTypes.addAll(getArrayValueTypes(array.get(i)));
-		    		}
-		    	}
-		    	else if (isScalar(((JSONObject)o).get(key))){
-		    		valueTypes.add(scalarType(((JSONObject)o).get(key)));
-		    	}
-		    }
-	  }
-	  else if (isScalar(o)){
-		  valueTypes.add(scalarType(o));
+	  List<String> keys = new ArrayList<String>(sortKeys.keySet());
+	  Collections.sort(keys, new Comparator<String>() {
+		  public int compare(String a, String b) {
+			  int c = sortKeys.get(a).compareTo(sortKeys.get(b));
+			  return (c != 0 ? c : hiveQuery(schema.getChild(a), a).compareTo(hiveQuery(schema.getChild(b), b)));
+		  }
+	  });
+	  return keys;
+  }
+
+  private String hiveType(SchemaNode node, String parent) {
+	  StringBuilder sb = new StringBuilder();
+	  try {
+		  appendHiveType(sb, node, parent);
+	  } catch (IOException e) {
+		  throw new IllegalStateException(e);
 	  }
-	  
-	  return valueTypes;
+	  return sb.toString();
   }
-  
-  private String arrayJoin(JSONArray a, String separator, String parent) throws JSONException {
-	    StringBuilder sb = new StringBuilder();
-  	
-	    if (a.length() == 0) {
-	      throw new IllegalStateException("Array is empty: " + a.toString());
-	    }
-	    Object entry0 = a.get(0);
-	    if ( isScalar(entry0) ) {
-	      sb.append(scalarType(entry0));
-	    } else if (entry0 instanceof JSONObject) {
-	      sb.append(toHiveSchema((JSONObject)entry0, parent));
-	    } else if (entry0 instanceof JSONArray) {    
-	      sb.append(toHiveSchema((JSONArray)entry0, parent));
-	    }
-      return sb.toString();
-}
-  
-  private String scalarType(Object o) {
-	if (ALL_TYPES_STRING) return "string";
-	if (o instanceof String) return "string";
-	if (o instanceof Number) return scalarNumericType(o);
-	if (o instanceof Boolean) return "boolean";
-	return "string";
+
+  private String hiveQuery(SchemaNode node, String keyName) {
+	  StringBuilder sb = new StringBuilder();
+	  try {
+		  appendHiveQuery(sb, node, keyName, false);
+	  } catch (IOException e) {
+		  throw new IllegalStateException(e);
+	  }
+	  return sb.toString();
   }
 
-  private String scalarNumericType(Object o) {
-    String s = o.toString();
-    if (s.indexOf('.') > 0) {
-      return "double";
-    } else {
-      return "int";
+  /**
+   * Appends the Hive type of a trie node to the column being written, so nested types are
+   * streamed out instead of being concatenated level by level.  The nesting is walked with an
+   * explicit stack, however deep it is.
+   */
+  private void appendHiveType(Appendable out, SchemaNode root, String rootParent) throws IOException {
+    // What is left to write, next first: a String as is, a Field's type
+    Deque<Object> work = new ArrayDeque<Object>();
+    work.push(new Field(root, rootParent));
+    while (!work.isEmpty()) {
+      Object item = work.pop();
+      if (item instanceof String) {
+        out.append((String)item);
+        continue;
+      }
+      Field field = (Field)item;
+      SchemaNode node = field.node;
+      if (node.isArray()) {
+        out.append("array<");
+        work.push(">");
+        if (node.getElement() == null) {
+          work.push("string"); // only empty arrays were seen
+        } else {
+          work.push(new Field(node.getElement(), field.name));
+        }
+      } else if (isStruct(node)) {
+        out.append("struct<");
+        work.push(">");
+        List<String> keys = node.getChildNames();
+        for (int i = keys.size() - 1; i >= 0; i--) {
+          String k = keys.get(i);
+          String fieldName = (k.equals("content") ? field.name : k);
+          work.push(new Field(node.getChild(k), k));
+          work.push((i > 0 ? "," : "") + names.field(fieldName) + ":");
+        }
+      } else {
+        out.append(scalarType(node));
+      }
     }
   }
 
-  private boolean isScalar(Object o) {
-    return o instanceof String ||
-        o instanceof Number ||
-        o instanceof Boolean || 
-        o == JSONObject.NULL;
+  /**
+   * Appends the view lines of one column, one line per scalar and one per leaf field of a struct.
+   * Nested structs are walked with an explicit stack, in the same order as the type.
+   * 
+   * @param first true if nothing was selected yet, so no separating comma is written
+   * @return false, as something was selected now
+   */
+  private boolean appendHiveQuery(Appendable out, SchemaNode o, String keyName, boolean first) throws IOException {
+	  if (!isStruct(o)) {
+		  out.append(first ? "\t" : "\t,").append(names.lower(keyName)).append(" AS ").append(names.lower(keyName).replace(".", "_")).append("\n");
+		  return false;
+	  }
+	  // Structs still to expand and leaf fields still to select, next first
+	  Deque<Field> work = new ArrayDeque<Field>();
+	  work.push(new Field(o, keyName));
+	  while (!work.isEmpty()) {
+		  Field field = work.pop();
+		  if (field.node != null) {
+			  List<String> keys = field.node.getChildNames();
+			  for (int i = keys.size() - 1; i >= 0; i--) {
+				  String k = keys.get(i);
+				  SchemaNode child = field.node.getChild(k);
+				  work.push(isStruct(child) ? new Field(child, field.name + "." + k) : new Field(null, field.name, k));
+			  }
+			  continue;
+		  }
+		  String key = names.lower(field.name);
+		  out.append(first ? "\t" : "\t,").append(key).append(".").append(names.lower(field.leaf)); // first part
+		  out.append(" AS ").append(key.replace('.', '_')).append("_").append(names.lower(field.leaf)).append("\n"); // AS part
+		  first = false;
+	  }
+	  return first;
   }
 
-  private String formatHiveTable(String tableName, String columnDDL){
-	  StringBuilder sb = new StringBuilder("CREATE EXTERNAL TABLE ").append(tableName).append(" (\n").append(columnDDL).append(")\n");
-	  sb.append("COMMENT 'Auto Generated Schema, Put Table description here'\n");
-	  sb.append("PARTITIONED BY (CYCLE_NUMBER INT)\n");
+  /**
+   * A node still to render and the key it belongs to, or a leaf field of a struct still to select.
+   */
+  private static final class Field {
+	  private final SchemaNode node;
+	  private final String name;
+	  private final String leaf;
+
+	  private Field(SchemaNode node, String name) {
+		  this(node, name, null);
+	  }
+
+	  private Field(SchemaNode node, String name, String leaf) {
+		  this.node = node;
+		  this.name = name;
+		  this.leaf = leaf;
+	  }
+  }
+  
+  /**
+   * Structs that were only ever seen empty have no Hive representation and are typed as strings.
+   */
+  private boolean isStruct(SchemaNode node) {
+	  return node.isStruct() && !node.getChildNames().isEmpty();
+  }
+  
+  private String scalarType(SchemaNode node) {
+	  if (config.isAllTypesString() || (node.getKinds() & SchemaNode.STRUCT) != 0) return "string";
+	  return node.scalarType();
+  }
+   
+  private void appendTableProperties(Appendable out) throws IOException {
+	  out.append("COMMENT 'Auto Generated Schema, Put Table description here'\n");
+	  out.append("PARTITIONED BY (CYCLE_NUMBER INT)\n");
 	  if(serdeType.equalsIgnoreCase("XML")){
-		  sb.append(XML_SERDE).append("\nWITH SERDEPROPERTIES (\n%%");
+		  out.append(XML_SERDE).append("\nWITH SERDEPROPERTIES (\n");
+		  String separator = "\t";
 		  for(String xpath : _xPaths){
-			  sb.append("\t,").append(xpath).append("\n");
+			  out.append(separator).append(xpath).append("\n");
+			  separator = "\t,";
 		  }
 		  // Append the rest of the table info
-		  String xmlRoot = KEYED_RESPONSE_ROOT;
-          sb.append(")\nSTORED AS\n").append("INPUTFORMAT 'com.ibm.spss.hive.serde2.xml.XmlInputFormat'\n")
+		  String xmlRoot = config.getRootTag();
+          out.append(")\nSTORED AS\n").append("INPUTFORMAT 'com.ibm.spss.hive.serde2.xml.XmlInputFormat'\n")
               .append("OUTPUTFORMAT 'org.apache.hadoop.hive.ql.io.IgnoreKeyTextOutputFormat'\n")
-              .append("TBLPROPERTIES (\n").append("\t\"xmlinput.start\"=\"<" + xmlRoot + "\",").append("\n")
-              .append("\t\"xmlinput.end\"=\"</" + xmlRoot +">\"").append("\n);");
+              .append("TBLPROPERTIES (\n").append("\t\"xmlinput.start\"=\"<").append(xmlRoot).append("\",").append("\n")
+              .append("\t\"xmlinput.end\"=\"</").append(xmlRoot).append(">\"").append("\n);");
 	  }
 	  else {
-		  sb.append(JSON_SERDE);
+		  out.append(JSON_SERDE);
 	  }
-	  return sb.toString().replace("%%\t,", "\t"); //remove the first comma in the Xpaths.
   }
   
-  private static String formatXPath(String path,String name,HIVE_TYPE type){
-	  String xpath = "/" + KEYED_RESPONSE_ROOT + "/" + path;
+  static String formatXPath(String rootTag,String path,String name,HIVE_TYPE type){
+	  String xpath = "/" + rootTag + "/" + path;
 	  switch(type){
 	  	case primitive:
 	  		return String.format("\"%1$s%2$s\"=\"%3$s%4$s\"",XPATH_SERDE,name.toLowerCase(),xpath,"/text()");
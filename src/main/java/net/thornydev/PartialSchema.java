@@ -0,0 +1,200 @@
+package net.thornydev;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * The accumulated, not yet rendered schema of a run: the schema trie (the kinds and value
+ * counts of every path), record count and xpaths of every table.  A run with <code>-partial</code> or <code>-shard</code> writes one
+ * of these instead of DDL and <code>-merge</code> combines any number of them.
+ *
+ * Merging is associative, so shards can be merged in any grouping (e.g. per host first, then
+ * the per host results) and give the same schema as merging all of them at once.  The
+ * file is JSON:
+ * <pre>
+ *   {"partialSchema": 2, "inputType": "JSON", "overflowRecords": 0,
+ *    "tables": [{"name": "events_click", "records": 10, "xPaths": [], "schema": nodes}]}
+ * </pre>
+ * where <code>nodes</code> is the flat list of nodes written by {@link SchemaNode#toJSON()}.
+ * Version 1 files, whose schema is the trie as nested objects without value counts, are still
+ * read.
+ *
+ * No value sketches (e.g. distinct-value or min/max estimates) are kept: the DDL is rendered
+ * from the kinds alone, and nothing would read them.
+ */
+public class PartialSchema {
+	public static final int VERSION = 2;
+
+	private final boolean xml;
+	private final Map<String, Table> tables = new LinkedHashMap<String, Table>();
+	private long overflowRecords = 0;
+
+	public PartialSchema(boolean xml) {
+		this.xml = xml;
+	}
+
+	/**
+	 * Copies the current state of a run, the router is left untouched.
+	 */
+	public static PartialSchema of(SchemaRouter router, boolean xml) {
+		PartialSchema partial = new PartialSchema(xml);
+		partial.overflowRecords = router.getOverflowRecords();
+		for (TableAccumulator table : router.getTables()) {
+			partial.table(table.getTableName()).add(table.getSchema(), table.getXPaths(), table.getRecords());
+		}
+		return partial;
+	}
+
+	/**
+	 * Merges another partial schema into this one.
+	 *
+	 * @return this partial schema
+	 * @throws IllegalArgumentException if the two were inferred from different input types
+	 */
+	public PartialSchema merge(PartialSchema other) {
+		if (other.xml != xml) {
+			throw new IllegalArgumentException("Cannot merge partial schemas of XML and JSON input.");
+		}
+		overflowRecords += other.overflowRecords;
+		for (Table table : other.tables.values()) {
+			table(table.name).add(table.schema, table.xPaths, table.records);
+		}
+		return this;
+	}
+
+	private Table table(String name) {
+		Table table = tables.get(name);
+		if (table == null) {
+			table = new Table(name);
+			tables.put(name, table);
+		}
+		return table;
+	}
+
+	public boolean isXml() {
+		return xml;
+	}
+
+	/**
+	 * @return the tables in first-seen order
+	 */
+	public Collection<Table> getTables() {
+		return tables.values();
+	}
+
+	public long getOverflowRecords() {
+		return overflowRecords;
+	}
+
+	public static PartialSchema fromJSON(JSONObject json) {
+		int version = json.optInt("partialSchema", -1);
+		if (version != 1 && version != VERSION) {
+			throw new IllegalArgumentException("Not a version 1 or " + VERSION + " partial schema.");
+		}
+		PartialSchema partial = new PartialSchema("XML".equalsIgnoreCase(json.getString("inputType")));
+		partial.overflowRecords = json.optLong("overflowRecords", 0);
+		JSONArray list = json.getJSONArray("tables");
+		for (int i = 0; i < list.length(); i++) {
+			JSONObject t = list.getJSONObject(i);
+			Set<String> xPaths = new LinkedHashSet<String>();
+			JSONArray x = t.optJSONArray("xPaths");
+			for (int j = 0; x != null && j < x.length(); j++) {
+				xPaths.add(x.getString(j));
+			}
+			SchemaNode schema = (version == 1 ? SchemaNode.fromJSON(t.getJSONObject("schema")) : SchemaNode.fromJSON(t.getJSONArray("schema")));
+			partial.table(t.getString("name")).add(schema, xPaths, t.getLong("records"));
+		}
+		return partial;
+	}
+
+	public JSONObject toJSON() {
+		JSONObject json = new JSONObject();
+		json.put("partialSchema", VERSION);
+		json.put("inputType", xml ? "XML" : "JSON");
+		json.put("overflowRecords", overflowRecords);
+		JSONArray list = new JSONArray();
+		for (Table table : tables.values()) {
+			JSONObject t = new JSONObject();
+			t.put("name", table.name);
+			t.put("records", table.records);
+			t.put("xPaths", new JSONArray(table.xPaths));
+			t.put("schema", table.schema.toJSON());
+			list.put(t);
+		}
+		json.put("tables", list);
+		return json;
+	}
+
+	public static PartialSchema read(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+		try {
+			return fromJSON(new JSONObject(new JSONTokener(reader)));
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	public void write(File file) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+		try {
+			toJSON().write(writer);
+			writer.write('\n');
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * One table of a partial schema.
+	 */
+	public static final class Table {
+		private final String name;
+		private final SchemaNode schema = new SchemaNode();
+		private final Set<String> xPaths = new LinkedHashSet<String>();
+		private long records = 0;
+
+		private Table(String name) {
+			this.name = name;
+		}
+
+		private void add(SchemaNode otherSchema, Collection<String> otherXPaths, long otherRecords) {
+			schema.merge(otherSchema);
+			xPaths.addAll(otherXPaths);
+			records += otherRecords;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public SchemaNode getSchema() {
+			return schema;
+		}
+
+		public Set<String> getXPaths() {
+			return xPaths;
+		}
+
+		public long getRecords() {
+			return records;
+		}
+	}
+}
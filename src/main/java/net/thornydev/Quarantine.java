@@ -0,0 +1,105 @@
+package net.thornydev;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/**
+ * Collects the records that fail to parse in tolerant mode (<code>-quarantine</code>), so one
+ * malformed line does not abort a run over a whole corpus.  Every bad record is written to the
+ * quarantine file as one line of JSON with the file it came from, where it was, the error and
+ * the record's text:
+ *
+ * <pre>{"file":"events/part-0007","line":81233,"error":"Expected a ':' after a key at 17 ...","record":"..."}</pre>
+ *
+ * Records read as lines of a file split by byte range give their byte <code>offset</code>
+ * instead of a <code>line</code>.  A record rejected for its size has no <code>record</code>,
+ * and a whole document neither position nor text.  A quarantine is shared by all the threads
+ * of a run.
+ */
+public class Quarantine {
+	private final File file;
+	private final Writer out;
+	private final Map<String, Long> byFile = new LinkedHashMap<String, Long>();
+	private long records = 0;
+
+	public Quarantine(File file) throws IOException {
+		this.file = file;
+		this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes one bad record to the quarantine file.
+	 *
+	 * @param source the file the record came from
+	 * @param unit "line" or "offset", what <code>position</code> counts, null for a whole document
+	 * @param position the record's line number (from 1) or byte offset in the file
+	 * @param error why the record was rejected
+	 * @param record the record's text, null if it was not read
+	 */
+	public synchronized void add(String source, String unit, long position, Exception error, String record) throws IOException {
+		JSONObject entry = new JSONObject();
+		entry.put("file", source);
+		if (unit != null) {
+			entry.put(unit, position);
+		}
+		entry.put("error", (error.getMessage() != null ? error.getMessage() : error.toString()));
+		if (record != null) {
+			entry.put("record", record);
+		}
+		out.write(entry.toString());
+		out.write('\n');
+		records++;
+		Long n = byFile.get(source);
+		byFile.put(source, (n == null ? 1 : n + 1));
+	}
+
+	/**
+	 * @return the number of records quarantined so far
+	 */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the number of records of one input file quarantined so far
+	 */
+	public synchronized long getRecords(String source) {
+		Long n = byFile.get(source);
+		return (n == null ? 0 : n);
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Adds the number of quarantined records, in all and per input file, to the report.
+	 */
+	public synchronized void report(InferenceReport report) {
+		report.section("quarantine");
+		report.add("records quarantined", records + " to " + file.getPath());
+		for (Map.Entry<String, Long> entry : byFile.entrySet()) {
+			report.add("file " + entry.getKey(), entry.getValue() + " records");
+		}
+	}
+
+	/**
+	 * Writes out the records added so far, for a run that does not end.
+	 */
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,279 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a file on another thread ahead of its consumer, so waiting for the disk (or a
+ * network volume) overlaps with parsing instead of alternating with it.
+ *
+ * The reader fills a ring of reusable direct buffers from a <code>FileChannel</code> and
+ * hands them over through a queue; the consumer drains each buffer and gives it back.  At
+ * most the whole ring is read ahead, so memory stays bounded however far the reader gets
+ * ahead.  Closing the stream returns its ring to a small free list shared by all threads, so
+ * a run over many files allocates direct buffers for as many files as it has open at once,
+ * not per file.  At most {@link #IDLE_RINGS} rings stay allocated between files, however many
+ * threads have read one.
+ *
+ * The readers run on a pool shared by all streams, so a run over many files reuses a few
+ * threads instead of starting one per file.  It is not the run's executor: a reader queued
+ * behind its own consumer on a fixed pool would never start.  Compressed input is
+ * decompressed by whatever wraps this stream, on the consumer's thread, while the reader
+ * keeps fetching compressed bytes.
+ */
+public class ReadAheadInputStream extends InputStream {
+	static final int BUFFERS = 4;
+	static final int BUFFER_SIZE = 256 * 1024;
+	static final int ASSUMED_RATIO = 8;
+	static final int IDLE_RINGS = 4;
+
+	private static final ByteBuffer EOF = ByteBuffer.allocate(0);
+	private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+	/**
+	 * The readers of all streams.  Idle threads are kept for a minute, for the next files.
+	 */
+	private static final ExecutorService READERS = Executors.newCachedThreadPool(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "read-ahead");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The rings of closed streams, kept for the next files.  The last one closed is reused
+	 * first, and one closed while the list is full is left to the garbage collector.
+	 */
+	static final BlockingDeque<ByteBuffer[]> IDLE = new LinkedBlockingDeque<ByteBuffer[]>(IDLE_RINGS);
+
+	final ByteBuffer[] ring;
+	private final FileChannel channel;
+	private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(BUFFERS);
+	private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<ByteBuffer>(BUFFERS + 1);
+	private final CountDownLatch stopped = new CountDownLatch(1);
+	private volatile IOException failure = null;
+	private volatile boolean closed = false;
+	private ByteBuffer current = null;
+
+	/**
+	 * Opens an input file for reading as UTF-8 text, read ahead unless it fits in one buffer
+	 * and decompressed if it is gzipped.
+	 */
+	public static BufferedReader open(File file) throws IOException {
+		InputStream in = (file.length() > BUFFER_SIZE ? new ReadAheadInputStream(file) : new FileInputStream(file));
+		try {
+			if (isCompressed(file)) {
+				in = new GZIPInputStream(in, BUFFER_SIZE);
+			}
+		}
+		catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return true for a gzipped file, which can only be read from the start
+	 */
+	public static boolean isCompressed(File file) {
+		return file.getName().endsWith(".gz");
+	}
+
+	/**
+	 * Estimates how many bytes reading a file gives, which for a gzipped file is its
+	 * uncompressed size.  That is read from the gzip trailer (ISIZE), which holds the size of
+	 * the last member modulo 2^32, so it is taken up to the first value that is not smaller
+	 * than deflate could have compressed the file to.  A file whose trailer cannot be read is
+	 * assumed to have compressed by {@link #ASSUMED_RATIO}.
+	 */
+	public static long uncompressedLength(File file) {
+		long length = file.length();
+		if (!isCompressed(file)) {
+			return length;
+		}
+		long size;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				if (length < 18) {
+					return length * ASSUMED_RATIO;
+				}
+				raf.seek(length - 4);
+				size = (raf.read() | raf.read() << 8 | raf.read() << 16 | (long)raf.read() << 24);
+			}
+			finally {
+				raf.close();
+			}
+		}
+		catch (IOException e) {
+			return length * ASSUMED_RATIO;
+		}
+		// deflate grows incompressible input by well under 1/64th
+		while (size < length - length / 64 - 64) {
+			size += 1L << 32;
+		}
+		return size;
+	}
+
+	public ReadAheadInputStream(File file) throws IOException {
+		this(file, READERS);
+	}
+
+	/**
+	 * @param readers runs the reader, which must start without waiting for the consumer
+	 */
+	ReadAheadInputStream(File file, Executor readers) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		ByteBuffer[] idle = IDLE.pollFirst(); // ours until closed
+		if (idle != null) {
+			this.ring = idle;
+		}
+		else {
+			this.ring = new ByteBuffer[BUFFERS];
+			for (int i = 0; i < BUFFERS; i++) {
+				ring[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			}
+		}
+		for (ByteBuffer buffer : ring) {
+			buffer.clear();
+			free.add(buffer);
+		}
+		readers.execute(new Runnable() {
+			public void run() {
+				fill();
+			}
+		});
+	}
+
+	/**
+	 * The reader: fills free buffers until the end of the file or until the stream is closed.
+	 */
+	private void fill() {
+		try {
+			while (!closed) {
+				ByteBuffer buffer = free.take();
+				if (buffer == CLOSED) {
+					break;
+				}
+				buffer.clear();
+				int n = 0;
+				while (buffer.hasRemaining() && (n = channel.read(buffer)) >= 0) {
+					// keep filling, small reads are common on network volumes
+				}
+				buffer.flip();
+				if (buffer.hasRemaining()) {
+					filled.put(buffer);
+				}
+				if (n < 0) {
+					break;
+				}
+			}
+		}
+		catch (IOException e) {
+			if (!closed) {
+				failure = e;
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // the pool is going away
+		}
+		finally {
+			filled.offer(EOF);
+			stopped.countDown();
+		}
+	}
+
+	/**
+	 * @return the buffer to read from, or null at the end of the file
+	 */
+	private ByteBuffer current() throws IOException {
+		if (current != null && current.hasRemaining()) {
+			return current;
+		}
+		if (current == EOF) {
+			return null;
+		}
+		if (current != null) {
+			free.offer(current);
+		}
+		try {
+			current = filled.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for input");
+		}
+		if (current == EOF) {
+			if (failure != null) {
+				throw failure;
+			}
+			return null;
+		}
+		return current;
+	}
+
+	@Override
+	public int read() throws IOException {
+		ByteBuffer b = current();
+		return (b == null ? -1 : b.get() & 0xff);
+	}
+
+	@Override
+	public int read(byte[] bytes, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		ByteBuffer b = current();
+		if (b == null) {
+			return -1;
+		}
+		int n = Math.min(len, b.remaining());
+		b.get(bytes, off, n);
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return (current == null || current == EOF ? 0 : current.remaining());
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		channel.close(); // ends a read in progress
+		free.offer(CLOSED); // ends a wait for a free buffer
+		try {
+			stopped.await();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return; // the reader may still hold a buffer, so the ring is not reused
+		}
+		IDLE.offerFirst(ring);
+	}
+}
@@ -0,0 +1,229 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import org.json.JSONException;
+
+/**
+ * Splits an input stream into the individual documents ("records") the schema tool
+ * infers from.
+ *
+ * JSON input is read as newline delimited JSON: every non-blank line is one record.
+ * XML input is read as a sequence of root tag elements: every
+ * <code>&lt;rootTag ...&gt; ... &lt;/rootTag&gt;</code> block is one record, the same
+ * way the XmlInputFormat splits on <code>xmlinput.start</code>/<code>xmlinput.end</code>.
+ *
+ * An XML record that is still open when the next start tag comes is cut short there, so a
+ * missing end tag costs only that record.
+ *
+ * Only one record is held in memory at a time, and none longer than the document size limit:
+ * a longer record is skipped to its end without being held, and then rejected with a
+ * {@link JSONException}, which leaves the reader at the start of the next record.
+ */
+public class RecordReader {
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private final BufferedReader reader;
+	private final boolean xml;
+	private final String startTag;
+	private final String endTag;
+	private final DocumentLimits limits;
+	private final long maxLength;
+	private final char[] buffer;
+	private int bufferPos = 0;
+	private int bufferLen = 0;
+	private boolean skipLF = false;
+	private String pending = null;
+	private long lines = 0;
+	private long recordLine = 0;
+
+	public RecordReader(BufferedReader reader, boolean xml, String rootTag, DocumentLimits limits) {
+		this.reader = reader;
+		this.xml = xml;
+		this.startTag = "<" + rootTag;
+		this.endTag = "</" + rootTag + ">";
+		this.limits = limits;
+		this.maxLength = limits.getMaxDocumentSize();
+		this.buffer = (maxLength > 0 ? new char[BUFFER_SIZE] : null);
+	}
+
+	/**
+	 * @return the next record's text, or null when the input is exhausted
+	 * @throws IOException
+	 */
+	public String next() throws IOException {
+		return xml ? nextXmlRecord() : nextJsonRecord();
+	}
+
+	/**
+	 * @return the line (from 1) the last record read, or rejected for its size, starts on
+	 */
+	public long getRecordLine() {
+		return (xml ? recordLine : lines);
+	}
+
+	private String nextJsonRecord() throws IOException {
+		String line;
+		while ((line = readLine()) != null) {
+			if (line.trim().length() > 0) {
+				return line;
+			}
+		}
+		return null;
+	}
+
+	private String nextXmlRecord() throws IOException {
+		StringBuilder sb = null;
+		for (;;) {
+			String line = pending;
+			if (line != null) {
+				pending = null;
+			}
+			else {
+				if (sb == null) {
+					recordLine = lines + 1; // where a line too long to read is reported
+				}
+				if ((line = readLine()) == null) {
+					return null;
+				}
+			}
+			int from = 0;
+			if (sb == null) {
+				int start = indexOfStartTag(line, 0);
+				if (start < 0) {
+					continue;
+				}
+				sb = new StringBuilder();
+				line = line.substring(start);
+				recordLine = lines;
+				from = startTag.length();
+			}
+			int end = line.indexOf(endTag);
+			int next = indexOfStartTag(line, from);
+			if (next >= 0 && (end < 0 || next < end)) {
+				// the next record starts before this one ended, this one ends there and will not parse
+				pending = line.substring(next);
+				limits.checkDocumentSize(sb.length() + next, "A record");
+				sb.append(line, 0, next);
+				return sb.toString();
+			}
+			if (end >= 0) {
+				end += endTag.length();
+				if (end < line.length()) {
+					pending = line.substring(end);
+				}
+				limits.checkDocumentSize(sb.length() + end, "A record");
+				sb.append(line, 0, end);
+				return sb.toString();
+			}
+			if (maxLength > 0 && sb.length() + line.length() + 1 > maxLength) {
+				skipPastEndTag();
+				limits.checkDocumentSize(sb.length() + line.length() + 1, "A record");
+			}
+			sb.append(line).append('\n');
+		}
+	}
+
+	/**
+	 * Skips the rest of an XML record, leaving what follows its end tag pending.
+	 */
+	private void skipPastEndTag() throws IOException {
+		String line;
+		while ((line = readLine()) != null) {
+			int end = line.indexOf(endTag);
+			if (end >= 0) {
+				end += endTag.length();
+				if (end < line.length()) {
+					pending = line.substring(end);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads a line like {@link BufferedReader#readLine()}, but rejects one longer than the
+	 * document size limit without holding it, skipping to the start of the next line.
+	 *
+	 * @return the line without its terminator, or null at the end of the input
+	 */
+	String readLine() throws IOException {
+		if (maxLength == 0) {
+			String line = reader.readLine();
+			if (line != null) {
+				lines++;
+			}
+			return line;
+		}
+		StringBuilder sb = null;
+		long length = 0;
+		for (;;) {
+			if (bufferPos == bufferLen) {
+				int n = reader.read(buffer, 0, buffer.length);
+				if (n < 0) {
+					break;
+				}
+				bufferPos = 0;
+				bufferLen = n;
+				continue;
+			}
+			if (skipLF) {
+				// the '\n' of a "\r\n" that ended the previous line
+				skipLF = false;
+				if (buffer[bufferPos] == '\n') {
+					bufferPos++;
+					continue;
+				}
+			}
+			if (sb == null) {
+				sb = new StringBuilder();
+			}
+			int i = bufferPos;
+			while (i < bufferLen && buffer[i] != '\n' && buffer[i] != '\r') {
+				i++;
+			}
+			int chunk = i - bufferPos;
+			if (length + chunk <= maxLength) {
+				sb.append(buffer, bufferPos, chunk);
+			}
+			length += chunk;
+			bufferPos = i;
+			if (i < bufferLen) {
+				skipLF = (buffer[i] == '\r');
+				bufferPos++;
+				break;
+			}
+		}
+		if (sb == null) {
+			return null;
+		}
+		lines++;
+		limits.checkDocumentSize(length, "Line " + lines);
+		return sb.toString();
+	}
+
+	/**
+	 * Finds the root start tag, skipping tags that merely share its prefix
+	 * (e.g. <code>&lt;KeyedResponseList&gt;</code> for <code>KeyedResponse</code>).
+	 */
+	private int indexOfStartTag(String line, int from) {
+		int i = line.indexOf(startTag, from);
+		while (i >= 0) {
+			int after = i + startTag.length();
+			if (after >= line.length()) {
+				return i;
+			}
+			char c = line.charAt(after);
+			if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+				return i;
+			}
+			i = line.indexOf(startTag, after);
+		}
+		return -1;
+	}
+
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,236 @@
+package net.thornydev;
+
+import java.io.StringReader;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+import org.json.XMLTokener;
+
+/**
+ * The text of one record, read by a tokenizer that is reset for every record instead of
+ * created anew.  {@link JSONTokener} reads its text through a <code>StringReader</code>, a
+ * synchronized call per character, and one tokenizer per record is garbage per record;
+ * {@link Json} and {@link Xml} read the string directly and are kept by their
+ * {@link DocumentParser} from one record to the next.
+ *
+ * The positions in error messages, and everything else the tokenizers do, are the same as
+ * {@link JSONTokener}'s.  Not thread safe.
+ */
+final class RecordText {
+	private String text = "";
+	private int length = 0;
+	private int pos = 0;
+	private long index;
+	private long character;
+	private long line;
+	private char previous;
+	private boolean usePrevious;
+	private boolean eof;
+
+	RecordText() {
+		reset("");
+	}
+
+	void reset(String text) {
+		this.text = text;
+		this.length = text.length();
+		this.pos = 0;
+		this.index = 0;
+		this.character = 1;
+		this.line = 1;
+		this.previous = 0;
+		this.usePrevious = false;
+		this.eof = false;
+	}
+
+	String getText() {
+		return text;
+	}
+
+	char next() {
+		char c;
+		if (usePrevious) {
+			usePrevious = false;
+			c = previous;
+		}
+		else {
+			c = (pos < length ? text.charAt(pos++) : 0);
+			if (c == 0) { // End of text
+				eof = true;
+			}
+		}
+		index += 1;
+		if (previous == '\r') {
+			line += 1;
+			character = (c == '\n' ? 0 : 1);
+		}
+		else if (c == '\n') {
+			line += 1;
+			character = 0;
+		}
+		else {
+			character += 1;
+		}
+		previous = c;
+		return c;
+	}
+
+	void back() throws JSONException {
+		if (usePrevious || index <= 0) {
+			throw new JSONException("Stepping back two steps is not supported");
+		}
+		index -= 1;
+		character -= 1;
+		usePrevious = true;
+		eof = false;
+	}
+
+	boolean end() {
+		return eof && !usePrevious;
+	}
+
+	char skipTo(char to) {
+		int startPos = pos;
+		long startIndex = index;
+		long startCharacter = character;
+		long startLine = line;
+		char c;
+		do {
+			c = next();
+			if (c == 0) {
+				pos = startPos;
+				index = startIndex;
+				character = startCharacter;
+				line = startLine;
+				return c;
+			}
+		} while (c != to);
+		// the character itself is read again, as after JSONTokener.back()
+		back();
+		return c;
+	}
+
+	/**
+	 * Finds the end of a quoted string without escapes or line breaks, whose opening quote was
+	 * just read, and moves past its closing quote.
+	 *
+	 * @return the index in the text of the string's first character, -1 (nothing read) if the
+	 *         string has an escape or line break, is longer than <code>max</code> or is not closed
+	 */
+	int skipPlainString(char quote, int max) {
+		if (usePrevious) {
+			return -1;
+		}
+		int start = pos;
+		int limit = (int)Math.min(length, (long)start + max);
+		for (int i = start; i < length; i++) {
+			char c = text.charAt(i);
+			if (c == quote) {
+				int n = i + 1 - start;
+				pos = i + 1;
+				index += n;
+				character += n;
+				previous = quote;
+				return start;
+			}
+			if (c == '\\' || c == '\n' || c == '\r' || c == 0 || i == limit) {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index in the text of the next character {@link #next()} reads
+	 */
+	int position() {
+		return pos;
+	}
+
+	@Override
+	public String toString() {
+		return " at " + index + " [character " + character + " line " + line + "]";
+	}
+
+	/**
+	 * A JSON tokenizer over a {@link RecordText}.
+	 */
+	static final class Json extends JSONTokener {
+		final RecordText text = new RecordText();
+
+		Json() {
+			super(new StringReader(""));
+		}
+
+		Json reset(String s) {
+			text.reset(s);
+			return this;
+		}
+
+		@Override
+		public char next() {
+			return text.next();
+		}
+
+		@Override
+		public void back() throws JSONException {
+			text.back();
+		}
+
+		@Override
+		public boolean end() {
+			return text.end();
+		}
+
+		@Override
+		public char skipTo(char to) {
+			return text.skipTo(to);
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+	}
+
+	/**
+	 * An XML tokenizer over a {@link RecordText}.
+	 */
+	static final class Xml extends XMLTokener {
+		final RecordText text = new RecordText();
+
+		Xml() {
+			super("");
+		}
+
+		Xml reset(String s) {
+			text.reset(s);
+			return this;
+		}
+
+		@Override
+		public char next() {
+			return text.next();
+		}
+
+		@Override
+		public void back() throws JSONException {
+			text.back();
+		}
+
+		@Override
+		public boolean end() {
+			return text.end();
+		}
+
+		@Override
+		public char skipTo(char to) {
+			return text.skipTo(to);
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+	}
+}
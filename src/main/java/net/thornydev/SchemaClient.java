@@ -0,0 +1,96 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Sends one request to a running {@link SchemaServer} and prints the DDL, just like running
+ * {@link JsonHiveSchema} directly would.  It loads no more than the JSON classes, so it starts
+ * much faster than the full tool.
+ *
+ * Usage: <code>java -cp json-hive-schema-1.0.jar net.thornydev.SchemaClient [-port N] [-tokenFile F] &lt;JsonHiveSchema options&gt;</code>
+ * or <code>SchemaClient [-port N] [-tokenFile F] -shutdown</code> to stop the server.  The token
+ * is read from the server's token file, by default {@link SchemaServer#defaultTokenFile()}.
+ */
+public class SchemaClient {
+
+	public static void main(String[] args) throws Exception {
+		int port = SchemaServer.DEFAULT_PORT;
+		File tokenFile = SchemaServer.defaultTokenFile();
+		int first = 0;
+		while (args.length > first + 1 && (args[first].equals("-port") || args[first].equals("-tokenFile"))) {
+			if (args[first].equals("-port")) {
+				port = Integer.parseInt(args[first + 1]);
+			}
+			else {
+				tokenFile = new File(args[first + 1]);
+			}
+			first += 2;
+		}
+		JSONObject request = new JSONObject();
+		request.put("token", new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.US_ASCII).trim());
+		if (args.length == first + 1 && args[first].equals("-shutdown")) {
+			request.put("command", "shutdown");
+		}
+		else {
+			JSONArray argv = new JSONArray();
+			for (int i = first; i < args.length; i++) {
+				argv.put(args[i]);
+			}
+			request.put("args", argv);
+			request.put("cwd", new File(".").getAbsoluteFile().getParent());
+		}
+
+		JSONObject reply;
+		try {
+			reply = send(port, request);
+		}
+		catch (IOException e) {
+			System.err.println("ERROR: " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		if (reply.has("error")) {
+			System.err.println("ERROR: " + reply.getString("error"));
+			System.exit(1);
+		}
+		if (request.has("args")) {
+			System.out.println(reply.getString("ddl"));
+		}
+	}
+
+	/**
+	 * Sends one request to the server on the loopback port and waits for its reply.
+	 *
+	 * @throws IOException if the server can't be reached or closes the connection without replying
+	 */
+	static JSONObject send(int port, JSONObject request) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			out.write(request.toString());
+			out.write('\n');
+			out.flush();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String line = in.readLine();
+			if (line == null) {
+				throw new IOException("The schema server on port " + port + " closed the connection without replying.");
+			}
+			return new JSONObject(line);
+		}
+		finally {
+			socket.close();
+		}
+	}
+}
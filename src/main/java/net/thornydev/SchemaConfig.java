@@ -0,0 +1,303 @@
+package net.thornydev;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+
+/**
+ * The settings of one schema generation: table name, input type, XML root and response
+ * tags, type paths and the record handling options.
+ *
+ * Instances are immutable, so one config (and the {@link SchemaInferencer} built from it)
+ * can be shared by any number of threads.  Build one with {@link #builder()} or from the
+ * command line with {@link #fromCommandLine(CommandLine)}.
+ */
+public final class SchemaConfig {
+	public static final String DEFAULT_TABLE_NAME = "hive_table";
+	public static final String DEFAULT_ROOT_TAG = "KeyedResponse";
+	public static final String DEFAULT_RESPONSE_TAG = "Response";
+	public static final int DEFAULT_MAX_TABLES = 100;
+
+	private final String tableName;
+	private final boolean xml;
+	private final String rootTag;
+	private final String responseTag;
+	private final List<String> metadataTags;
+	private final List<String> typePaths;
+	private final boolean allTypesString;
+	private final boolean records;
+	private final String discriminator;
+	private final int maxTables;
+	private final int maxShapes;
+	private final String streamArray;
+	private final DocumentLimits limits;
+
+	private SchemaConfig(Builder b) {
+		this.tableName = b.tableName;
+		this.xml = b.xml;
+		this.rootTag = b.rootTag;
+		this.responseTag = b.responseTag;
+		this.metadataTags = Collections.unmodifiableList(Arrays.asList(b.metadataTags.clone()));
+		this.typePaths = Collections.unmodifiableList(Arrays.asList(b.typePaths.clone()));
+		this.allTypesString = b.allTypesString;
+		this.records = b.records || b.discriminator != null;
+		this.discriminator = b.discriminator;
+		this.maxTables = b.maxTables;
+		this.maxShapes = b.maxShapes;
+		this.streamArray = b.streamArray;
+		this.limits = b.limits;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Reads the options defined by {@link JsonHiveSchema#options()}.
+	 */
+	public static SchemaConfig fromCommandLine(CommandLine cmd) {
+		Builder b = builder();
+		if (cmd.hasOption("tableName")) {
+			b.tableName(cmd.getOptionValue("tableName"));
+		}
+		if (cmd.hasOption("inputType")) {
+			b.xml(cmd.getOptionValue("inputType").equalsIgnoreCase("XML"));
+		}
+		if (cmd.hasOption("rootTag")) {
+			b.rootTag(cmd.getOptionValue("rootTag"));
+		}
+		if (cmd.hasOption("responseTag")) {
+			b.responseTag(cmd.getOptionValue("responseTag"));
+		}
+		if (cmd.hasOption("metadataTags")) {
+			b.metadataTags(cmd.getOptionValue("metadataTags").split(","));
+		}
+		if (cmd.hasOption("typePaths")) {
+			b.typePaths(cmd.getOptionValue("typePaths").split(","));
+		}
+		if (cmd.hasOption("discriminator")) {
+			b.discriminator(cmd.getOptionValue("discriminator"));
+		}
+		if (cmd.hasOption("maxTables")) {
+			b.maxTables(Integer.parseInt(cmd.getOptionValue("maxTables")));
+		}
+		if (cmd.hasOption("report")) {
+			// shapes are only counted for the report
+			b.maxShapes(cmd.hasOption("maxShapes") ? Integer.parseInt(cmd.getOptionValue("maxShapes")) : ShapeCounts.DEFAULT_MAX_SHAPES);
+		}
+		if (cmd.hasOption("streamArray")) {
+			b.streamArray(cmd.getOptionValue("streamArray"));
+		}
+		DocumentLimits.Builder limits = DocumentLimits.builder();
+		if (cmd.hasOption("maxDepth")) {
+			limits.maxDepth(Integer.parseInt(cmd.getOptionValue("maxDepth")));
+		}
+		if (cmd.hasOption("maxDocumentSize")) {
+			limits.maxDocumentSize(JsonHiveSchema.bytes(cmd.getOptionValue("maxDocumentSize")));
+		}
+		if (cmd.hasOption("maxStringLength")) {
+			limits.maxStringLength(intSize(cmd.getOptionValue("maxStringLength")));
+		}
+		if (cmd.hasOption("maxKeys")) {
+			limits.maxKeys(Integer.parseInt(cmd.getOptionValue("maxKeys")));
+		}
+		if (cmd.hasOption("maxArrayLength")) {
+			limits.maxArrayLength(Integer.parseInt(cmd.getOptionValue("maxArrayLength")));
+		}
+		if (cmd.hasOption("maxNumberDigits")) {
+			limits.maxNumberDigits(Integer.parseInt(cmd.getOptionValue("maxNumberDigits")));
+		}
+		b.limits(limits.build());
+		return b.allTypesString(cmd.hasOption("allTypesString"))
+				.records(cmd.hasOption("records"))
+				.build();
+	}
+
+	private static int intSize(String size) {
+		long n = JsonHiveSchema.bytes(size);
+		if (n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Size " + size + " is too big, the most is 2g.");
+		}
+		return (int)n;
+	}
+
+	/**
+	 * @return a builder initialized with this config's settings
+	 */
+	public Builder toBuilder() {
+		Builder b = new Builder();
+		b.tableName = tableName;
+		b.xml = xml;
+		b.rootTag = rootTag;
+		b.responseTag = responseTag;
+		b.metadataTags = metadataTags.toArray(new String[metadataTags.size()]);
+		b.typePaths = typePaths.toArray(new String[typePaths.size()]);
+		b.allTypesString = allTypesString;
+		b.records = records;
+		b.discriminator = discriminator;
+		b.maxTables = maxTables;
+		b.maxShapes = maxShapes;
+		b.streamArray = streamArray;
+		b.limits = limits;
+		return b;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * @return true for XML input, false for JSON
+	 */
+	public boolean isXml() {
+		return xml;
+	}
+
+	public String getRootTag() {
+		return rootTag;
+	}
+
+	public String getResponseTag() {
+		return responseTag;
+	}
+
+	public List<String> getMetadataTags() {
+		return metadataTags;
+	}
+
+	public List<String> getTypePaths() {
+		return typePaths;
+	}
+
+	public boolean isAllTypesString() {
+		return allTypesString;
+	}
+
+	/**
+	 * @return true if the input is a stream of records rather than a single document
+	 */
+	public boolean isRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the discriminator path, or null to put every record in one table
+	 */
+	public String getDiscriminator() {
+		return discriminator;
+	}
+
+	public int getMaxTables() {
+		return maxTables;
+	}
+
+	/**
+	 * @return the number of distinct record shapes counted per table, 0 if shapes are not counted
+	 */
+	public int getMaxShapes() {
+		return maxShapes;
+	}
+
+	/**
+	 * @return the path (relative to the Response object) of a huge array to stream instead of loading, or null
+	 */
+	public String getStreamArray() {
+		return streamArray;
+	}
+
+	/**
+	 * @return the size and shape limits every document or record must be within
+	 */
+	public DocumentLimits getLimits() {
+		return limits;
+	}
+
+	public static final class Builder {
+		private String tableName = DEFAULT_TABLE_NAME;
+		private boolean xml = false;
+		private String rootTag = DEFAULT_ROOT_TAG;
+		private String responseTag = DEFAULT_RESPONSE_TAG;
+		private String[] metadataTags = {""};
+		private String[] typePaths = {DEFAULT_RESPONSE_TAG};
+		private boolean allTypesString = false;
+		private boolean records = false;
+		private String discriminator = null;
+		private int maxTables = DEFAULT_MAX_TABLES;
+		private int maxShapes = 0;
+		private String streamArray = null;
+		private DocumentLimits limits = DocumentLimits.DEFAULT;
+
+		private Builder() {}
+
+		public Builder tableName(String tableName) {
+			this.tableName = tableName;
+			return this;
+		}
+
+		public Builder xml(boolean xml) {
+			this.xml = xml;
+			return this;
+		}
+
+		public Builder rootTag(String rootTag) {
+			this.rootTag = rootTag;
+			return this;
+		}
+
+		public Builder responseTag(String responseTag) {
+			this.responseTag = responseTag;
+			return this;
+		}
+
+		public Builder metadataTags(String... metadataTags) {
+			this.metadataTags = metadataTags.clone();
+			return this;
+		}
+
+		public Builder typePaths(String... typePaths) {
+			this.typePaths = typePaths.clone();
+			return this;
+		}
+
+		public Builder allTypesString(boolean allTypesString) {
+			this.allTypesString = allTypesString;
+			return this;
+		}
+
+		public Builder records(boolean records) {
+			this.records = records;
+			return this;
+		}
+
+		public Builder discriminator(String discriminator) {
+			this.discriminator = discriminator;
+			return this;
+		}
+
+		public Builder maxTables(int maxTables) {
+			this.maxTables = maxTables;
+			return this;
+		}
+
+		public Builder maxShapes(int maxShapes) {
+			this.maxShapes = maxShapes;
+			return this;
+		}
+
+		public Builder streamArray(String streamArray) {
+			this.streamArray = streamArray;
+			return this;
+		}
+
+		public Builder limits(DocumentLimits limits) {
+			this.limits = limits;
+			return this;
+		}
+
+		public SchemaConfig build() {
+			return new SchemaConfig(this);
+		}
+	}
+}
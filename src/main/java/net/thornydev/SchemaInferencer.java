@@ -0,0 +1,565 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Infers Hive schemas with the settings of one {@link SchemaConfig}.
+ *
+ * Besides its immutable config an inferencer only holds thread safe helpers: a column name
+ * cache, a parser per thread and, in tolerant mode, the {@link Quarantine} that records
+ * failing to parse go to instead of failing the run.  All state of a run lives in the
+ * {@link SchemaRouter} returned by {@link #newRouter()} or {@link #infer(BufferedReader)}, and
+ * in the {@link SchemaSnapshots} a caller passes along with it.  One inferencer can therefore be shared by any number of
+ * threads, each inferring its own input, and inferencers with different configs can run side
+ * by side in one JVM.
+ */
+public class SchemaInferencer {
+	private final SchemaConfig config;
+	private final String[] metadataTags;
+	private final ColumnNames names = new ColumnNames();
+	// every thread parses with its own parser, which keeps its buffers from one record to the next
+	private final ThreadLocal<DocumentParser> parsers;
+	private final Quarantine quarantine;
+
+	public SchemaInferencer(SchemaConfig config) {
+		this(config, null);
+	}
+
+	/**
+	 * @param quarantine receives the records that fail to parse, null to fail on the first one
+	 */
+	public SchemaInferencer(SchemaConfig config, Quarantine quarantine) {
+		this.config = config;
+		this.metadataTags = config.getMetadataTags().toArray(new String[0]);
+		this.parsers = new ThreadLocal<DocumentParser>() {
+			@Override
+			protected DocumentParser initialValue() {
+				return new DocumentParser(config.getLimits());
+			}
+		};
+		this.quarantine = quarantine;
+	}
+
+	public SchemaConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return whether any record of the input was quarantined
+	 */
+	public boolean quarantined(String source) {
+		return (quarantine != null && quarantine.getRecords(source) > 0);
+	}
+
+	/**
+	 * @return an empty router to add records to
+	 */
+	public SchemaRouter newRouter() {
+		return new SchemaRouter(config.getTableName(), config.getDiscriminator(), config.getMaxTables(), config.getMaxShapes());
+	}
+
+	/**
+	 * Reads the whole input, either as one document or as a stream of records, and
+	 * accumulates its schema.  The reader is not closed.
+	 *
+	 * @throws JSONException if a record does not parse correctly
+	 */
+	public SchemaRouter infer(BufferedReader br) throws IOException, JSONException {
+		SchemaRouter router = newRouter();
+		infer(router, "input", br, Shard.ALL, new InferenceBudget());
+		return router;
+	}
+
+	/**
+	 * Reads one input into an existing router, so several inputs can be accumulated into one
+	 * schema.  For a stream of records only the records selected by <code>shard</code> are
+	 * inferred, until the budget runs out.  A single document is always inferred whole.  The
+	 * reader is not closed.
+	 *
+	 * @param source the input's name, for the quarantine
+	 * @throws JSONException if a record does not parse correctly, and there is no quarantine
+	 */
+	public void infer(SchemaRouter router, String source, BufferedReader br, Shard shard, InferenceBudget budget) throws IOException, JSONException {
+		infer(router, source, br, shard, budget, null);
+	}
+
+	/**
+	 * Reads one input into an existing router as {@link #infer(SchemaRouter, String, BufferedReader, Shard, InferenceBudget)}
+	 * does, telling <code>snapshots</code> of every record added from a stream of records.  The
+	 * snapshots count the records of the calls they are passed to, so they belong to one
+	 * router and one thread.
+	 *
+	 * @param snapshots null for no snapshots
+	 */
+	public void infer(SchemaRouter router, String source, BufferedReader br, Shard shard, InferenceBudget budget, SchemaSnapshots snapshots)
+			throws IOException, JSONException {
+		if (config.isRecords()) {
+			// Stream the records one at a time, each is inferred on its own and merged into its table
+			RecordReader records = new RecordReader(br, config.isXml(), config.getRootTag(), config.getLimits());
+			long position = 0;
+			for (;;) {
+				String record;
+				try {
+					record = records.next();
+				}
+				catch (JSONException e) {
+					// too long, and already skipped
+					if (shard.selects(position++)) {
+						quarantine(e, source, "line", records.getRecordLine(), null);
+					}
+					continue;
+				}
+				if (record == null) {
+					break;
+				}
+				if (shard.selects(position++)) {
+					try {
+						addRecord(router, record);
+					}
+					catch (RuntimeException e) {
+						quarantine(e, source, "line", records.getRecordLine(), record);
+						continue;
+					}
+					if (snapshots != null) {
+						snapshots.recordAdded(this, router);
+					}
+					if (!budget.spend(record.length() + 1, router)) {
+						break;
+					}
+				}
+			}
+		}
+		else {
+			// Read in the input file
+			try {
+				RecordReader lines = new RecordReader(br, config.isXml(), config.getRootTag(), config.getLimits());
+				StringBuilder sb = new StringBuilder();
+				String line;
+				while ( (line = lines.readLine()) != null ) {
+					config.getLimits().checkDocumentSize(sb.length() + line.length() + 1, "The document");
+					sb.append(line).append("\n");
+				}
+				addRecord(router, sb.toString());
+			}
+			catch (RuntimeException e) {
+				quarantine(e, source, null, 0, null);
+			}
+		}
+	}
+
+	/**
+	 * Sends a record that failed to the quarantine, or fails without one.  Any runtime exception
+	 * inferring a record counts as the record failing, not only a parse error, so one odd record
+	 * cannot end a tolerant run.
+	 */
+	private void quarantine(RuntimeException e, String source, String unit, long position, String record) throws IOException {
+		if (quarantine == null) {
+			throw e;
+		}
+		quarantine.add(source, unit, position, e, record);
+	}
+
+	/**
+	 * Infers a single JSON document whose array at {@link SchemaConfig#getStreamArray()} is too
+	 * big to load.  The array's entries are parsed one at a time and inferred by
+	 * <code>threads</code> workers into one shared {@link ConcurrentSchemaNode}, none of them
+	 * is kept.  The rest of the document is inferred as usual and the entries' schema is then
+	 * grafted onto the array, which gives the same schema as reading the whole document.
+	 * The reader is not closed.  Parsing stops once a worker fails, and the worker's failure
+	 * is thrown when the others are done.
+	 *
+	 * @throws JSONException if the document does not parse correctly
+	 */
+	public void inferStreaming(SchemaRouter router, Reader reader, int threads) throws IOException, JSONException {
+		inferStreaming(router, reader, threads, null);
+	}
+
+	/**
+	 * @param executor the executor to infer the entries on, null for a pool of <code>threads</code> threads
+	 */
+	public void inferStreaming(SchemaRouter router, Reader reader, final int threads, Executor executor) throws IOException, JSONException {
+		if (config.isXml() || config.isRecords()) {
+			throw new IllegalArgumentException("-streamArray only works on a single JSON document.");
+		}
+		String responseType = null;
+		for (String type : config.getTypePaths()) {
+			if (type.equalsIgnoreCase("Response")) {
+				responseType = type;
+				break;
+			}
+		}
+		if (responseType == null) {
+			throw new IllegalArgumentException("-streamArray needs the Response type path.");
+		}
+		String[] arrayPath = config.getStreamArray().replaceAll("^/+|/+$", "").split("/+");
+		String[] documentPath = new String[arrayPath.length + 2];
+		documentPath[0] = config.getRootTag();
+		documentPath[1] = config.getResponseTag();
+		System.arraycopy(arrayPath, 0, documentPath, 2, arrayPath.length);
+
+		final ConcurrentSchemaNode elements = new ConcurrentSchemaNode();
+		final TaskGroup<Void> group = new TaskGroup<Void>(executor, threads);
+		ArrayStreamParser streamParser = new ArrayStreamParser(documentPath, parsers.get(), new ArrayStreamParser.ElementHandler() {
+			public void element(final Object value) {
+				try {
+					group.checkFailure();
+				}
+				catch (IOException e) {
+					// stops the parser, the worker's failure is what gets thrown
+					throw new IllegalStateException("A worker failed.", e);
+				}
+				group.submit(new Callable<Void>() {
+					public Void call() {
+						elements.add(value);
+						return null;
+					}
+				});
+				// The parser runs entries itself when the workers fall behind, which keeps memory bounded
+				while (group.queued() > threads * 4 && group.help()) {
+					// keep up
+				}
+			}
+		});
+		JSONObject document = null;
+		try {
+			try {
+				document = streamParser.parse(new JSONTokener(reader));
+			}
+			catch (IOException | RuntimeException e) {
+				group.checkFailure();
+				throw e;
+			}
+			catch (Exception e) {
+				throw new IOException(e); // the handler throws nothing checked
+			}
+			group.join("inferring " + config.getStreamArray());
+		}
+		finally {
+			group.close();
+		}
+
+		TableAccumulator table = addDocument(router, document, new ArrayList<String>());
+		SchemaNode node = table.getSchema().getChild(responseType);
+		for (int i = 0; node != null && i < arrayPath.length; i++) {
+			node = node.getChild(arrayPath[i]);
+		}
+		if (node != null && node.isArray() && streamParser.getElements() > 0) {
+			node.merge(new SchemaNode(SchemaNode.ARRAY, 0, null, elements.snapshot()));
+		}
+	}
+
+	/**
+	 * Infers the newline delimited JSON records of the byte range <code>[start, end)</code> of a
+	 * file until the budget runs out, see {@link SplitLineReader} for which lines belong to a range.
+	 *
+	 * @throws JSONException if a record does not parse correctly
+	 */
+	public void infer(SchemaRouter router, File file, long start, long end, InferenceBudget budget) throws IOException, JSONException {
+		SplitLineReader lines = new SplitLineReader(file, start, end, config.getLimits());
+		try {
+			for (;;) {
+				String line;
+				try {
+					line = lines.next();
+				}
+				catch (JSONException e) {
+					// too long, and already skipped
+					quarantine(e, file.getPath(), "offset", lines.getLineStart(), null);
+					continue;
+				}
+				if (line == null) {
+					break;
+				}
+				if (line.trim().length() > 0) {
+					try {
+						addRecord(router, line);
+					}
+					catch (RuntimeException e) {
+						quarantine(e, file.getPath(), "offset", lines.getLineStart(), line);
+						continue;
+					}
+					if (!budget.spend(line.length() + 1, router)) {
+						break;
+					}
+				}
+			}
+		}
+		finally {
+			lines.close();
+		}
+	}
+
+	/**
+	 * Splits the byte range <code>[start, end)</code> of a newline delimited JSON file into
+	 * <code>splits</code> ranges that are read and inferred in parallel, each on its own
+	 * thread with its own router, and merges the results in file order.  The budget is shared
+	 * by all splits.
+	 *
+	 * @throws JSONException if a record does not parse correctly
+	 */
+	public SchemaRouter infer(File file, long start, long end, int splits, int threads, InferenceBudget budget) throws IOException, JSONException {
+		return infer(file, start, end, splits, threads, budget, null);
+	}
+
+	/**
+	 * @param executor the executor to read the splits on, null for a pool of <code>threads</code> threads
+	 */
+	public SchemaRouter infer(final File file, long start, long end, int splits, int threads, final InferenceBudget budget, Executor executor) throws IOException, JSONException {
+		final long[] b = SplitLineReader.boundaries(start, end, splits);
+		if (splits == 1) {
+			SchemaRouter router = newRouter();
+			infer(router, file, b[0], b[1], budget);
+			return router;
+		}
+		TaskGroup<SchemaRouter> group = new TaskGroup<SchemaRouter>(executor, Math.min(threads, splits));
+		try {
+			List<Future<SchemaRouter>> results = new ArrayList<Future<SchemaRouter>>();
+			for (int i = 0; i < splits; i++) {
+				final int split = i;
+				results.add(group.submit(new Callable<SchemaRouter>() {
+					public SchemaRouter call() throws Exception {
+						SchemaRouter router = newRouter();
+						infer(router, file, b[split], b[split + 1], budget);
+						return router;
+					}
+				}));
+			}
+			group.join("inferring " + file);
+			SchemaRouter router = results.get(0).get();
+			for (int i = 1; i < splits; i++) {
+				router.merge(results.get(i).get());
+			}
+			return router;
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException(e); // every split is done and none failed
+		}
+		finally {
+			group.close();
+		}
+	}
+
+	/**
+	 * Builds the template object for a single record (document) and merges it into the router.
+	 *
+	 * @param router receives the record's template
+	 * @param text the record's JSON or XML text
+	 * @throws JSONException if the record does not parse correctly
+	 */
+	public void addRecord(SchemaRouter router, String text) throws JSONException {
+		ArrayList<String> xPaths = new ArrayList<String>();
+		// Manipulate JSONObject to create template object of Hive structure
+		JSONObject initialObj;
+
+		if (config.isXml()) {
+			// Convert the XML to a JSON Object
+			initialObj = parsers.get().parseXml(text);
+
+			// Add the Keyed Data to the new object
+			for (String item : config.getMetadataTags()) {
+				if (!item.isEmpty()) {
+					xPaths.add(formatXPath(item, item.replace("/", "_"), JsonHiveSchema.HIVE_TYPE.struct));
+				}
+			}
+		}
+		else {
+			initialObj = parsers.get().parseJson(text);
+		}
+		addDocument(router, initialObj, xPaths);
+	}
+
+	/**
+	 * Builds the template object of a parsed record and merges it into the router.
+	 *
+	 * @return the table the record went to
+	 */
+	private TableAccumulator addDocument(SchemaRouter router, JSONObject initialObj, ArrayList<String> xPaths) throws JSONException {
+		JSONObject finalObj;
+		JSONObject respRoot;
+
+		// Take the known parts of the Key Data and create a new object that will be the final output
+		finalObj = new JSONObject(initialObj.getJSONObject(config.getRootTag()), metadataTags);
+
+		// Get the root response object, then determine if we iterate for certain sub-keys or type the whole response.
+		respRoot = initialObj.getJSONObject(config.getRootTag()).getJSONObject(config.getResponseTag());
+
+		for (String type : config.getTypePaths()) {
+			if (type.equalsIgnoreCase("Response")) {
+				finalObj.put(type, respRoot);
+			}
+			else if (type.contains("/")) {
+				Object o;
+				String queryPath = "";
+				if (type.contains("@")) {
+					// Our type is an array that needs to be parsed as independent objects
+					queryPath = type.split("@")[0];
+					String key = type.split("@")[1].split(":")[0];
+					String value = type.split("@")[1].split(":")[1];
+					o = respRoot.query((!queryPath.startsWith("/") ? "/" + queryPath : queryPath));
+					if (!(o instanceof JSONArray)) {
+						throw new JSONException("Expected an array at " + queryPath + " for -typePaths " + type);
+					}
+					String xpathValue = "";
+					for (int i = 0; i < ((JSONArray)o).length(); i++) {
+						JSONObject j = ((JSONArray)o).getJSONObject(i);
+						if (j.get(key).equals(value)) {
+							o = j;
+							xpathValue = "[@" + key + "='" + value + "']";
+							break;
+						}
+					}
+					finalObj.put(queryPath.replace("/", "_") + "_" + value, o);
+					if (config.isXml()) {
+						xPaths.add(formatXPath(config.getResponseTag() + "/" + queryPath + xpathValue, queryPath.replace("/", "_") + "_" + value, hiveTypeOf(o)));
+					}
+				}
+				else {
+					queryPath = type;
+					o = respRoot.query((!queryPath.startsWith("/") ? "/" + queryPath : queryPath));
+					String queryPathName = (queryPath.endsWith("/") ? queryPath.substring(0, queryPath.lastIndexOf("/")).replace("/", "_") : queryPath.replace("/", "_"));
+					finalObj.put(queryPathName, o);
+					if (config.isXml()) {
+						xPaths.add(formatXPath(config.getResponseTag() + "/" + queryPath, queryPathName, hiveTypeOf(o)));
+					}
+				}
+			}
+			else {
+				throw new IllegalArgumentException("Invalid path specified.");
+			}
+		}
+
+		return router.add(respRoot, finalObj, xPaths);
+	}
+
+	private String formatXPath(String path, String name, JsonHiveSchema.HIVE_TYPE type) {
+		return JsonHiveSchema.formatXPath(config.getRootTag(), path, name, type);
+	}
+
+	private static JsonHiveSchema.HIVE_TYPE hiveTypeOf(Object o) {
+		if (o instanceof JSONObject) {
+			return JsonHiveSchema.HIVE_TYPE.struct;
+		}
+		else if (o instanceof JSONArray) {
+			return JsonHiveSchema.HIVE_TYPE.array;
+		}
+		return JsonHiveSchema.HIVE_TYPE.primitive;
+	}
+
+	/**
+	 * Renders the DDL of every table in the router.
+	 */
+	public String render(SchemaRouter router) {
+		StringBuilder output = new StringBuilder();
+		try {
+			render(output, router);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e); // a StringBuilder does not throw
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Streams the DDL of every table in the router to <code>out</code>, e.g. a buffered file writer.
+	 */
+	public void render(Appendable out, SchemaRouter router) throws IOException {
+		boolean first = true;
+		for (TableAccumulator table : router.getTables()) {
+			renderTable(out, first, table.getTableName(), table.getXPaths(), table.getSchema());
+			first = false;
+		}
+	}
+
+	/**
+	 * Renders the DDL of every table in a (merged) partial schema.
+	 */
+	public String render(PartialSchema partial) {
+		StringBuilder output = new StringBuilder();
+		try {
+			render(output, partial);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Streams the DDL of every table in a (merged) partial schema to <code>out</code>.
+	 */
+	public void render(Appendable out, PartialSchema partial) throws IOException {
+		boolean first = true;
+		for (PartialSchema.Table table : partial.getTables()) {
+			renderTable(out, first, table.getName(), table.getXPaths(), table.getSchema());
+			first = false;
+		}
+	}
+
+	private void renderTable(Appendable out, boolean first, String tableName, Collection<String> xPaths, SchemaNode schema) throws IOException {
+		JsonHiveSchema tableWriter = new JsonHiveSchema(tableName, config, names);
+		tableWriter.addXPaths(xPaths);
+		if (!first) {
+			out.append("\n\n");
+		}
+		tableWriter.writeHiveSchema(out, schema);
+		out.append("\n");
+		tableWriter.writeHiveQuery(out, schema);
+	}
+
+	/**
+	 * @return the keys of every table that normalize to the same column or struct field, see {@link ColumnNames#collisions}
+	 */
+	public List<String> collisions(SchemaRouter router) {
+		List<String> collisions = new ArrayList<String>();
+		for (TableAccumulator table : router.getTables()) {
+			collisions.addAll(names.collisions(table.getTableName(), table.getSchema()));
+		}
+		return collisions;
+	}
+
+	/**
+	 * @return the keys of every table in a (merged) partial schema that normalize to the same column or struct field
+	 */
+	public List<String> collisions(PartialSchema partial) {
+		List<String> collisions = new ArrayList<String>();
+		for (PartialSchema.Table table : partial.getTables()) {
+			collisions.addAll(names.collisions(table.getName(), table.getSchema()));
+		}
+		return collisions;
+	}
+
+	/**
+	 * Adds the per table record counts and most frequent shapes of a run, and any column name
+	 * collisions, to the report.
+	 */
+	public void report(SchemaRouter router, InferenceReport report) {
+		if (router.getOverflowRecords() > 0) {
+			report.add("records over -maxTables", router.getOverflowRecords());
+		}
+		List<String> collisions = collisions(router);
+		if (!collisions.isEmpty()) {
+			report.section("name collisions");
+			for (String collision : collisions) {
+				report.add("collision", collision);
+			}
+		}
+		for (TableAccumulator table : router.getTables()) {
+			report.addTable(table, 20);
+		}
+	}
+}
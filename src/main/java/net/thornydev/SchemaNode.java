@@ -0,0 +1,413 @@
+package net.thornydev;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * One node of the schema trie: the accumulated type state of every value seen at one key
+ * path.
+ *
+ * A node records the set of value kinds seen at its path as bit flags, which form a simple
+ * type lattice that is resolved to a Hive type only when the schema is rendered (int and
+ * double widen to double, mixed scalars widen to string, null defers to anything else).
+ * Struct fields are child nodes keyed by field name; all entries of an array share one
+ * element node.  Once an array has been seen at a path, single values seen at the same path
+ * are merged into the element node instead, which is how XML repeats elements.
+ *
+ * Every node also counts the non-null values seen at its path.  An array counts once at its
+ * path and each of its entries once at the element, and a single value seen at an array path
+ * counts at both, whether it came before or after the first array.  Counts add up on a merge,
+ * so they do not depend on the order values were added or merged in either.
+ *
+ * Adding a record is an in-place walk over the parsed value and merging another trie is an
+ * in-place walk over that trie, so neither builds any strings.
+ */
+public class SchemaNode {
+	public static final int NULL = 1;
+	public static final int BOOLEAN = 2;
+	public static final int INT = 4;
+	public static final int DOUBLE = 8;
+	public static final int STRING = 16;
+	public static final int STRUCT = 32;
+	public static final int ARRAY = 64;
+
+	static final int SCALARS = BOOLEAN | INT | DOUBLE | STRING;
+
+	private int kinds = 0;
+	private long count = 0;
+	private Map<String, SchemaNode> children = null;
+	private SchemaNode element = null;
+
+	public SchemaNode() {}
+
+	/**
+	 * Rebuilds a node from its parts, e.g. a snapshot of a {@link ConcurrentSchemaNode}.
+	 * A node with single value kinds must not also be an array, see {@link #merge}.
+	 */
+	SchemaNode(int kinds, long count, Map<String, SchemaNode> children, SchemaNode element) {
+		this.kinds = kinds;
+		this.count = count;
+		this.children = children;
+		this.element = element;
+	}
+
+	/**
+	 * Builds a trie for a single value, e.g. one record's template object.
+	 */
+	public static SchemaNode of(Object value) {
+		SchemaNode node = new SchemaNode();
+		node.add(value);
+		return node;
+	}
+
+	/**
+	 * Reads a trie written by {@link #toJSON()}.
+	 */
+	public static SchemaNode fromJSON(JSONArray json) {
+		List<SchemaNode> nodes = new ArrayList<SchemaNode>(json.length());
+		for (int i = 0; i < json.length(); i++) {
+			JSONObject n = json.getJSONObject(i);
+			SchemaNode node = new SchemaNode();
+			node.kinds = n.getInt("kinds");
+			node.count = n.optLong("count", 0);
+			if (i > 0) {
+				// parents come before their children
+				SchemaNode parent = nodes.get(n.getInt("parent"));
+				if (n.has("name")) {
+					parent.children().put(n.getString("name"), node);
+				}
+				else {
+					parent.element = node;
+				}
+			}
+			nodes.add(node);
+		}
+		return nodes.isEmpty() ? new SchemaNode() : nodes.get(0);
+	}
+
+	/**
+	 * Reads a trie written as nested objects,
+	 * <code>{"kinds": n, "children": {name: node, ...}, "element": node}</code>, by version 1
+	 * of {@link PartialSchema}.  Walks the objects with an explicit stack.  Version 1 has no
+	 * value counts, they are read as 0.
+	 */
+	public static SchemaNode fromJSON(JSONObject json) {
+		SchemaNode root = new SchemaNode();
+		// the nodes still to read, and their objects, next last
+		List<SchemaNode> nodes = new ArrayList<SchemaNode>();
+		List<JSONObject> objects = new ArrayList<JSONObject>();
+		nodes.add(root);
+		objects.add(json);
+		while (!nodes.isEmpty()) {
+			SchemaNode node = nodes.remove(nodes.size() - 1);
+			JSONObject o = objects.remove(objects.size() - 1);
+			node.kinds = o.getInt("kinds");
+			JSONObject c = o.optJSONObject("children");
+			if (c != null) {
+				for (String k : c.keySet()) {
+					SchemaNode child = new SchemaNode();
+					node.children().put(k, child);
+					nodes.add(child);
+					objects.add(c.getJSONObject(k));
+				}
+			}
+			JSONObject e = o.optJSONObject("element");
+			if (e != null) {
+				nodes.add(node.element());
+				objects.add(e);
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Writes this node and everything below it as a flat list of nodes, this one first and
+	 * every other after its parent: <code>{"kinds": n, "count": c}</code> for this node,
+	 * <code>{"parent": i, "name": name, "kinds": n, "count": c}</code> for a struct field and
+	 * <code>{"parent": i, "kinds": n, "count": c}</code> for an array element, where
+	 * <code>i</code> is the parent's index in the list.  However deep the trie, the JSON is only three levels deep,
+	 * so reading and writing it needs no deep stack either.  See {@link PartialSchema}.
+	 */
+	public JSONArray toJSON() {
+		JSONArray json = new JSONArray();
+		// the nodes still to write, their parents' indexes and their names, next last
+		List<SchemaNode> nodes = new ArrayList<SchemaNode>();
+		List<Integer> parents = new ArrayList<Integer>();
+		List<String> names = new ArrayList<String>();
+		nodes.add(this);
+		parents.add(-1);
+		names.add(null);
+		while (!nodes.isEmpty()) {
+			SchemaNode node = nodes.remove(nodes.size() - 1);
+			int parent = parents.remove(parents.size() - 1);
+			String name = names.remove(names.size() - 1);
+			JSONObject n = new JSONObject();
+			if (parent >= 0) {
+				n.put("parent", parent);
+			}
+			if (name != null) {
+				n.put("name", name);
+			}
+			n.put("kinds", node.kinds);
+			n.put("count", node.count);
+			int index = json.length();
+			json.put(n);
+			if (node.element != null) {
+				nodes.add(node.element);
+				parents.add(index);
+				names.add(null);
+			}
+			if (node.children != null) {
+				for (Map.Entry<String, SchemaNode> e : node.children.entrySet()) {
+					nodes.add(e.getValue());
+					parents.add(index);
+					names.add(e.getKey());
+				}
+			}
+		}
+		return json;
+	}
+
+	/**
+	 * Merges one parsed JSON value into this node.  The value is walked with an explicit stack,
+	 * in the same order a recursive walk would take, so deep values need no deep thread stack.
+	 *
+	 * @return true if a new path or a new value kind was recorded
+	 */
+	public boolean add(Object value) {
+		boolean changed = false;
+		// the nodes still to add a value to, and those values, next last
+		List<SchemaNode> nodes = new ArrayList<SchemaNode>();
+		List<Object> values = new ArrayList<Object>();
+		nodes.add(this);
+		values.add(value);
+		while (!nodes.isEmpty()) {
+			SchemaNode node = nodes.remove(nodes.size() - 1);
+			Object v = values.remove(values.size() - 1);
+			if (v instanceof JSONArray) {
+				// promoted first, so the element only counts the single values seen before
+				changed |= node.promoteToArray();
+				node.count++;
+				JSONArray a = (JSONArray)v;
+				for (int i = a.length() - 1; i >= 0; i--) {
+					nodes.add(node.element());
+					values.add(a.opt(i));
+				}
+			}
+			else if ((node.kinds & ARRAY) != 0 && v != JSONObject.NULL) {
+				node.count++;
+				nodes.add(node.element());
+				values.add(v);
+			}
+			else if (v instanceof JSONObject) {
+				changed |= node.addKind(STRUCT);
+				node.count++;
+				JSONObject o = (JSONObject)v;
+				List<String> keys = new ArrayList<String>(o.keySet());
+				for (int i = keys.size() - 1; i >= 0; i--) {
+					String k = keys.get(i);
+					SchemaNode child = node.children().get(k);
+					if (child == null) {
+						child = new SchemaNode();
+						node.children.put(k, child);
+						changed = true;
+					}
+					nodes.add(child);
+					values.add(o.opt(k));
+				}
+			}
+			else {
+				int kind = kindOf(v);
+				changed |= node.addKind(kind);
+				if (kind != NULL) {
+					node.count++;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Merges another trie into this one, as if every value added to <code>other</code> had
+	 * been added here.  Walks both tries with an explicit stack.
+	 *
+	 * The result only depends on the set of values added to either trie, not on the order they
+	 * were added or merged in, so merges are associative and commutative.
+	 *
+	 * @return true if a new path or a new value kind was recorded
+	 */
+	public boolean merge(SchemaNode other) {
+		boolean changed = false;
+		// pairs of nodes still to merge, next last
+		List<SchemaNode> nodes = new ArrayList<SchemaNode>();
+		List<SchemaNode> others = new ArrayList<SchemaNode>();
+		nodes.add(this);
+		others.add(other);
+		while (!nodes.isEmpty()) {
+			SchemaNode node = nodes.remove(nodes.size() - 1);
+			SchemaNode o = others.remove(others.size() - 1);
+			if ((o.kinds & ARRAY) != 0) {
+				changed |= node.promoteToArray();
+			}
+			else if ((node.kinds & ARRAY) != 0 && (o.kinds & ~NULL) != 0) {
+				// o holds single values, they belong to our element; nulls stay here, as in add
+				changed |= node.addKind(o.kinds & NULL);
+				node.count += o.count;
+				nodes.add(node.element());
+				others.add(new SchemaNode(o.kinds & ~NULL, o.count, o.children, null));
+				continue;
+			}
+			node.count += o.count;
+			changed |= node.addKind(o.kinds);
+			if (o.element != null) {
+				nodes.add(node.element());
+				others.add(o.element);
+			}
+			if (o.children != null) {
+				for (Map.Entry<String, SchemaNode> e : o.children.entrySet()) {
+					SchemaNode child = node.children().get(e.getKey());
+					if (child == null) {
+						child = new SchemaNode();
+						node.children.put(e.getKey(), child);
+						changed = true;
+					}
+					nodes.add(child);
+					others.add(e.getValue());
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Turns a node that so far only held single values into an array whose element holds them.
+	 * The element counts those values too, so far every non-null value seen here.
+	 */
+	private boolean promoteToArray() {
+		if ((kinds & ARRAY) != 0) {
+			return false;
+		}
+		if ((kinds & ~NULL) != 0) {
+			SchemaNode single = new SchemaNode();
+			single.kinds = kinds & ~NULL;
+			single.count = count;
+			single.children = children;
+			element = single;
+			children = null;
+		}
+		kinds = (kinds & NULL) | ARRAY;
+		return true;
+	}
+
+	private boolean addKind(int kind) {
+		int before = kinds;
+		kinds |= kind;
+		return kinds != before;
+	}
+
+	private Map<String, SchemaNode> children() {
+		if (children == null) {
+			children = new HashMap<String, SchemaNode>();
+		}
+		return children;
+	}
+
+	private SchemaNode element() {
+		if (element == null) {
+			element = new SchemaNode();
+		}
+		return element;
+	}
+
+	static int kindOf(Object value) {
+		if (value instanceof String) {
+			return STRING;
+		}
+		if (value instanceof Integer || value instanceof Long) {
+			return INT;
+		}
+		if (value instanceof Double && !((Double)value).isNaN() && !((Double)value).isInfinite()) {
+			// a finite double always prints with a '.'
+			return DOUBLE;
+		}
+		if (value instanceof Number) {
+			// e.g. a BigInteger or BigDecimal: a double if it prints with a '.'
+			return value.toString().indexOf('.') > 0 ? DOUBLE : INT;
+		}
+		if (value instanceof Boolean) {
+			return BOOLEAN;
+		}
+		if (value == null || value == JSONObject.NULL) {
+			return NULL;
+		}
+		throw new IllegalArgumentException("unknown type: " + value.getClass());
+	}
+
+	/**
+	 * @return the value kinds seen at this path, a combination of the kind flags
+	 */
+	public int getKinds() {
+		return kinds;
+	}
+
+	/**
+	 * @return the number of non-null values seen at this path
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public boolean isStruct() {
+		return (kinds & STRUCT) != 0 && (kinds & SCALARS) == 0;
+	}
+
+	public boolean isArray() {
+		return (kinds & ARRAY) != 0;
+	}
+
+	/**
+	 * @return the array element node, or null if no array entries were seen
+	 */
+	public SchemaNode getElement() {
+		return element;
+	}
+
+	public SchemaNode getChild(String name) {
+		return children == null ? null : children.get(name);
+	}
+
+	/**
+	 * @return the struct field names, sorted case-insensitively
+	 */
+	public List<String> getChildNames() {
+		if (children == null) {
+			return Collections.emptyList();
+		}
+		List<String> names = new ArrayList<String>(children.keySet());
+		Collections.sort(names, String.CASE_INSENSITIVE_ORDER);
+		return names;
+	}
+
+	/**
+	 * Resolves the scalar kinds seen at this path to a Hive primitive type.
+	 */
+	public String scalarType() {
+		int scalars = kinds & SCALARS;
+		if (scalars == BOOLEAN) {
+			return "boolean";
+		}
+		if (scalars == INT) {
+			return "int";
+		}
+		if (scalars == DOUBLE || scalars == (INT | DOUBLE)) {
+			return "double";
+		}
+		return "string";
+	}
+}
@@ -0,0 +1,201 @@
+package net.thornydev;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Routes records to per-table {@link TableAccumulator}s by the value of a discriminator
+ * field, so event streams that mix several record types can be turned into one table per
+ * type in a single pass.
+ *
+ * The discriminator is a JSON pointer relative to the response root, the same way
+ * <code>-typePaths</code> are, e.g. <code>type</code> or <code>header/eventType</code>.
+ * Without a discriminator every record goes to the base table.
+ *
+ * At most <code>maxTables</code> distinct values get their own table.  Records with any
+ * further value, or without the discriminator field, are collected into a single
+ * <code>&lt;tableName&gt;_other</code> table so memory stays bounded however many
+ * distinct values the stream contains.
+ */
+public class SchemaRouter {
+	static final String OTHER_SUFFIX = "_other";
+
+	private final String tableName;
+	private final String discriminator;
+	private final int maxTables;
+	private final int maxShapes;
+	private final Map<String, TableAccumulator> tables = new LinkedHashMap<String, TableAccumulator>();
+	private TableAccumulator other = null;
+	private long overflowRecords = 0;
+	private long records = 0;
+	private long lastChange = 0;
+
+	public SchemaRouter(String tableName) {
+		this(tableName, null, 1);
+	}
+
+	public SchemaRouter(String tableName, String discriminator, int maxTables) {
+		this(tableName, discriminator, maxTables, 0);
+	}
+
+	/**
+	 * @param maxShapes the number of distinct record shapes to count per table, 0 to not count shapes
+	 */
+	public SchemaRouter(String tableName, String discriminator, int maxTables, int maxShapes) {
+		if (maxTables < 1) {
+			throw new IllegalArgumentException("maxTables must be at least 1: " + maxTables);
+		}
+		this.tableName = tableName;
+		this.discriminator = (discriminator == null || discriminator.startsWith("/") ? discriminator : "/" + discriminator);
+		this.maxTables = maxTables;
+		this.maxShapes = maxShapes;
+	}
+
+	/**
+	 * Merges one record into the table selected by its discriminator value.
+	 *
+	 * @param respRoot the record's response root, used to read the discriminator
+	 * @param template the record's template object
+	 * @param xPaths the xpaths collected for the record (XML only)
+	 * @return the table the record went to
+	 */
+	public TableAccumulator add(JSONObject respRoot, JSONObject template, Collection<String> xPaths) {
+		int before = tables.size() + (other == null ? 0 : 1);
+		TableAccumulator table = route(respRoot);
+		records++;
+		boolean newTable = (tables.size() + (other == null ? 0 : 1) != before);
+		if (table.add(template, xPaths) || newTable) {
+			lastChange = records;
+		}
+		return table;
+	}
+
+	private TableAccumulator route(JSONObject respRoot) {
+		if (discriminator == null) {
+			return table(tableName);
+		}
+		Object value = respRoot.optQuery(discriminator);
+		if (value == null || value == JSONObject.NULL || value instanceof JSONObject || value instanceof JSONArray) {
+			return other();
+		}
+		String name = tableName + "_" + sanitize(value.toString());
+		TableAccumulator table = tables.get(name);
+		if (table == null && tables.size() >= maxTables) {
+			overflowRecords++;
+			return other();
+		}
+		return table(name);
+	}
+
+	private TableAccumulator table(String name) {
+		TableAccumulator table = tables.get(name);
+		if (table == null) {
+			table = new TableAccumulator(name, maxShapes);
+			tables.put(name, table);
+		}
+		return table;
+	}
+
+	private TableAccumulator other() {
+		if (other == null) {
+			other = new TableAccumulator(tableName + OTHER_SUFFIX, maxShapes);
+		}
+		return other;
+	}
+
+	/**
+	 * Merges the tables of another router, e.g. one that read another split of the same
+	 * input, into this one.  Tables this router does not have yet are added while there is
+	 * room under <code>maxTables</code> and go to the overflow table after that.
+	 */
+	public void merge(SchemaRouter other) {
+		long stable = getRecordsSinceChange() + other.getRecordsSinceChange();
+		records += other.records;
+		lastChange = records - stable;
+		overflowRecords += other.overflowRecords;
+		for (TableAccumulator table : other.tables.values()) {
+			if (!tables.containsKey(table.getTableName()) && tables.size() >= maxTables) {
+				overflowRecords += table.getRecords();
+				other().merge(table);
+			}
+			else {
+				table(table.getTableName()).merge(table);
+			}
+		}
+		if (other.other != null) {
+			other().merge(other.other);
+		}
+	}
+
+	/**
+	 * Merges the tables of a partial schema, e.g. one cached for an unchanged input file, like
+	 * {@link #merge(SchemaRouter)}.  Its records are not counted as records without a change.
+	 */
+	public void merge(PartialSchema partial) {
+		long stable = getRecordsSinceChange();
+		overflowRecords += partial.getOverflowRecords();
+		for (PartialSchema.Table table : partial.getTables()) {
+			records += table.getRecords();
+			if (discriminator != null && table.getName().equals(tableName + OTHER_SUFFIX)) {
+				other().merge(table);
+			}
+			else if (!tables.containsKey(table.getName()) && tables.size() >= maxTables) {
+				overflowRecords += table.getRecords();
+				other().merge(table);
+			}
+			else {
+				table(table.getName()).merge(table);
+			}
+		}
+		lastChange = records - stable;
+	}
+
+	/**
+	 * @return the accumulated tables in first-seen order, followed by the overflow table if used
+	 */
+	public Collection<TableAccumulator> getTables() {
+		Map<String, TableAccumulator> all = new LinkedHashMap<String, TableAccumulator>(tables);
+		if (other != null) {
+			all.put(other.getTableName(), other);
+		}
+		return all.values();
+	}
+
+	/**
+	 * @return the number of records routed to the overflow table because <code>maxTables</code> was reached
+	 */
+	public long getOverflowRecords() {
+		return overflowRecords;
+	}
+
+	/**
+	 * @return the number of records added
+	 */
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the number of records added since one last added a table, path, value kind or xpath,
+	 *         summed over the splits for a merged router
+	 */
+	public long getRecordsSinceChange() {
+		return records - lastChange;
+	}
+
+	/**
+	 * Hive table names are limited to letters, digits and underscores.
+	 */
+	static String sanitize(String value) {
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = Character.toLowerCase(value.charAt(i));
+			sb.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') ? c : '_');
+		}
+		return sb.length() == 0 ? "_" : sb.toString();
+	}
+}
@@ -0,0 +1,297 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Keeps a warmed-up JVM resident and generates schemas on request, so scripts that call the
+ * tool thousands of times a day don't pay for JVM startup and class loading on every call.
+ *
+ * The server only listens on the loopback interface.  Each connection carries one request,
+ * a single line of JSON:
+ * <pre>
+ *   {"token": "...", "args": ["-input", "in.json", "-output", "out.ddl", ...], "cwd": "/dir/relative/paths/are/in"}
+ * </pre>
+ * The args are exactly the command line options of {@link JsonHiveSchema}.  The reply is one
+ * line of JSON, either <code>{"ddl": "..."}</code> or <code>{"error": "..."}</code>.  A request
+ * of <code>{"token": "...", "command": "shutdown"}</code> stops the server.  Requests are served
+ * in parallel on a fixed pool of worker threads.
+ *
+ * Any local user can connect to a loopback port, and a request reads and writes files with the
+ * server's rights, so every request must carry the token the server writes, readable by its
+ * owner only, to the token file when it starts (default {@link #defaultTokenFile()}).  It is
+ * checked only once the whole request line is in, so before that a connection is held to
+ * {@link #DEFAULT_MAX_REQUEST_LENGTH} bytes, refused beyond it, and dropped when the line isn't
+ * complete within {@link #DEFAULT_READ_TIMEOUT} milliseconds in total.  Neither idle nor slowly
+ * trickling connections can tie up the workers.
+ *
+ * Usage: <code>java -cp json-hive-schema-1.0-jar-with-dependencies.jar net.thornydev.SchemaServer [port [threads [tokenFile]]]</code>
+ *
+ * See {@link SchemaClient} for the matching client.
+ */
+public class SchemaServer {
+	public static final int DEFAULT_PORT = 7890;
+	public static final int DEFAULT_READ_TIMEOUT = 10000;
+	public static final int DEFAULT_MAX_REQUEST_LENGTH = 64 * 1024;
+
+	private final ServerSocket serverSocket;
+	private final ExecutorService workers;
+	private final String token;
+	private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+	private volatile int maxRequestLength = DEFAULT_MAX_REQUEST_LENGTH;
+	private volatile boolean running = true;
+
+	/**
+	 * @param port the loopback port to listen on, 0 for any free one
+	 * @param tokenFile the file to write the token clients must send to
+	 */
+	public SchemaServer(int port, int threads, File tokenFile) throws IOException {
+		this.token = newToken();
+		writeToken(tokenFile, token);
+		this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.workers = Executors.newFixedThreadPool(threads);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = (args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+		int threads = (args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+		File tokenFile = (args.length > 2 ? new File(args[2]) : defaultTokenFile());
+		SchemaServer server = new SchemaServer(port, threads, tokenFile);
+		warmUp();
+		System.err.println("Schema server listening on " + server.serverSocket.getLocalSocketAddress() + " with " + threads + " worker threads, token in " + tokenFile + ".");
+		server.serve();
+	}
+
+	/**
+	 * @return <code>~/.json-hive-schema/server.token</code>
+	 */
+	public static File defaultTokenFile() {
+		return new File(new File(System.getProperty("user.home"), ".json-hive-schema"), "server.token");
+	}
+
+	private static String newToken() {
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Replaces the token file with a new one only the owner can read (mode 0600 where the file
+	 * system has POSIX permissions), in a directory only the owner can list.
+	 */
+	private static void writeToken(File tokenFile, String token) throws IOException {
+		File dir = tokenFile.getAbsoluteFile().getParentFile();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+		if (!dir.exists()) {
+			if (posix) {
+				Files.createDirectories(dir.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			}
+			else {
+				Files.createDirectories(dir.toPath());
+			}
+		}
+		Files.deleteIfExists(tokenFile.toPath());
+		if (posix) {
+			Files.createFile(tokenFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		else {
+			Files.createFile(tokenFile.toPath());
+			tokenFile.setReadable(false, false);
+			tokenFile.setReadable(true, true);
+		}
+		Files.write(tokenFile.toPath(), token.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return the port the server listens on
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Sets how long a connection may take to send its whole request, in milliseconds.
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Sets the longest request line accepted, in bytes.
+	 */
+	public void setMaxRequestLength(int maxRequestLength) {
+		this.maxRequestLength = maxRequestLength;
+	}
+
+	/**
+	 * Accepts connections until a shutdown request arrives.
+	 */
+	public void serve() throws IOException {
+		try {
+			while (running) {
+				final Socket socket;
+				try {
+					socket = serverSocket.accept();
+				}
+				catch (IOException e) {
+					if (!running) {
+						break;
+					}
+					throw e;
+				}
+				workers.execute(new Runnable() {
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		}
+		finally {
+			workers.shutdown();
+			serverSocket.close();
+		}
+	}
+
+	private void handle(Socket socket) {
+		try {
+			try {
+				JSONObject reply;
+				try {
+					reply = respond(readRequest(socket));
+				}
+				catch (IllegalArgumentException e) {
+					reply = error(e);
+				}
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+				out.write(reply.toString());
+				out.write('\n');
+				out.flush();
+			}
+			finally {
+				socket.close();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("WARNING: lost connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the request line, which must be complete within the read timeout and no longer than
+	 * the maximum request length.
+	 *
+	 * @return the line, or null when the connection was closed without sending anything
+	 * @throws SocketTimeoutException when the read timeout passes first
+	 * @throws IllegalArgumentException when the line is too long
+	 */
+	private String readRequest(Socket socket) throws IOException {
+		long deadline = System.currentTimeMillis() + readTimeout;
+		int maxLength = maxRequestLength;
+		InputStream in = socket.getInputStream();
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		while (true) {
+			long left = deadline - System.currentTimeMillis();
+			if (left <= 0) {
+				throw new SocketTimeoutException("No complete request within " + readTimeout + " ms.");
+			}
+			socket.setSoTimeout((int) left);
+			int read = in.read(buffer);
+			if (read == -1) {
+				return (line.size() == 0 ? null : line.toString("UTF-8"));
+			}
+			int end = 0;
+			while (end < read && buffer[end] != '\n') {
+				end++;
+			}
+			if (line.size() + end > maxLength) {
+				throw new IllegalArgumentException("Request longer than " + maxLength + " bytes.");
+			}
+			line.write(buffer, 0, end);
+			if (end < read) {
+				String request = line.toString("UTF-8");
+				return (request.endsWith("\r") ? request.substring(0, request.length() - 1) : request);
+			}
+		}
+	}
+
+	private static JSONObject error(Exception e) {
+		return new JSONObject().put("error", e.getClass().getSimpleName() + ": " + e.getMessage());
+	}
+
+	private JSONObject respond(String line) {
+		JSONObject reply = new JSONObject();
+		try {
+			if (line == null) {
+				throw new IllegalArgumentException("Empty request.");
+			}
+			JSONObject request = new JSONObject(line);
+			if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.US_ASCII), request.optString("token").getBytes(StandardCharsets.US_ASCII))) {
+				throw new SecurityException("Missing or wrong token.");
+			}
+			if ("shutdown".equals(request.optString("command"))) {
+				running = false;
+				serverSocket.close();
+				return reply.put("ddl", "");
+			}
+			JSONArray args = request.getJSONArray("args");
+			String[] argv = new String[args.length()];
+			for (int i = 0; i < argv.length; i++) {
+				argv[i] = args.getString(i);
+			}
+			CommandLine cmd = new DefaultParser().parse(JsonHiveSchema.options(), argv);
+			if ((!cmd.hasOption("input") && !cmd.hasOption("merge")) || !cmd.hasOption("output")) {
+				throw new IllegalArgumentException("Input & Output files must be specified.");
+			}
+			String cwd = request.optString("cwd", null);
+			reply.put("ddl", JsonHiveSchema.run(cmd, cwd == null ? null : new File(cwd), workers));
+		}
+		catch (Exception e) {
+			return error(e);
+		}
+		return reply;
+	}
+
+	/**
+	 * Runs a few hundred small inferences so the first real requests find the parser and
+	 * renderer already compiled.
+	 */
+	static void warmUp() throws Exception {
+		String record = "{\"KeyedResponse\":{\"Response\":{\"id\":1,\"name\":\"x\",\"price\":1.5,\"ok\":true,\"tags\":[\"a\"],\"item\":{\"sku\":\"s\",\"qty\":2}}}}\n";
+		StringBuilder records = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			records.append(record);
+		}
+		SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().records(true).build());
+		for (int i = 0; i < 500; i++) {
+			inferencer.render(inferencer.infer(new BufferedReader(new StringReader(records.toString()))));
+		}
+	}
+}
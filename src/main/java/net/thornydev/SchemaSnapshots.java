@@ -0,0 +1,83 @@
+package net.thornydev;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes the DDL of the schema inferred so far every so many records
+ * (<code>-snapshotEvery</code>), so a long or endless record stream, like a pipe into standard
+ * input, shows its schema while it is still being read.
+ *
+ * On standard error every snapshot is appended after a comment line saying how many records
+ * it covers.  A snapshot file is instead replaced by every new snapshot, written to a
+ * temporary file first and moved over it, so the file always holds one complete schema for
+ * whatever polls it.
+ *
+ * An instance counts the records of one run and is not thread-safe, so it is passed to each
+ * {@link SchemaInferencer#infer(SchemaRouter, String, java.io.BufferedReader, Shard, InferenceBudget, SchemaSnapshots)}
+ * of that run rather than held by the inferencer, which may be shared.
+ */
+public class SchemaSnapshots {
+	private final long every;
+	private final File file;
+	private long records = 0;
+	private long snapshots = 0;
+
+	/**
+	 * @param every the number of records between snapshots
+	 * @param file the file to keep the latest snapshot in, null for standard error
+	 */
+	public SchemaSnapshots(long every, File file) {
+		if (every < 1) {
+			throw new IllegalArgumentException("Snapshots must be at least 1 record apart, not " + every + ".");
+		}
+		this.every = every;
+		this.file = file;
+	}
+
+	/**
+	 * Counts a record just added to the router, and writes a snapshot of the router when one is due.
+	 */
+	public void recordAdded(SchemaInferencer inferencer, SchemaRouter router) throws IOException {
+		if (++records % every == 0) {
+			write(inferencer, router);
+		}
+	}
+
+	private void write(SchemaInferencer inferencer, SchemaRouter router) throws IOException {
+		snapshots++;
+		String header = "-- schema snapshot " + snapshots + " after " + records + " records\n";
+		if (file == null) {
+			StringBuilder sb = new StringBuilder(header);
+			inferencer.render(sb, router);
+			System.err.println(sb);
+			System.err.flush();
+			return;
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+		try {
+			writer.write(header);
+			inferencer.render(writer, router);
+			writer.write('\n');
+		}
+		finally {
+			writer.close();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return the number of snapshots written so far
+	 */
+	public long getSnapshots() {
+		return snapshots;
+	}
+}
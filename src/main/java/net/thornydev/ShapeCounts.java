@@ -0,0 +1,96 @@
+package net.thornydev;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the records of one table by their {@link ShapeFingerprint}, for the
+ * <code>-report</code>.
+ *
+ * At most <code>maxShapes</code> distinct shapes are counted, the first ones seen; records
+ * of any further shape are only counted in total, so memory stays bounded however many
+ * shapes the input has.  Counting does not change the schema, every record is still added
+ * to the table's trie.
+ */
+public class ShapeCounts {
+	public static final int DEFAULT_MAX_SHAPES = 1024;
+
+	private final int maxShapes;
+	private final Map<Long, long[]> counts = new LinkedHashMap<Long, long[]>();
+	private long uncountedRecords = 0;
+
+	public ShapeCounts(int maxShapes) {
+		if (maxShapes < 1) {
+			throw new IllegalArgumentException("maxShapes must be at least 1: " + maxShapes);
+		}
+		this.maxShapes = maxShapes;
+	}
+
+	/**
+	 * Counts one record.
+	 *
+	 * @param record the record's template object
+	 */
+	public void add(Object record) {
+		add(ShapeFingerprint.of(record), 1);
+	}
+
+	private void add(long fingerprint, long records) {
+		long[] count = counts.get(fingerprint);
+		if (count == null) {
+			if (counts.size() >= maxShapes) {
+				uncountedRecords += records;
+				return;
+			}
+			count = new long[1];
+			counts.put(fingerprint, count);
+		}
+		count[0] += records;
+	}
+
+	/**
+	 * Adds the counts of another table of the same name, e.g. the same table read from
+	 * another split of the input.
+	 */
+	public void merge(ShapeCounts other) {
+		for (Map.Entry<Long, long[]> e : other.counts.entrySet()) {
+			add(e.getKey(), e.getValue()[0]);
+		}
+		uncountedRecords += other.uncountedRecords;
+	}
+
+	/**
+	 * @return the number of distinct shapes counted
+	 */
+	public int getShapes() {
+		return counts.size();
+	}
+
+	/**
+	 * @return the number of records whose shape was seen when <code>maxShapes</code> shapes were already counted
+	 */
+	public long getUncountedRecords() {
+		return uncountedRecords;
+	}
+
+	/**
+	 * @return the fingerprints and record counts of the shapes, most frequent first
+	 */
+	public List<Map.Entry<Long, Long>> getCountsByRecords() {
+		List<Map.Entry<Long, Long>> sorted = new ArrayList<Map.Entry<Long, Long>>(counts.size());
+		for (Map.Entry<Long, long[]> e : counts.entrySet()) {
+			sorted.add(new AbstractMap.SimpleImmutableEntry<Long, Long>(e.getKey(), e.getValue()[0]));
+		}
+		Collections.sort(sorted, new Comparator<Map.Entry<Long, Long>>() {
+			public int compare(Map.Entry<Long, Long> a, Map.Entry<Long, Long> b) {
+				return Long.compare(b.getValue(), a.getValue());
+			}
+		});
+		return sorted;
+	}
+}
@@ -0,0 +1,116 @@
+package net.thornydev;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Computes a 64 bit structural fingerprint of a parsed record.
+ *
+ * Only the key paths and the type class of every value go into the hash, never the
+ * values themselves, so two records that would produce the same Hive schema produce the
+ * same fingerprint.  Keys of an object are combined with a commutative sum so the
+ * fingerprint does not depend on the order the keys were parsed or iterated in.  Arrays
+ * contribute the set of distinct shapes of their entries, so arrays of different lengths
+ * whose entries share a shape have the same fingerprint.
+ *
+ * Keys are hashed to 64 bits from their characters; <code>String.hashCode</code> has only 32
+ * bits and collides for keys as short as "Aa" and "BB".  A fingerprint can still collide, so
+ * it is only used to count shapes for the report, see {@link ShapeCounts}, never to decide
+ * that two records have the same schema.
+ *
+ * Fingerprinting a record is a single walk that allocates nothing beyond a tiny per-array
+ * scratch buffer.
+ */
+public final class ShapeFingerprint {
+	private static final long OBJECT = 0x9E3779B97F4A7C15L;
+	private static final long ARRAY = 0xC2B2AE3D27D4EB4FL;
+	private static final long EMPTY_ARRAY = 0x165667B19E3779F9L;
+	private static final long STRING = 0x27D4EB2F165667C5L;
+	private static final long INT = 0x94D049BB133111EBL;
+	private static final long DOUBLE = 0xBF58476D1CE4E5B9L;
+	private static final long BOOLEAN = 0x85EBCA77C2B2AE63L;
+	private static final long NULL = 0xFF51AFD7ED558CCDL;
+	private static final int MAX_DISTINCT_ENTRIES = 8;
+
+	private ShapeFingerprint() {}
+
+	public static long of(Object value) {
+		if (value instanceof JSONObject) {
+			JSONObject o = (JSONObject)value;
+			long h = OBJECT;
+			Iterator<String> keys = o.keys();
+			while (keys.hasNext()) {
+				String k = keys.next();
+				h += mix(hash(k) * OBJECT ^ of(o.opt(k)));
+			}
+			return mix(h);
+		}
+		if (value instanceof JSONArray) {
+			JSONArray a = (JSONArray)value;
+			if (a.length() == 0) {
+				return EMPTY_ARRAY;
+			}
+			long h = ARRAY;
+			long[] seen = new long[Math.min(a.length(), MAX_DISTINCT_ENTRIES)];
+			int distinct = 0;
+			for (int i = 0; i < a.length(); i++) {
+				long entry = of(a.opt(i));
+				int j = 0;
+				while (j < distinct && seen[j] != entry) {
+					j++;
+				}
+				if (j == distinct) {
+					if (distinct < seen.length) {
+						seen[distinct++] = entry;
+					}
+					h += mix(entry);
+				}
+			}
+			return mix(h);
+		}
+		if (value instanceof String) {
+			return STRING;
+		}
+		if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+			return DOUBLE;
+		}
+		if (value instanceof Number) {
+			return INT;
+		}
+		if (value instanceof Boolean) {
+			return BOOLEAN;
+		}
+		return NULL;
+	}
+
+	/**
+	 * A 64 bit hash of a key's characters: FNV-1a, then {@link #mix}.
+	 */
+	static long hash(String key) {
+		long h = 0xCBF29CE484222325L ^ key.length();
+		for (int i = 0; i < key.length(); i++) {
+			h = (h ^ key.charAt(i)) * 0x100000001B3L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * The 64 bit finalizer from MurmurHash3.
+	 */
+	static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	public static String toHex(long fingerprint) {
+		String s = Long.toHexString(fingerprint);
+		return "0000000000000000".substring(s.length()) + s;
+	}
+}
@@ -0,0 +1,62 @@
+package net.thornydev;
+
+/**
+ * One of <code>n</code> deterministic slices of an input, given as <code>i/n</code> with
+ * <code>0 &lt;= i &lt; n</code>, so several processes or hosts can each infer their own slice
+ * and write a {@link PartialSchema} to be merged afterwards.
+ *
+ * When the input lists several files each shard takes every n-th file.  A single newline
+ * delimited JSON file is cut into n byte ranges, see {@link SplitLineReader}, and a single
+ * XML record stream is sharded by taking every n-th record.  Any process given the same input
+ * and the same <code>i/n</code> selects exactly the same data.
+ */
+public final class Shard {
+	public static final Shard ALL = new Shard(0, 1);
+
+	private final int index;
+	private final int count;
+
+	public Shard(int index, int count) {
+		if (count < 1 || index < 0 || index >= count) {
+			throw new IllegalArgumentException("Invalid shard " + index + "/" + count + ", expected i/n with 0 <= i < n.");
+		}
+		this.index = index;
+		this.count = count;
+	}
+
+	/**
+	 * Parses <code>i/n</code>.
+	 */
+	public static Shard parse(String text) {
+		int slash = text.indexOf('/');
+		if (slash < 0) {
+			throw new IllegalArgumentException("Invalid shard '" + text + "', expected i/n.");
+		}
+		try {
+			return new Shard(Integer.parseInt(text.substring(0, slash).trim()), Integer.parseInt(text.substring(slash + 1).trim()));
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid shard '" + text + "', expected i/n.");
+		}
+	}
+
+	/**
+	 * @return true if the file or record with the given (zero based) position belongs to this shard
+	 */
+	public boolean selects(long position) {
+		return position % count == index;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return index + "/" + count;
+	}
+}
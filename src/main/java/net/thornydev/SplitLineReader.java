@@ -0,0 +1,167 @@
+package net.thornydev;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.json.JSONException;
+
+/**
+ * Reads the lines of one byte range ("split") of a file, so a single large newline delimited
+ * JSON file can be read by several threads or processes at once, each with its own
+ * <code>FileChannel</code>.
+ *
+ * Lines are assigned to splits the way Hadoop's <code>LineRecordReader</code> does: a split
+ * that does not start at byte 0 skips everything up to and including the first newline at or
+ * after its start, and every split reads lines for as long as they start at or before its
+ * end.  An empty split reads nothing, so a file cut into more splits than it has bytes does
+ * not read its first line more than once.  Each line therefore belongs to exactly one of any
+ * set of adjacent splits, wherever the split boundaries fall.
+ *
+ * A line longer than the document size limit is skipped without being held and then rejected
+ * with a {@link JSONException}, which leaves the reader at the start of the next line.  Without
+ * a limit the same goes for a line longer than the largest byte array, about 2 GB.
+ */
+public class SplitLineReader {
+	static final int BUFFER_SIZE = 64 * 1024;
+	// the longest line a byte array can hold, some VMs reserve a few header words
+	static final int MAX_LINE = Integer.MAX_VALUE - 8;
+
+	private final FileChannel channel;
+	private final long end;
+	private final DocumentLimits limits;
+	private final long maxLength;
+	private final int maxLine;
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+	private int bufferPos = 0;
+	private int bufferLen = 0;
+	private byte[] line = new byte[1024];
+	private long pos;
+	private long lineStart = 0;
+
+	/**
+	 * @param file the file to read
+	 * @param start the first byte of the split
+	 * @param end the byte after the split, the file length for the last split
+	 * @param limits the document size limit applies to each line, counted in bytes
+	 */
+	public SplitLineReader(File file, long start, long end, DocumentLimits limits) throws IOException {
+		this(file, start, end, limits, MAX_LINE);
+	}
+
+	SplitLineReader(File file, long start, long end, DocumentLimits limits, int maxLine) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.end = end;
+		this.limits = limits;
+		this.maxLine = maxLine;
+		this.maxLength = Math.min(limits.getMaxDocumentSize() > 0 ? limits.getMaxDocumentSize() : Long.MAX_VALUE, maxLine);
+		this.pos = start;
+		channel.position(start);
+		if (start == end) {
+			// an empty split has no lines, even at the start of the file where nothing is skipped
+			pos = end + 1;
+		}
+		else if (start != 0) {
+			scanLine(); // the previous split reads the line we start in
+		}
+	}
+
+	/**
+	 * Splits the byte range <code>[start, end)</code> into <code>n</code> ranges of (nearly) equal size.
+	 *
+	 * @return the n + 1 boundaries, split i is <code>[b[i], b[i + 1])</code>
+	 */
+	public static long[] boundaries(long start, long end, int n) {
+		long[] b = new long[n + 1];
+		for (int i = 0; i <= n; i++) {
+			b[i] = start + (end - start) * i / n;
+		}
+		return b;
+	}
+
+	/**
+	 * @return the next line of the split without its line terminator, or null at the end of the split
+	 */
+	public String next() throws IOException {
+		return (pos > end ? null : readLine());
+	}
+
+	/**
+	 * @return the byte offset in the file of the line last read, or rejected for its size
+	 */
+	public long getLineStart() {
+		return lineStart;
+	}
+
+	private String readLine() throws IOException {
+		lineStart = pos;
+		long length = scanLine();
+		if (length < 0) {
+			return null;
+		}
+		limits.checkDocumentSize(length, "The line at byte " + lineStart);
+		if (length > maxLine) {
+			throw DocumentLimits.tooLong("The line at byte " + lineStart, maxLine);
+		}
+		return decode((int)length);
+	}
+
+	/**
+	 * Reads the next line into {@link #line}, as much of it as is within the size limit and
+	 * fits in a byte array.
+	 *
+	 * @return the line's length in bytes, -1 at the end of the file
+	 */
+	private long scanLine() throws IOException {
+		long length = 0;
+		boolean read = false;
+		for (;;) {
+			if (bufferPos == bufferLen) {
+				wrapped.clear();
+				int n = channel.read(wrapped);
+				if (n < 0) {
+					return (read ? length : -1);
+				}
+				bufferPos = 0;
+				bufferLen = n;
+				continue;
+			}
+			read = true;
+			int i = bufferPos;
+			while (i < bufferLen && buffer[i] != '\n') {
+				i++;
+			}
+			int chunk = i - bufferPos;
+			if (length + chunk <= maxLength) {
+				if (length + chunk > line.length) {
+					line = Arrays.copyOf(line, (int)Math.min(Math.max(line.length * 2L, length + chunk), maxLength));
+				}
+				System.arraycopy(buffer, bufferPos, line, (int)length, chunk);
+			}
+			length += chunk;
+			pos += chunk;
+			bufferPos = i;
+			if (i < bufferLen) {
+				bufferPos++; // the newline
+				pos++;
+				return length;
+			}
+		}
+	}
+
+	private String decode(int length) {
+		if (length > 0 && line[length - 1] == '\r') {
+			length--;
+		}
+		return new String(line, 0, length, StandardCharsets.UTF_8);
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+}
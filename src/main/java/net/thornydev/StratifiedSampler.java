@@ -0,0 +1,218 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.json.JSONException;
+
+/**
+ * Infers a record stream spread over many files from a sample of every part of it, so schema
+ * variants that only show up in some files, partitions or days are still seen without
+ * reading everything.
+ *
+ * The files are grouped into strata: one per file, or one per Hive partition, i.e. per
+ * distinct set of <code>key=value</code> directories in the file's path.  A total budget of
+ * records or bytes is divided among the strata, evenly or in proportion to their size, and
+ * each stratum reads its files in order until its quota is used up.  The strata are read
+ * concurrently, each into its own router, and merged in order.  The run's own budget, e.g.
+ * <code>-maxTime</code>, applies to all strata together and stops every one of them.
+ */
+public class StratifiedSampler {
+	private final SchemaInferencer inferencer;
+	private final boolean byPartition;
+	private final boolean proportional;
+	private final List<Stratum> strata = new ArrayList<Stratum>();
+
+	/**
+	 * @param files the files to sample, in a deterministic order
+	 * @param byPartition true for one stratum per partition, false for one per file
+	 * @param proportional true to divide the budget in proportion to the strata's size, false to divide it evenly
+	 */
+	public StratifiedSampler(SchemaInferencer inferencer, List<File> files, boolean byPartition, boolean proportional) {
+		if (!inferencer.getConfig().isRecords()) {
+			throw new IllegalArgumentException("Sampling needs a record stream (-records or -discriminator).");
+		}
+		this.inferencer = inferencer;
+		this.byPartition = byPartition;
+		this.proportional = proportional;
+		Map<String, Stratum> byName = new LinkedHashMap<String, Stratum>();
+		for (File file : files) {
+			String name = (byPartition ? partition(file) : file.getPath());
+			Stratum stratum = byName.get(name);
+			if (stratum == null) {
+				stratum = new Stratum(name);
+				byName.put(name, stratum);
+				strata.add(stratum);
+			}
+			stratum.files.add(file);
+			stratum.bytes += file.length();
+		}
+	}
+
+	/**
+	 * @return the <code>key=value</code> directories of a file's path, e.g. <code>dt=2016-01-01/hour=03</code>,
+	 *         or "" for a file outside any partition
+	 */
+	static String partition(File file) {
+		StringBuilder sb = new StringBuilder();
+		for (File dir = file.getParentFile(); dir != null; dir = dir.getParentFile()) {
+			if (dir.getName().indexOf('=') > 0) {
+				sb.insert(0, sb.length() > 0 ? dir.getName() + "/" : dir.getName());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return true if any of the files lies in a partition directory
+	 */
+	public static boolean hasPartitions(List<File> files) {
+		for (File file : files) {
+			if (!partition(file).isEmpty()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Reads every stratum up to its quota on <code>threads</code> threads.
+	 *
+	 * @param maxRecords the total record budget, 0 for none
+	 * @param maxBytes the total byte budget, 0 for none
+	 * @param convergence stop a stratum early once this many records in a row did not change its schema, 0 for never
+	 * @param budget the run's budget, every stratum's records count against it
+	 * @return the merged schema of all strata
+	 */
+	public SchemaRouter sample(long maxRecords, long maxBytes, long convergence, InferenceBudget budget, int threads) throws IOException, JSONException {
+		return sample(maxRecords, maxBytes, convergence, budget, threads, null);
+	}
+
+	/**
+	 * @param executor the executor to read the strata on, null for a pool of <code>threads</code> threads
+	 */
+	public SchemaRouter sample(long maxRecords, long maxBytes, long convergence, InferenceBudget budget, int threads, Executor executor) throws IOException, JSONException {
+		long totalBytes = 0;
+		for (Stratum stratum : strata) {
+			totalBytes += stratum.bytes;
+		}
+		TaskGroup<SchemaRouter> group = new TaskGroup<SchemaRouter>(executor, Math.min(threads, strata.size()));
+		try {
+			List<Future<SchemaRouter>> results = new ArrayList<Future<SchemaRouter>>();
+			for (final Stratum stratum : strata) {
+				stratum.quotaRecords = quota(maxRecords, stratum.bytes, totalBytes);
+				stratum.quotaBytes = quota(maxBytes, stratum.bytes, totalBytes);
+				stratum.budget = budget.part(stratum.quotaRecords, stratum.quotaBytes, convergence);
+				results.add(group.submit(new Callable<SchemaRouter>() {
+					public SchemaRouter call() throws Exception {
+						return read(stratum);
+					}
+				}));
+			}
+			group.join("sampling");
+			SchemaRouter router = inferencer.newRouter();
+			for (Future<SchemaRouter> result : results) {
+				router.merge(result.get());
+			}
+			return router;
+		}
+		catch (InterruptedException | ExecutionException e) {
+			throw new IllegalStateException(e); // every stratum is done and none failed
+		}
+		finally {
+			group.close();
+		}
+	}
+
+	private long quota(long total, long stratumBytes, long totalBytes) {
+		if (total <= 0) {
+			return 0;
+		}
+		long quota = (proportional && totalBytes > 0 ? (long)((double)total * stratumBytes / totalBytes) : total / strata.size());
+		return Math.max(1, quota);
+	}
+
+	private SchemaRouter read(Stratum stratum) throws IOException, JSONException {
+		InferenceBudget budget = stratum.budget;
+		SchemaRouter router = inferencer.newRouter();
+		for (File file : stratum.files) {
+			if (budget.getStopReason() != null) {
+				break;
+			}
+			stratum.filesRead++;
+			BufferedReader br = ReadAheadInputStream.open(file);
+			try {
+				inferencer.infer(router, file.getPath(), br, Shard.ALL, budget);
+			}
+			finally {
+				br.close();
+			}
+		}
+		stratum.records = router.getRecords();
+		return router;
+	}
+
+	/**
+	 * @return why the strata stopped before the end of their files, e.g. "quota reached in 3 of
+	 *         4 strata", or null if they all read to the end
+	 */
+	public String getStopReason() {
+		Map<String, Integer> reasons = new LinkedHashMap<String, Integer>();
+		for (Stratum stratum : strata) {
+			String reason = (stratum.budget == null ? null : stratum.budget.getStopReason());
+			if (reason != null) {
+				Integer n = reasons.get(reason);
+				reasons.put(reason, n == null ? 1 : n + 1);
+			}
+		}
+		if (reasons.isEmpty()) {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Integer> reason : reasons.entrySet()) {
+			sb.append(sb.length() > 0 ? ", " : "").append(reason.getKey()).append(" in ").append(reason.getValue()).append(" of ").append(strata.size()).append(" strata");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Adds the quota and the records read of every stratum to the report.
+	 */
+	public void report(InferenceReport report) {
+		report.section("sample");
+		report.add("strata", strata.size() + (byPartition ? " partitions" : " files") + ", quotas " + (proportional ? "proportional to size" : "even"));
+		for (Stratum stratum : strata) {
+			String quota = (stratum.quotaRecords > 0 ? stratum.quotaRecords + " records" : "")
+					+ (stratum.quotaRecords > 0 && stratum.quotaBytes > 0 ? " or " : "")
+					+ (stratum.quotaBytes > 0 ? stratum.quotaBytes + " bytes" : "");
+			report.add("stratum " + (stratum.name.isEmpty() ? "(unpartitioned)" : stratum.name),
+					stratum.records + " records from " + stratum.filesRead + " of " + stratum.files.size() + " files ("
+					+ stratum.bytes + " bytes), quota " + quota + ", stopped: "
+					+ (stratum.budget == null || stratum.budget.getStopReason() == null ? "end of input" : stratum.budget.getStopReason()));
+		}
+	}
+
+	private static final class Stratum {
+		private final String name;
+		private final List<File> files = new ArrayList<File>();
+		private long bytes = 0;
+		private long quotaRecords = 0;
+		private long quotaBytes = 0;
+		private InferenceBudget budget = null;
+		private int filesRead = 0;
+		private long records = 0;
+
+		private Stratum(String name) {
+			this.name = name;
+		}
+	}
+}
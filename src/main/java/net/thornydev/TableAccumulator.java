@@ -0,0 +1,98 @@
+package net.thornydev;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.json.JSONObject;
+
+/**
+ * Accumulates the schema of one Hive table across many records.
+ *
+ * Each record's template object (the same object <code>main</code> builds for a single
+ * document) is added to a {@link SchemaNode} trie, which
+ * {@link JsonHiveSchema#createHiveSchema(SchemaNode)} renders.  Adding a record is one walk
+ * over it that builds no strings, so records are added straight to the trie.
+ *
+ * For the <code>-report</code>, records can also be counted by their shape, see
+ * {@link ShapeCounts}.
+ */
+public class TableAccumulator {
+	private final String tableName;
+	private final SchemaNode schema = new SchemaNode();
+	private final Set<String> xPaths = new LinkedHashSet<String>();
+	private final ShapeCounts shapes;
+	private long records = 0;
+
+	public TableAccumulator(String tableName) {
+		this(tableName, 0);
+	}
+
+	/**
+	 * @param maxShapes the number of distinct record shapes to count, 0 to not count shapes
+	 */
+	public TableAccumulator(String tableName, int maxShapes) {
+		this.tableName = tableName;
+		this.shapes = (maxShapes > 0 ? new ShapeCounts(maxShapes) : null);
+	}
+
+	/**
+	 * @return true if the record added a new path, value kind or xpath to the schema
+	 */
+	public boolean add(JSONObject recordTemplate, Collection<String> recordXPaths) {
+		records++;
+		if (shapes != null) {
+			shapes.add(recordTemplate);
+		}
+		boolean changed = xPaths.addAll(recordXPaths);
+		return schema.add(recordTemplate) | changed;
+	}
+
+	/**
+	 * Merges everything added to another table of the same name into this one, e.g. the
+	 * same table accumulated from another split of the input.
+	 */
+	public void merge(TableAccumulator other) {
+		records += other.records;
+		xPaths.addAll(other.xPaths);
+		schema.merge(other.getSchema());
+		if (shapes != null && other.shapes != null) {
+			shapes.merge(other.shapes);
+		}
+	}
+
+	/**
+	 * Merges a table of a partial schema, e.g. one cached for an unchanged input file, into this one.
+	 */
+	public void merge(PartialSchema.Table other) {
+		records += other.getRecords();
+		xPaths.addAll(other.getXPaths());
+		schema.merge(other.getSchema());
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * @return the merged schema of every record added so far
+	 */
+	public SchemaNode getSchema() {
+		return schema;
+	}
+
+	public Set<String> getXPaths() {
+		return xPaths;
+	}
+
+	public long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return the shape counts of the records added to this table, or null if shapes are not counted
+	 */
+	public ShapeCounts getShapes() {
+		return shapes;
+	}
+}
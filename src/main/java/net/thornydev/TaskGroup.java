@@ -0,0 +1,204 @@
+package net.thornydev;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The tasks of one parallel stage of a run, on an executor that may be shared with other runs
+ * (see {@link BatchRunner}) or, without one, on a pool of the stage's own.
+ *
+ * A thread waiting for the group runs the group's tasks that no worker has started yet
+ * itself.  So a run whose own thread is a worker of the shared pool still makes progress
+ * when every other worker is busy, and nested stages on one fixed pool cannot deadlock.
+ *
+ * The first task to fail stops the group: the tasks not started yet are cancelled instead of
+ * run, and the failure is thrown by {@link #join} once the running tasks are done, so nothing
+ * of a failed stage is still running when it returns.  The group keeps no finished tasks;
+ * a stage that wants the results keeps the futures {@link #submit} returns.
+ */
+final class TaskGroup<T> {
+	private final ExecutorService own;
+	private final Executor executor;
+
+	// guarded by this
+	private final ArrayDeque<Task> queued = new ArrayDeque<Task>();
+	private int running = 0;
+	private Throwable failure = null;
+
+	/**
+	 * @param shared the executor to run on, null for a pool of <code>threads</code> threads of the group's own
+	 */
+	TaskGroup(Executor shared, int threads) {
+		this.own = (shared == null ? Executors.newFixedThreadPool(Math.max(1, threads)) : null);
+		this.executor = (shared == null ? own : shared);
+	}
+
+	/**
+	 * Submits a task, which is cancelled at once if a task of the group has already failed.
+	 * Only the thread that owns the group submits.
+	 */
+	Future<T> submit(Callable<T> callable) {
+		Task task = new Task(callable);
+		synchronized (this) {
+			if (failure != null) {
+				task.cancel(false);
+				return task;
+			}
+			queued.add(task);
+		}
+		executor.execute(task);
+		return task;
+	}
+
+	/**
+	 * @return the number of tasks submitted that no thread has started yet
+	 */
+	synchronized int queued() {
+		return queued.size();
+	}
+
+	/**
+	 * Runs the oldest task no thread has started yet on the calling thread.
+	 *
+	 * @return false if there was none
+	 */
+	boolean help() {
+		Task task;
+		synchronized (this) {
+			task = queued.peek();
+		}
+		if (task == null) {
+			return false;
+		}
+		task.run();
+		return true;
+	}
+
+	/**
+	 * Throws the failure of the first task that failed, if any has.
+	 */
+	void checkFailure() throws IOException {
+		Throwable t;
+		synchronized (this) {
+			t = failure;
+		}
+		if (t != null) {
+			rethrow(t);
+		}
+	}
+
+	/**
+	 * Runs the tasks not started yet, waits for the others, and throws the first failure.
+	 *
+	 * @param what what the stage does, for the message if it is interrupted
+	 */
+	void join(String what) throws IOException {
+		while (help()) {
+			// keep going until every task is taken
+		}
+		try {
+			synchronized (this) {
+				while (running > 0) {
+					wait();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while " + what, e);
+		}
+		checkFailure();
+	}
+
+	/**
+	 * Cancels the tasks not started yet and waits for the running ones, then shuts down the
+	 * group's own pool.  Call it once the stage is over, whether it failed or not.
+	 */
+	void close() {
+		boolean interrupted = false;
+		synchronized (this) {
+			for (Task task : queued) {
+				task.cancel(false);
+			}
+			queued.clear();
+			while (running > 0) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (own != null) {
+			own.shutdown();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Throws a task's failure as it is if the stages can throw it, in an IOException if not.
+	 */
+	private static void rethrow(Throwable t) throws IOException {
+		if (t instanceof IOException) {
+			throw (IOException)t;
+		}
+		if (t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		if (t instanceof Error) {
+			throw (Error)t;
+		}
+		throw new IOException(t);
+	}
+
+	/**
+	 * A task that runs once, on whichever thread takes it from the group's queue first.
+	 */
+	private final class Task extends FutureTask<T> {
+		private Task(Callable<T> callable) {
+			super(callable);
+		}
+
+		@Override
+		public void run() {
+			synchronized (TaskGroup.this) {
+				if (!queued.remove(this)) {
+					return; // taken by another thread, or cancelled
+				}
+				if (failure != null) {
+					cancel(false);
+					return;
+				}
+				running++;
+			}
+			try {
+				super.run();
+			}
+			finally {
+				synchronized (TaskGroup.this) {
+					running--;
+					TaskGroup.this.notifyAll();
+				}
+			}
+		}
+
+		@Override
+		protected void setException(Throwable t) {
+			synchronized (TaskGroup.this) {
+				if (failure == null) {
+					failure = t;
+				}
+			}
+			super.setException(t);
+		}
+	}
+}
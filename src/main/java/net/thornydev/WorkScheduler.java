@@ -0,0 +1,293 @@
+package net.thornydev;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.JSONException;
+
+/**
+ * Infers many input files on a pool of worker threads.
+ *
+ * Work is handed out largest first (longest processing time first), so the big files start
+ * early and the small ones fill in around them, instead of one big file being left to run
+ * alone at the end.  Newline delimited JSON files bigger than the split size, unless gzipped,
+ * are cut into byte ranges (see {@link SplitLineReader}) that are scheduled on their own, so no single
+ * file can hold up the end of the run.
+ *
+ * The bytes of input being worked on at once are capped with a semaphore: a work unit is only
+ * submitted once its size fits under the cap, so a run over huge single documents does not
+ * load more of them than fit in memory.  A unit bigger than the cap runs on its own.  A
+ * gzipped file counts with its uncompressed size, estimated from its trailer (see
+ * {@link ReadAheadInputStream#uncompressedLength(File)}).
+ *
+ * The units run on a {@link TaskGroup}, on an executor shared with other runs or on a pool of
+ * the scheduler's own.  While the scheduler waits for room under the cap it runs waiting
+ * units itself.  The first unit to fail ends the run: no further units are submitted, those
+ * not started yet are dropped, and the failure is thrown once the units already running are
+ * done.
+ *
+ * Every unit accumulates into its own router, and the routers are merged in input order at
+ * the end, so the result does not depend on which thread ran what.  With an
+ * {@link InferenceCache}, files found in it are not scheduled at all; their cached partial
+ * schemas are merged in their place.
+ */
+public class WorkScheduler {
+	private static final int PERMIT_BYTES = 1024;
+	private static final long WAIT_POLL_MILLIS = 50;
+
+	private final SchemaInferencer inferencer;
+	private final Executor executor;
+	private final int threads;
+	private final long maxInFlight;
+	private final long splitSize;
+	private final InferenceCache cache;
+
+	private final AtomicLong busyNanos = new AtomicLong();
+	private final AtomicLong inFlight = new AtomicLong();
+	private final AtomicLong peakInFlight = new AtomicLong();
+	private int units = 0;
+	private int maxQueueDepth = 0;
+	private long queueDepthSum = 0;
+	private long waitNanos = 0;
+	private long makespanNanos = 0;
+
+	/**
+	 * @param threads the number of worker threads
+	 * @param maxInFlight the most bytes of input worked on at once
+	 * @param splitSize newline delimited JSON files bigger than this are cut into ranges of about this size
+	 */
+	public WorkScheduler(SchemaInferencer inferencer, int threads, long maxInFlight, long splitSize) {
+		this(inferencer, null, threads, maxInFlight, splitSize, null);
+	}
+
+	/**
+	 * @param executor the executor to run the units on, e.g. one shared by a batch of runs, null
+	 *        for a pool of <code>threads</code> threads
+	 * @param cache holds the partial schemas of files inferred before, which are merged instead
+	 *        of inferred again; files inferred now are added to it.  Null for no cache.
+	 */
+	public WorkScheduler(SchemaInferencer inferencer, Executor executor, int threads, long maxInFlight, long splitSize, InferenceCache cache) {
+		this.inferencer = inferencer;
+		this.executor = executor;
+		this.threads = threads;
+		this.maxInFlight = maxInFlight;
+		this.splitSize = splitSize;
+		this.cache = cache;
+	}
+
+	/**
+	 * Infers every file.
+	 *
+	 * @return the merged schema of all files
+	 * @throws JSONException if a record does not parse correctly
+	 */
+	public SchemaRouter run(List<File> files, final InferenceBudget budget) throws IOException, JSONException {
+		List<Unit> work = new ArrayList<Unit>();
+		List<Input> inputs = new ArrayList<Input>();
+		boolean splittable = (inferencer.getConfig().isRecords() && !inferencer.getConfig().isXml());
+		for (File file : files) {
+			Input input = new Input(file);
+			inputs.add(input);
+			if (cache != null) {
+				input.key = cache.key(file);
+				input.cached = cache.get(input.key);
+				if (input.cached != null) {
+					continue;
+				}
+			}
+			long length = file.length();
+			int ranges = (splittable && length > splitSize && !ReadAheadInputStream.isCompressed(file) ? (int)Math.min(Integer.MAX_VALUE, (length + splitSize - 1) / splitSize) : 1);
+			long[] b = SplitLineReader.boundaries(0, length, ranges);
+			for (int i = 0; i < ranges; i++) {
+				Unit unit = new Unit(file, b[i], b[i + 1], ranges > 1, (ranges > 1 ? b[i + 1] - b[i] : ReadAheadInputStream.uncompressedLength(file)));
+				work.add(unit);
+				input.units.add(unit);
+			}
+		}
+		units = work.size();
+		Collections.sort(work, new Comparator<Unit>() {
+			public int compare(Unit a, Unit b) {
+				return Long.compare(b.size(), a.size());
+			}
+		});
+
+		int totalPermits = (int)Math.max(1, Math.min(Integer.MAX_VALUE, maxInFlight / PERMIT_BYTES));
+		final Semaphore permits = new Semaphore(totalPermits);
+		TaskGroup<SchemaRouter> group = new TaskGroup<SchemaRouter>(executor, threads);
+		long start = System.nanoTime();
+		try {
+			for (final Unit unit : work) {
+				final int needed = (int)Math.max(1, Math.min(totalPermits, unit.size() / PERMIT_BYTES));
+				long waitStart = System.nanoTime();
+				for (;;) {
+					group.checkFailure();
+					if (permits.tryAcquire(needed)) {
+						break;
+					}
+					// run a waiting unit here, or give the running ones time to release their bytes
+					if (!group.help() && permits.tryAcquire(needed, WAIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+						break;
+					}
+				}
+				waitNanos += System.nanoTime() - waitStart;
+				int depth = group.queued();
+				maxQueueDepth = Math.max(maxQueueDepth, depth);
+				queueDepthSum += depth;
+				unit.result = group.submit(new Callable<SchemaRouter>() {
+					public SchemaRouter call() throws Exception {
+						long bytes = inFlight.addAndGet(unit.size());
+						peak(bytes);
+						long t = System.nanoTime();
+						try {
+							return infer(unit, budget);
+						}
+						finally {
+							busyNanos.addAndGet(System.nanoTime() - t);
+							inFlight.addAndGet(-unit.size());
+							permits.release(needed);
+						}
+					}
+				});
+			}
+			group.join("inferring");
+			SchemaRouter router = inferencer.newRouter();
+			for (Input input : inputs) {
+				if (input.cached != null) {
+					router.merge(input.cached);
+					continue;
+				}
+				SchemaRouter fileRouter = (cache == null ? router : inferencer.newRouter());
+				for (Unit unit : input.units) {
+					fileRouter.merge(unit.result.get());
+				}
+				if (cache != null) {
+					// only whole files, without records that would have to be quarantined again
+					if (budget.getStopReason() == null && !inferencer.quarantined(input.file.getPath())) {
+						cache.put(input.key, PartialSchema.of(fileRouter, inferencer.getConfig().isXml()));
+					}
+					router.merge(fileRouter);
+				}
+			}
+			makespanNanos = System.nanoTime() - start;
+			return router;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while inferring", e);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e); // every unit is done and none failed
+		}
+		finally {
+			// drops the units not started yet after a failure, and waits for those running
+			group.close();
+		}
+	}
+
+	private void peak(long bytes) {
+		for (;;) {
+			long peak = peakInFlight.get();
+			if (bytes <= peak || peakInFlight.compareAndSet(peak, bytes)) {
+				return;
+			}
+		}
+	}
+
+	private SchemaRouter infer(Unit unit, InferenceBudget budget) throws IOException, JSONException {
+		SchemaRouter router = inferencer.newRouter();
+		if (budget.getStopReason() != null) {
+			return router;
+		}
+		if (unit.range) {
+			inferencer.infer(router, unit.file, unit.start, unit.end, budget);
+			return router;
+		}
+		BufferedReader br = ReadAheadInputStream.open(unit.file);
+		try {
+			inferencer.infer(router, unit.file.getPath(), br, Shard.ALL, budget);
+		}
+		finally {
+			br.close();
+		}
+		return router;
+	}
+
+	/**
+	 * @return the share of the worker threads' time spent inferring, between 0 and 1
+	 */
+	public double getUtilization() {
+		return (makespanNanos == 0 ? 0 : (double)busyNanos.get() / ((double)makespanNanos * threads));
+	}
+
+	/**
+	 * @return the most work units that were waiting for a free thread at once
+	 */
+	public int getMaxQueueDepth() {
+		return maxQueueDepth;
+	}
+
+	/**
+	 * Adds the scheduling metrics of the last run to the report.
+	 */
+	public void report(InferenceReport report) {
+		report.section("scheduler");
+		report.add("work units", units + " on " + threads + " threads, largest first");
+		report.add("makespan", String.format("%.3f s", makespanNanos / 1e9));
+		report.add("utilization", String.format("%.1f%%", 100 * getUtilization()));
+		report.add("queue depth", "max " + maxQueueDepth + ", mean " + String.format("%.1f", units == 0 ? 0.0 : (double)queueDepthSum / units));
+		report.add("bytes in flight", "peak " + peakInFlight.get() + " of at most " + maxInFlight + ", " + String.format("%.3f s", waitNanos / 1e9) + " waiting for room");
+	}
+
+	/**
+	 * One input file, with either its work units or its cached partial schema.
+	 */
+	private static final class Input {
+		private final File file;
+		private final List<Unit> units = new ArrayList<Unit>();
+		private String key;
+		private PartialSchema cached;
+
+		private Input(File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * A whole file, or a byte range of a newline delimited JSON file.
+	 */
+	private static final class Unit {
+		private final File file;
+		private final long start;
+		private final long end;
+		private final boolean range;
+		private final long size;
+		private Future<SchemaRouter> result;
+
+		/**
+		 * @param size the bytes read for the unit, more than its range for a gzipped file
+		 */
+		private Unit(File file, long start, long end, boolean range, long size) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+			this.range = range;
+			this.size = size;
+		}
+
+		private long size() {
+			return size;
+		}
+	}
+}
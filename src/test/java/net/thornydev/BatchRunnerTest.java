@@ -0,0 +1,109 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchRunnerTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void flagsAreOnlySetByTrueValues() {
+		for (Object value : new Object[] {true, "true", "TRUE", "yes", "Y", "1", 1, "on"}) {
+			assertArrayEquals(String.valueOf(value), new String[] {"-records"}, BatchRunner.toArgs(new JSONObject().put("records", value)));
+		}
+		for (Object value : new Object[] {false, "false", "no", "N", "0", 0, "off", ""}) {
+			assertArrayEquals(String.valueOf(value), new String[0], BatchRunner.toArgs(new JSONObject().put("records", value)));
+		}
+	}
+
+	@Test
+	public void aFlagWithAnotherValueIsRejected() {
+		try {
+			BatchRunner.toArgs(new JSONObject().put("records", "ture"));
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("records expects true or false"));
+		}
+	}
+
+	@Test
+	public void optionValuesArePassedAsTheyAre() {
+		assertArrayEquals(new String[] {"-tableName", "false"}, BatchRunner.toArgs(new JSONObject().put("tableName", "false")));
+		assertArrayEquals(new String[] {"-typePaths", "a,b"}, BatchRunner.toArgs(new JSONObject().put("typePaths", new JSONArray().put("a").put("b"))));
+		assertArrayEquals(new String[0], BatchRunner.toArgs(new JSONObject().put("tableName", "")));
+	}
+
+	@Test
+	public void everyTableIsGenerated() throws Exception {
+		File samples = TestSupport.resource("regression");
+		JSONArray manifest = new JSONArray()
+				.put(new JSONObject().put("input", new File(samples, "sample.json").getPath()).put("output", "json.ddl")
+						.put("typePaths", "Response").put("metadataTags", "keyData"))
+				.put(new JSONObject().put("input", new File(samples, "sample-records.json").getPath()).put("output", "records.ddl")
+						.put("discriminator", "type").put("maxTables", 2))
+				.put(new JSONObject().put("input", "missing.json").put("output", "missing.ddl"));
+		assertEquals(1, new BatchRunner(tmp.getRoot(), 2).run(manifest));
+		assertEquals(TestSupport.read(new File(samples, "sample-json.ddl")), TestSupport.read(new File(tmp.getRoot(), "json.ddl")));
+		assertEquals(TestSupport.read(new File(samples, "sample-records.ddl")), TestSupport.read(new File(tmp.getRoot(), "records.ddl")));
+	}
+
+	@Test
+	public void entriesThatWouldNotReturnAreRejected() throws Exception {
+		TestSupport.write(new File(tmp.getRoot(), "in/a.json"), record("{\"a\":1}") + "\n");
+		JSONArray manifest = new JSONArray()
+				.put(new JSONObject().put("input", "in").put("output", "watched.ddl").put("records", "yes").put("watch", "yes"))
+				.put(new JSONObject().put("input", "in").put("output", "nested.ddl").put("manifest", "other.json"));
+		assertEquals(2, new BatchRunner(tmp.getRoot(), 1).run(manifest));
+		try {
+			TestSupport.run(tmp.getRoot(), "-input", "in", "-output", "out.ddl", "-records", "-watch");
+			fail("-watch would never return");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void tablesAndTheirStagesShareOneThread() throws Exception {
+		JSONArray manifest = new JSONArray();
+		for (int t = 0; t < 3; t++) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 200; i++) {
+				sb.append(record("{\"t" + t + "\":" + i + ",\"f" + (i % 4) + "\":\"s\"}")).append('\n');
+			}
+			TestSupport.write(new File(tmp.getRoot(), "in" + t + ".json"), sb.toString());
+			manifest.put(new JSONObject().put("input", "in" + t + ".json").put("output", "out" + t + ".ddl").put("records", "yes")
+					.put("threads", "4").put("splits", "4"));
+		}
+		for (int f = 0; f < 4; f++) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 50; i++) {
+				sb.append(record("{\"t3\":" + i + ",\"f" + f + "\":\"s\"}")).append('\n');
+			}
+			TestSupport.write(new File(tmp.getRoot(), "in3/" + f + ".json"), sb.toString());
+		}
+		manifest.put(new JSONObject().put("input", "in3").put("output", "out3.ddl").put("records", "yes").put("threads", "4").put("sampleRecords", "100"));
+		manifest.put(new JSONObject().put("input", "in3").put("output", "all3.ddl").put("records", "yes").put("threads", "4"));
+		// one worker for everything: a table's splits, strata and files only finish because the table runs them itself
+		assertEquals(0, new BatchRunner(tmp.getRoot(), 1).run(manifest));
+		for (int t = 0; t < 4; t++) {
+			String ddl = TestSupport.read(new File(tmp.getRoot(), "out" + t + ".ddl"));
+			assertTrue(ddl, ddl.contains("f0:string,f1:string,f2:string,f3:string,t" + t + ":int"));
+		}
+		String all = TestSupport.read(new File(tmp.getRoot(), "all3.ddl"));
+		assertTrue(all, all.contains("f0:string,f1:string,f2:string,f3:string,t3:int"));
+	}
+}
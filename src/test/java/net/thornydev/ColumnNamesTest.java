@@ -0,0 +1,58 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class ColumnNamesTest {
+	private final ColumnNames names = new ColumnNames();
+
+	@Test
+	public void keysBecomeHiveIdentifiers() {
+		assertEquals("ns_idab", names.column("ns:Id-a.B"));
+		assertEquals("ns_Idab", names.field("ns:Id-a.b"));
+		assertEquals("`user`", names.column("User"));
+		assertEquals("`Date`", names.field("Date"));
+		assertEquals("name", names.field("name"));
+		assertEquals("a-b", names.lower("A-B"));
+		assertTrue(ColumnNames.isReserved("select"));
+		assertFalse(ColumnNames.isReserved("selection"));
+	}
+
+	@Test
+	public void eachInstanceHasItsOwnCache() {
+		String name = names.column("ns:Id-a.B");
+		assertSame(name, names.column("ns:Id-a.B"));
+		String other = new ColumnNames().column("ns:Id-a.B");
+		assertEquals(name, other);
+		assertNotSame(name, other);
+	}
+
+	@Test
+	public void keysPastTheCacheLimitAreNormalizedUncached() {
+		ColumnNames small = new ColumnNames(2);
+		String a = small.column("A");
+		String b = small.column("B");
+		String c = small.column("C");
+		assertSame(a, small.column("A"));
+		assertSame(b, small.column("B"));
+		assertEquals(c, small.column("C"));
+		assertNotSame(c, small.column("C"));
+	}
+
+	@Test
+	public void keysThatNormalizeAlikeAreReported() {
+		SchemaNode schema = SchemaNode.of(new JSONObject("{\"a-b\":1,\"AB\":2,\"c\":[{\"x.y\":1,\"xy\":2,\"XY\":3}],\"d\":{\"e\":1}}"));
+		assertEquals(Arrays.asList("column ab in table t: keys a-b, AB", "field xy of c in table t: keys x.y, XY, xy"),
+				names.collisions("t", schema));
+		assertEquals(Collections.emptyList(), names.collisions("t", SchemaNode.of(new JSONObject("{\"a\":{\"a\":1}}"))));
+	}
+}
@@ -0,0 +1,68 @@
+package net.thornydev;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adds records to one {@link ConcurrentSchemaNode} shared by all benchmark threads, and to a
+ * plain {@link SchemaNode} per thread for comparison.  Run with <code>mvn -Pjmh verify</code>,
+ * and <code>-Djmh.threads=N</code> for N benchmark threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentSchemaNodeBenchmark {
+	@State(Scope.Benchmark)
+	public static class Records {
+		JSONObject[] records;
+
+		@Setup
+		public void read() throws Exception {
+			File file = new File("src/test/resources/regression/sample-records.json");
+			List<JSONObject> list = new ArrayList<JSONObject>();
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				list.add(new JSONObject(line).getJSONObject("KeyedResponse").getJSONObject("Response"));
+			}
+			records = list.toArray(new JSONObject[list.size()]);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+		final ConcurrentSchemaNode node = new ConcurrentSchemaNode();
+	}
+
+	@State(Scope.Thread)
+	public static class PerThread {
+		final SchemaNode node = new SchemaNode();
+		int next = 0;
+	}
+
+	@Benchmark
+	public boolean sharedTrie(Records records, Shared shared, PerThread thread) {
+		return shared.node.add(records.records[thread.next++ % records.records.length]);
+	}
+
+	@Benchmark
+	public boolean perThreadTrie(Records records, PerThread thread) {
+		return thread.node.add(records.records[thread.next++ % records.records.length]);
+	}
+}
@@ -0,0 +1,81 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+public class ConcurrentSchemaNodeTest {
+	private static final int THREADS = 8;
+
+	/**
+	 * Records of mixed shapes: new keys, kinds widening, arrays and single values at the same
+	 * path, nulls and nested arrays, so the threads race to create children and elements.
+	 */
+	private static List<Object> records() {
+		List<Object> records = new ArrayList<Object>();
+		for (int i = 0; i < 2000; i++) {
+			String value;
+			switch (i % 7) {
+			case 0: value = "{\"a\":" + i + ",\"k" + (i % 50) + "\":{\"x\":1}}"; break;
+			case 1: value = "{\"a\":" + i + ".5,\"b\":[{\"c\":1},{\"d\":\"x\"}]}"; break;
+			case 2: value = "{\"a\":null,\"b\":{\"e\":true},\"k" + (i % 50) + "\":{\"y\":[1,2]}}"; break;
+			case 3: value = "{\"f\":[[1],[2.5],[]],\"g\":\"s\"}"; break;
+			case 4: value = "{\"g\":[\"s\"],\"h\":{\"i\":{\"j\":null}}}"; break;
+			case 5: value = "{\"h\":{\"i\":{\"j\":[" + i + "]}},\"b\":null}"; break;
+			default: value = "{\"k" + (i % 50) + "\":\"now a string\"}"; break;
+			}
+			records.add(new JSONArray("[" + value + "]").get(0));
+		}
+		return records;
+	}
+
+	@Test
+	public void threadsAddingToOneNodeGiveTheSequentialSchema() throws Exception {
+		final List<Object> records = records();
+		// the same values one thread at a time, so the counts match too
+		SchemaNode sequential = new SchemaNode();
+		for (int t = 0; t < THREADS; t++) {
+			for (Object record : records) {
+				sequential.add(record);
+			}
+		}
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		try {
+			for (int round = 0; round < 20; round++) {
+				final ConcurrentSchemaNode shared = new ConcurrentSchemaNode();
+				final CyclicBarrier start = new CyclicBarrier(THREADS);
+				List<Future<Void>> futures = new ArrayList<Future<Void>>();
+				for (int t = 0; t < THREADS; t++) {
+					final int thread = t;
+					futures.add(pool.submit(new Callable<Void>() {
+						public Void call() throws Exception {
+							start.await();
+							// every thread adds every record, each starting at another offset
+							for (int i = 0; i < records.size(); i++) {
+								shared.add(records.get((i + thread * records.size() / THREADS) % records.size()));
+							}
+							return null;
+						}
+					}));
+				}
+				for (Future<Void> future : futures) {
+					future.get();
+				}
+				assertEquals(SchemaNodeTest.describe(sequential), SchemaNodeTest.describe(shared.snapshot()));
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryWatcherTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().records(true).build());
+	private File landing;
+	private File state;
+	private File output;
+	private Thread thread;
+	private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+	@Before
+	public void dirs() throws IOException {
+		landing = tmp.newFolder("landing");
+		state = new File(tmp.getRoot(), "state.json");
+		output = new File(tmp.getRoot(), "out.ddl");
+	}
+
+	@After
+	public void stop() throws Exception {
+		if (thread != null) {
+			thread.interrupt();
+			thread.join(10000);
+			thread = null;
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+	}
+
+	private void start() throws IOException {
+		final DirectoryWatcher watcher = new DirectoryWatcher(inferencer, landing, state, output, false, 2, 50, null);
+		thread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					watcher.run();
+				}
+				catch (InterruptedException e) {
+					// stopped
+				}
+				catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		}, "watcher");
+		thread.start();
+	}
+
+	private void awaitOutput(String contains) throws Exception {
+		for (long deadline = System.currentTimeMillis() + 20000; System.currentTimeMillis() < deadline; Thread.sleep(50)) {
+			if (output.exists() && TestSupport.read(output).contains(contains)) {
+				return;
+			}
+		}
+		fail("no " + contains + " in " + (output.exists() ? TestSupport.read(output) : "no output"));
+	}
+
+	@Test
+	public void filesAreInferredAsTheyLand() throws Exception {
+		TestSupport.write(new File(landing, "before.json"), record("{\"a\":1}") + "\n");
+		TestSupport.write(new File(landing, "_SUCCESS"), "not json");
+		start();
+		awaitOutput("a:int");
+
+		TestSupport.write(new File(landing, "after.json"), record("{\"b\":\"s\"}") + "\n");
+		awaitOutput("b:string");
+
+		// a new partition directory, with a file already in it when it is noticed
+		TestSupport.write(new File(landing, "dt=2/part-0.json"), record("{\"c\":true}") + "\n");
+		awaitOutput("c:boolean");
+		String ddl = TestSupport.read(output);
+		assertTrue(ddl, ddl.contains("a:int,b:string,c:boolean"));
+		assertFalse(new File(output.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void aRestartedWatcherOnlyInfersWhatIsNew() throws Exception {
+		File first = TestSupport.write(new File(landing, "first.json"), record("{\"a\":1}") + "\n");
+		start();
+		awaitOutput("a:int");
+		stop();
+
+		JSONObject saved = new JSONObject(TestSupport.read(state));
+		assertEquals(DirectoryWatcher.STATE_VERSION, saved.getInt("watchState"));
+		assertEquals(first.length() + " " + first.lastModified(), saved.getJSONObject("files").getString(first.getPath()));
+
+		// a different key, but the same size and modification time: not read again
+		long modified = first.lastModified();
+		TestSupport.write(first, TestSupport.read(first).replace("\"a\"", "\"z\""));
+		first.setLastModified(modified);
+		output.delete();
+		TestSupport.write(new File(landing, "second.json"), record("{\"b\":2.5}") + "\n");
+		start();
+		awaitOutput("b:double");
+		String ddl = TestSupport.read(output);
+		assertTrue(ddl, ddl.contains("a:int,b:double"));
+		assertFalse(ddl, ddl.contains("z:int"));
+
+		// and once it changes, it is read again and merged on top
+		stop();
+		TestSupport.write(first, record("{\"z\":1,\"y\":1}") + "\n");
+		start();
+		awaitOutput("y:int");
+		assertTrue(TestSupport.read(output).contains("a:int,b:double,y:int,z:int"));
+	}
+
+	@Test
+	public void aFileThatFailsIsNotSavedAsInferred() throws Exception {
+		File bad = TestSupport.write(new File(landing, "bad.json"), "not json\n");
+		File good = TestSupport.write(new File(landing, "good.json"), record("{\"a\":1}") + "\n");
+		start();
+		awaitOutput("a:int");
+		stop();
+		JSONObject files = new JSONObject(TestSupport.read(state)).getJSONObject("files");
+		assertTrue(files.has(good.getPath()));
+		assertFalse(files.has(bad.getPath()));
+
+		// so once it is fixed, it is inferred
+		TestSupport.write(bad, record("{\"b\":1}") + "\n");
+		start();
+		awaitOutput("b:int");
+	}
+
+	@Test
+	public void aStateFileOfAnotherVersionIsRejected() throws Exception {
+		TestSupport.write(state, "{\"watchState\":99,\"files\":{},\"schema\":{}}");
+		try {
+			new DirectoryWatcher(inferencer, landing, state, output, false, 1, 50, null);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("not a version " + DirectoryWatcher.STATE_VERSION));
+		}
+	}
+}
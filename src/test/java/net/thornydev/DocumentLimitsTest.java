@@ -0,0 +1,116 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DocumentLimitsTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static void rejects(DocumentLimits limits, String json, String message) {
+		try {
+			new DocumentParser(limits).parseJson(json);
+			fail("accepted " + json);
+		}
+		catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+
+	private static void rejectsXml(DocumentLimits limits, String xml, String message) {
+		try {
+			new DocumentParser(limits).parseXml(xml);
+			fail("accepted " + xml);
+		}
+		catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+		}
+	}
+
+	@Test
+	public void onlyTheDepthIsLimitedByDefault() {
+		DocumentLimits limits = DocumentLimits.DEFAULT;
+		assertEquals(DocumentLimits.DEFAULT_MAX_DEPTH, limits.getMaxDepth());
+		assertEquals(0, limits.getMaxDocumentSize());
+		assertEquals(0, limits.getMaxStringLength() + limits.getMaxKeys() + limits.getMaxArrayLength() + limits.getMaxNumberDigits());
+	}
+
+	@Test
+	public void eachLimitAllowsUpToItsValue() {
+		DocumentLimits limits = DocumentLimits.builder().maxStringLength(3).maxKeys(2).maxArrayLength(2).maxNumberDigits(3).build();
+		DocumentParser parser = new DocumentParser(limits);
+		parser.parseJson("{\"abc\":[123,4.5]}");
+		parser.parseXml("<r><abc>xyz</abc><b>1</b><b>2</b></r>");
+
+		rejects(limits, "{\"abcd\":1}", "String longer than 3 characters");
+		rejects(limits, "{\"a\":\"abcd\"}", "String longer than 3 characters");
+		rejects(limits, "{\"a\":1,\"b\":2,\"c\":3}", "Object with more than 2 keys");
+		rejects(limits, "{\"a\":[1,2,3]}", "Array with more than 2 entries");
+		rejects(DocumentLimits.builder().maxNumberDigits(3).build(), "{\"a\":-12.34}", "Number with more than 3 digits");
+		rejectsXml(limits, "<r><b>1</b><b>2</b><b>3</b></r>", "Array with more than 2 entries");
+		rejectsXml(limits, "<r><a>1</a><b>1</b><c>1</c></r>", "Object with more than 2 keys");
+		rejects(DocumentLimits.builder().maxDepth(2).build(), "{\"a\":{\"b\":[1]}}", "Nesting deeper than 2 levels");
+	}
+
+	@Test
+	public void theBuilderRejectsNonsense() {
+		for (DocumentLimits.Builder b : new DocumentLimits.Builder[] {DocumentLimits.builder().maxDepth(0), DocumentLimits.builder().maxKeys(-1)}) {
+			try {
+				b.build();
+				fail();
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		DocumentLimits limits = DocumentLimits.builder().maxDepth(7).maxDocumentSize(99).maxNumberDigits(5).build();
+		DocumentLimits copy = limits.toBuilder().maxKeys(3).build();
+		assertEquals(7, copy.getMaxDepth());
+		assertEquals(99, copy.getMaxDocumentSize());
+		assertEquals(5, copy.getMaxNumberDigits());
+		assertEquals(3, copy.getMaxKeys());
+	}
+
+	@Test
+	public void theCommandLineSetsTheLimits() throws Exception {
+		SchemaConfig config = SchemaConfig.fromCommandLine(TestSupport.parse("-maxDepth", "50", "-maxDocumentSize", "2k", "-maxStringLength", "1k",
+				"-maxKeys", "10", "-maxArrayLength", "20", "-maxNumberDigits", "30"));
+		DocumentLimits limits = config.getLimits();
+		assertEquals(50, limits.getMaxDepth());
+		assertEquals(2048, limits.getMaxDocumentSize());
+		assertEquals(1024, limits.getMaxStringLength());
+		assertEquals(10, limits.getMaxKeys());
+		assertEquals(20, limits.getMaxArrayLength());
+		assertEquals(30, limits.getMaxNumberDigits());
+	}
+
+	@Test
+	public void anOversizedRecordIsRejectedBeforeItIsRead() throws IOException {
+		String small = TestSupport.record("{\"a\":1}");
+		File file = TestSupport.write(tmp.newFile("records.json"), small + "\n" + TestSupport.record("{\"a\":\"" + new String(new char[100]).replace('\0', 'x') + "\"}") + "\n");
+		SplitLineReader reader = new SplitLineReader(file, 0, file.length(), DocumentLimits.builder().maxDocumentSize(small.length()).build());
+		try {
+			assertEquals(small, reader.next());
+			try {
+				reader.next();
+				fail();
+			}
+			catch (JSONException e) {
+				assertEquals("The line at byte " + (small.length() + 1) + " is longer than the limit of " + small.length() + " characters", e.getMessage());
+			}
+			assertEquals(null, reader.next());
+		}
+		finally {
+			reader.close();
+		}
+	}
+}
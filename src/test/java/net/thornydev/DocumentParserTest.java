@@ -0,0 +1,112 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.XML;
+import org.junit.Test;
+
+public class DocumentParserTest {
+	private final DocumentParser parser = new DocumentParser(DocumentLimits.DEFAULT);
+
+	private static String nestedJson(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append(i % 2 == 0 ? "{\"a\":" : "[");
+		}
+		sb.append("1");
+		for (int i = depth - 1; i >= 0; i--) {
+			sb.append(i % 2 == 0 ? "}" : "]");
+		}
+		return sb.toString();
+	}
+
+	private static String nestedXml(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append("<e").append(i % 3).append(">");
+		}
+		sb.append("t");
+		for (int i = depth - 1; i >= 0; i--) {
+			sb.append("</e").append(i % 3).append(">");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void parsesWhatJsonObjectParses() {
+		String json = "{\"s\":\"a\\\"b\\u00e9\\n\",\"n\":[1,-2.5e3,true,null,{}],\"o\":{\"x\":[[],[{\"y\":false}]]},\"big\":12345678901234567890}";
+		assertTrue(new JSONObject(json).similar(parser.parseJson(json)));
+		String deep = nestedJson(101);
+		assertTrue(new JSONObject(deep).similar(parser.parseJson(deep)));
+		String xml = "<r a=\"1\"><b>x</b><b>y</b><c><![CDATA[<z>]]></c><!-- no --><d/></r>";
+		assertTrue(XML.toJSONObject(xml).similar(parser.parseXml(xml)));
+	}
+
+	@Test
+	public void nestingBeyondTheLimitIsRejected() {
+		for (String json : new String[] {nestedJson(1001), "{\"a\":" + nestedJson(1000).substring(0, 3000)}) {
+			try {
+				parser.parseJson(json);
+				fail("parsed " + json.length() + " characters");
+			}
+			catch (JSONException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Nesting deeper than 1000 levels"));
+			}
+		}
+		parser.parseJson(nestedJson(1000));
+		try {
+			parser.parseXml(nestedXml(1001));
+			fail();
+		}
+		catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Nesting deeper than 1000 elements"));
+		}
+	}
+
+	@Test
+	public void deepDocumentsNeedNoDeepStack() throws Exception {
+		final DocumentParser deep = new DocumentParser(DocumentLimits.builder().maxDepth(5000).build());
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final AtomicReference<String> ddl = new AtomicReference<String>();
+		// a stack this small overflows after a few hundred levels of recursion
+		Thread thread = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					SchemaNode json = SchemaNode.of(deep.parseJson(nestedJson(4000)));
+					SchemaNode xml = SchemaNode.of(deep.parseXml(nestedXml(4000)));
+					json.merge(SchemaNode.of(deep.parseJson(nestedJson(3999))));
+					ddl.set(new JsonHiveSchema("t").createHiveSchema(json) + new JsonHiveSchema("t").createHiveQuery(xml)
+							+ new ColumnNames().collisions("t", json));
+				}
+				catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		}, "small stack", 256 * 1024);
+		thread.start();
+		thread.join();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		assertTrue(ddl.get().contains("a array<struct<a:array<struct<a:array<"));
+		assertTrue(ddl.get().contains("e0.e1.e2.e0"));
+	}
+
+	@Test
+	public void anObjectIsNotAKey() {
+		try {
+			parser.parseJson("{{\"a\":1}:2}");
+			fail();
+		}
+		catch (JSONException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Expected a key"));
+		}
+		assertEquals(1, parser.parseJson("{\"a\":1}").getInt("a"));
+	}
+}
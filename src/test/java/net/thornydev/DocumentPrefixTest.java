@@ -0,0 +1,70 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DocumentPrefixTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final String JSON = "{\"a\":{\"b\":[1,2,{\"c\":\"x,]}\"}],\"d\":true},\"e\":[3]}";
+
+	@Test
+	public void aDocumentWithinTheBudgetIsReadWhole() throws IOException {
+		File file = TestSupport.write(tmp.newFile("doc.json"), JSON);
+		DocumentPrefix prefix = DocumentPrefix.read(file, JSON.length(), 0, false);
+		assertFalse(prefix.isTruncated());
+		assertEquals(JSON, prefix.getText());
+		assertEquals(JSON.length(), prefix.getLength());
+		assertFalse(DocumentPrefix.read(file, 0, 0, false).isTruncated());
+	}
+
+	@Test
+	public void aTruncatedJsonDocumentIsClosedOff() throws IOException {
+		File file = TestSupport.write(tmp.newFile("doc.json"), JSON);
+		// cut inside the string holding brackets and a comma
+		DocumentPrefix prefix = DocumentPrefix.read(file, JSON.indexOf("]}\""), 0, false);
+		assertTrue(prefix.isTruncated());
+		assertEquals("{\"a\":{\"b\":[1,2,{}]}}", prefix.getText());
+		assertEquals(4, prefix.getClosers());
+		new JSONObject(prefix.getText());
+	}
+
+	@Test
+	public void aTruncatedXmlDocumentIsClosedOff() throws IOException {
+		String xml = "<?xml version=\"1.0\"?><r><a x=\"1>2\"><b>t</b><!-- <c> --><c/><d>te";
+		File file = TestSupport.write(tmp.newFile("doc.xml"), xml + "xt</d></a></r>");
+		DocumentPrefix prefix = DocumentPrefix.read(file, xml.length(), 0, true);
+		assertEquals("<?xml version=\"1.0\"?><r><a x=\"1>2\"><b>t</b><!-- <c> --><c/><d></d></a></r>", prefix.getText());
+		assertEquals(3, prefix.getClosers());
+	}
+
+	@Test
+	public void aTimeBudgetAloneDoesNotSizeTheBufferFromTheFile() throws IOException {
+		// a sparse 3 GB file: sizing the buffer from its length would need 2 GB up front, and lose the rest
+		File file = tmp.newFile("huge.json");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.write("{\"a\":[1,".getBytes("US-ASCII"));
+			raf.setLength(3L << 30);
+		}
+		finally {
+			raf.close();
+		}
+		DocumentPrefix prefix = DocumentPrefix.read(file, 0, 1, false);
+		assertTrue(prefix.isTruncated());
+		assertEquals(3L << 30, prefix.getLength());
+		assertTrue(prefix.getBytesRead() >= 8 && prefix.getBytesRead() < DocumentPrefix.MAX_PREFIX);
+		assertTrue(prefix.getText().startsWith("{\"a\":[1]}"));
+	}
+}
@@ -0,0 +1,89 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InferenceBudgetTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().records(true).build());
+
+	private static String records(int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(record("{\"id\":" + i + (i < 10 ? ",\"f" + i + "\":1" : "") + "}")).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private SchemaRouter infer(String records, InferenceBudget budget) throws Exception {
+		SchemaRouter router = inferencer.newRouter();
+		inferencer.infer(router, "test", new BufferedReader(new StringReader(records)), Shard.ALL, budget);
+		return router;
+	}
+
+	@Test
+	public void anUnlimitedBudgetReadsEverything() throws Exception {
+		InferenceBudget budget = new InferenceBudget();
+		assertEquals(1000, infer(records(1000), budget).getRecords());
+		assertNull(budget.getStopReason());
+	}
+
+	@Test
+	public void recordAndByteBudgets() throws Exception {
+		InferenceBudget records = new InferenceBudget(25, 0, 0, 0);
+		assertEquals(25, infer(records(1000), records).getRecords());
+		assertEquals("record budget of 25 reached", records.getStopReason());
+
+		String one = records(1);
+		InferenceBudget bytes = new InferenceBudget(0, one.length() * 3, 0, 0);
+		assertEquals(3, infer(records(1000), bytes).getRecords());
+		assertTrue(bytes.getStopReason().startsWith("byte budget"));
+	}
+
+	@Test
+	public void anExpiredTimeBudgetStopsAtTheNextRecord() throws Exception {
+		InferenceBudget budget = new InferenceBudget(0, 0, 1, 0);
+		Thread.sleep(20);
+		assertEquals(1, infer(records(1000), budget).getRecords());
+		assertEquals("time budget reached", budget.getStopReason());
+	}
+
+	@Test
+	public void convergenceStopsOnceTheSchemaStopsChanging() throws Exception {
+		InferenceBudget budget = new InferenceBudget(0, 0, 0, 50);
+		SchemaRouter router = infer(records(1000), budget);
+		// the first 10 records each add a field
+		assertEquals(60, router.getRecords());
+		assertEquals("schema unchanged for 50 records", budget.getStopReason());
+		assertFalse(budget.spend(1, router));
+	}
+
+	@Test
+	public void confidenceFollowsTheRuleOfThree() {
+		assertEquals("95% that at most 0.3000% of further records would add a path or widen a type", InferenceBudget.confidence(1000));
+		assertTrue(InferenceBudget.confidence(0).startsWith("none"));
+		assertTrue(InferenceBudget.confidence(1).contains("100.0000%"));
+	}
+
+	@Test
+	public void aSharedBudgetLimitsAllSplitsTogether() throws Exception {
+		File file = TestSupport.write(tmp.newFile("records.json"), records(2000));
+		InferenceBudget budget = new InferenceBudget(100, 0, 0, 0);
+		long read = inferencer.infer(file, 0, file.length(), 4, 4, budget).getRecords();
+		// a split may add the record it learns to stop at
+		assertTrue(read + " records", read >= 100 && read < 104);
+	}
+}
@@ -0,0 +1,123 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InferenceCacheTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final SchemaConfig CONFIG = SchemaConfig.builder().records(true).build();
+
+	private static String records(String field, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(record("{\"id\":" + i + ",\"" + field + "\":\"v\"}")).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void theKeyChangesWithTheFileAndTheConfig() throws IOException {
+		File file = TestSupport.write(tmp.newFile("a.json"), records("x", 5000));
+		assertTrue(file.length() > 2 * InferenceCache.HASH_BYTES);
+		InferenceCache cache = new InferenceCache(tmp.newFolder("cache"), CONFIG);
+		String key = cache.key(file);
+		assertEquals(key, cache.key(file));
+		assertFalse(key.equals(new InferenceCache(tmp.getRoot(), CONFIG.toBuilder().discriminator("id").build()).key(file)));
+
+		// rewritten in place at either end, same size and time stamp
+		long modified = file.lastModified();
+		for (long at : new long[] {10, file.length() - 10}) {
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.seek(at);
+				raf.write('#');
+			}
+			finally {
+				raf.close();
+			}
+			file.setLastModified(modified);
+			String changed = cache.key(file);
+			assertFalse(changed.equals(key));
+			key = changed;
+		}
+	}
+
+	@Test
+	public void entriesRoundTrip() throws IOException {
+		InferenceCache cache = new InferenceCache(new File(tmp.getRoot(), "new/cache"), CONFIG);
+		File file = TestSupport.write(tmp.newFile("a.json"), records("x", 3));
+		String key = cache.key(file);
+		assertNull(cache.get(key));
+		SchemaInferencer inferencer = new SchemaInferencer(CONFIG);
+		SchemaRouter router = inferencer.newRouter();
+		inferencer.addRecord(router, record("{\"x\":1}"));
+		cache.put(key, PartialSchema.of(router, false));
+		PartialSchema cached = cache.get(key);
+		assertNotNull(cached);
+		assertEquals(inferencer.render(router), inferencer.render(cached));
+		assertEquals(0.5, cache.getHitRatio(), 0);
+		assertEquals(1, new File(tmp.getRoot(), "new/cache").list().length);
+	}
+
+	@Test
+	public void aSecondRunReadsOnlyTheFilesThatChanged() throws Exception {
+		File in = tmp.newFolder("in");
+		TestSupport.write(new File(in, "a.json"), records("a", 100));
+		TestSupport.write(new File(in, "b.json"), records("b", 100));
+		File report = new File(tmp.getRoot(), "report.txt");
+		String[] args = {"-input", "in", "-output", "out.ddl", "-records", "-cache", "cache", "-threads", "2", "-report", report.getPath()};
+		String first = TestSupport.run(tmp.getRoot(), args);
+		assertTrue(TestSupport.read(report), TestSupport.read(report).contains("files from cache: 0 of 2"));
+
+		assertEquals(first, TestSupport.run(tmp.getRoot(), args));
+		assertTrue(TestSupport.read(report), TestSupport.read(report).contains("files from cache: 2 of 2"));
+
+		TestSupport.write(new File(in, "c.json"), records("c", 100));
+		String third = TestSupport.run(tmp.getRoot(), args);
+		assertTrue(TestSupport.read(report), TestSupport.read(report).contains("files from cache: 2 of 3"));
+		assertTrue(third, third.contains("a:string,b:string,c:string"));
+		assertEquals(third, TestSupport.run(tmp.getRoot(), Arrays.copyOf(args, 5)));
+	}
+
+	@Test
+	public void filesWithQuarantinedRecordsAreNotCached() throws Exception {
+		File in = tmp.newFolder("in");
+		TestSupport.write(new File(in, "good.json"), records("a", 10));
+		TestSupport.write(new File(in, "bad.json"), records("b", 10) + "{\n");
+		String[] args = {"-input", "in", "-output", "out.ddl", "-records", "-cache", "cache", "-quarantine", "bad.ndjson"};
+		TestSupport.run(tmp.getRoot(), args);
+		assertEquals(1, new File(tmp.getRoot(), "cache").list().length);
+	}
+
+	@Test
+	public void budgetsAndSingleFileShardsAreRejected() throws Exception {
+		TestSupport.write(new File(tmp.getRoot(), "a.json"), records("a", 10));
+		String[][] rejected = {{"-maxRecords", "5"}, {"-maxBytes", "1k"}, {"-maxTime", "1"}, {"-convergence", "3"}, {"-shard", "0/2"}};
+		for (String[] option : rejected) {
+			try {
+				TestSupport.run(tmp.getRoot(), "-input", "a.json", "-output", "out.ddl", "-records", "-cache", "cache", option[0], option[1]);
+				fail(option[0] + " with -cache");
+			}
+			catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("-cache"));
+			}
+		}
+		assertFalse(new File(tmp.getRoot(), "out.ddl").exists());
+	}
+}
@@ -0,0 +1,118 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JsonHiveSchemaTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final String JSON = "{\"b\":1,\"a\":\"x\",\"A-b\":[1.5],\"user\":{\"Name\":\"n\",\"date\":[{\"x\":true}]},\"a_c\":null}";
+
+	@Test
+	public void columnsAreSortedByNameAndNestedTypesWrittenInPlace() {
+		assertEquals("CREATE EXTERNAL TABLE t (\n"
+				+ "\t`user` struct<`date`:array<struct<x:boolean>>,Name:string>\n"
+				+ "\t,a string\n"
+				+ "\t,a_c string\n"
+				+ "\t,ab array<double>\n"
+				+ "\t,b int\n"
+				+ ")\n"
+				+ "COMMENT 'Auto Generated Schema, Put Table description here'\n"
+				+ "PARTITIONED BY (CYCLE_NUMBER INT)\n"
+				+ "ROW FORMAT SERDE 'org.apache.hive.hcatalog.data.JsonSerDe';", new JsonHiveSchema("t").createHiveSchema(JSON));
+	}
+
+	@Test
+	public void theViewFlattensStructsInKeyOrder() {
+		assertEquals("CREATE VIEW view_name AS SELECT\n"
+				+ "\ta AS a\n"
+				+ "\t,a-b AS a-b\n"
+				+ "\t,a_c AS a_c\n"
+				+ "\t,b AS b\n"
+				+ "\t,user.date AS user_date\n"
+				+ "\t,user.name AS user_name\n"
+				+ "FROM t \n", new JsonHiveSchema("t").createHiveQuery(JSON));
+	}
+
+	@Test
+	public void streamingWritesWhatTheStringMethodsReturn() throws Exception {
+		SchemaNode schema = SchemaNode.of(new JSONObject(JSON));
+		JsonHiveSchema writer = new JsonHiveSchema("t");
+		StringWriter table = new StringWriter();
+		writer.writeHiveSchema(table, schema);
+		assertEquals(writer.createHiveSchema(schema), table.toString());
+		StringWriter view = new StringWriter();
+		writer.writeHiveQuery(view, schema);
+		assertEquals(writer.createHiveQuery(schema), view.toString());
+
+		SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().discriminator("type").build());
+		SchemaRouter router = inferencer.newRouter();
+		inferencer.addRecord(router, record("{\"type\":\"a\",\"x\":1}"));
+		inferencer.addRecord(router, record("{\"type\":\"b\",\"y\":[\"s\"]}"));
+		StringBuilder all = new StringBuilder();
+		inferencer.render(all, router);
+		assertEquals(inferencer.render(router), all.toString());
+	}
+
+	@Test
+	public void keysThatCollideOnTheirColumnNameAreOrderedByType() {
+		String a = new JsonHiveSchema("t").createHiveSchema("{\"a-b\":1,\"ab\":\"s\"}");
+		String b = new JsonHiveSchema("t").createHiveSchema("{\"ab\":\"s\",\"a-b\":1}");
+		assertEquals(a, b);
+		assertTrue(a, a.indexOf("ab int") < a.indexOf("ab string"));
+	}
+
+	@Test
+	public void deepDocumentsStreamAndMergeOnASmallStack() throws Exception {
+		StringBuilder items = new StringBuilder("[");
+		for (int i = 0; i < 4000; i++) {
+			items.append(i % 2 == 0 ? "{\"a\":" : "[");
+		}
+		items.append("true");
+		for (int i = 3999; i >= 0; i--) {
+			items.append(i % 2 == 0 ? "}" : "]");
+		}
+		TestSupport.write(new File(tmp.getRoot(), "deep.json"), record("{\"id\":1,\"items\":" + items.append(']') + "}"));
+		// the run, its workers and the merge all get a stack this small, too small for a recursive walk
+		final Executor smallStacks = new Executor() {
+			public void execute(Runnable task) {
+				new Thread(null, task, "small stack worker", 256 * 1024).start();
+			}
+		};
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final AtomicReference<String> ddl = new AtomicReference<String>();
+		Thread thread = new Thread(null, new Runnable() {
+			public void run() {
+				try {
+					JsonHiveSchema.run(TestSupport.parse("-input", "deep.json", "-streamArray", "items", "-maxDepth", "5000", "-threads", "2",
+							"-partial", "-output", "deep.partial"), tmp.getRoot(), smallStacks);
+					ddl.set(TestSupport.run(tmp.getRoot(), "-merge", "deep.partial", "-output", "merged.ddl")
+							+ TestSupport.run(tmp.getRoot(), "-input", "deep.json", "-maxDepth", "5000", "-output", "whole.ddl"));
+				}
+				catch (Throwable e) {
+					failure.set(e);
+				}
+			}
+		}, "small stack", 256 * 1024);
+		thread.start();
+		thread.join();
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		String whole = TestSupport.read(new File(tmp.getRoot(), "whole.ddl"));
+		assertEquals(whole + whole, ddl.get());
+		assertTrue(whole.contains("items:array<struct<a:array<struct<a:array<"));
+	}
+}
@@ -0,0 +1,82 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PartialSchemaTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().discriminator("type").build());
+
+	private final String[][] shards = {
+		{record("{\"type\":\"a\",\"x\":1,\"tags\":[\"t\"]}"), record("{\"type\":\"b\",\"y\":{\"z\":true}}")},
+		{record("{\"type\":\"a\",\"x\":2.5,\"tags\":\"single\"}"), record("{\"type\":\"b\",\"y\":null}")},
+		{record("{\"type\":\"a\",\"tags\":null,\"w\":[[1]]}"), record("{\"type\":\"c\",\"v\":\"s\"}")},
+	};
+
+	/**
+	 * @return the shard's partial schema, written out and read back
+	 */
+	private PartialSchema shard(int i) {
+		SchemaRouter router = inferencer.newRouter();
+		for (String record : shards[i]) {
+			inferencer.addRecord(router, record);
+		}
+		String json = PartialSchema.of(router, false).toJSON().toString();
+		return PartialSchema.fromJSON(new JSONObject(json));
+	}
+
+	private String all() {
+		String[] records = new String[6];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = shards[i / 2][i % 2];
+		}
+		return TestSupport.ddl(inferencer.getConfig(), records);
+	}
+
+	@Test
+	public void mergedShardsGiveTheDdlOfOneRun() {
+		String expected = all();
+		assertEquals(expected, inferencer.render(shard(0).merge(shard(1)).merge(shard(2))));
+		assertEquals(expected, inferencer.render(shard(0).merge(shard(1).merge(shard(2)))));
+	}
+
+	@Test
+	public void recordCountsAddUp() {
+		PartialSchema merged = shard(0).merge(shard(1)).merge(shard(2));
+		StringBuilder counts = new StringBuilder();
+		for (PartialSchema.Table table : merged.getTables()) {
+			counts.append(table.getName()).append(':').append(table.getRecords()).append(' ');
+		}
+		assertEquals("hive_table_a:3 hive_table_b:2 hive_table_c:1 ", counts.toString());
+	}
+
+	@Test
+	public void partialFilesMergeFromTheCommandLine() throws Exception {
+		File[] files = new File[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			files[i] = tmp.newFile("shard" + i + ".json");
+			shard(i).write(files[i]);
+		}
+		File partial = tmp.newFile("merged.json");
+		TestSupport.run(tmp.getRoot(), "-merge", "shard0.json,shard1.json", "-partial", "-output", partial.getPath(), "-discriminator", "type");
+		String ddl = TestSupport.run(tmp.getRoot(), "-merge", "merged.json,shard2.json", "-output", "out.ddl", "-discriminator", "type");
+		assertEquals(all(), ddl);
+	}
+
+	@Test
+	public void filesWithValueCountsStillRead() {
+		JSONObject json = new JSONObject("{\"partialSchema\":1,\"inputType\":\"JSON\",\"tables\":[{\"name\":\"t\",\"records\":1,\"xPaths\":[],"
+				+ "\"schema\":{\"kinds\":32,\"count\":1,\"children\":{\"a\":{\"kinds\":4,\"count\":1}}}}]}");
+		PartialSchema partial = PartialSchema.fromJSON(json);
+		assertEquals(SchemaNode.INT, partial.getTables().iterator().next().getSchema().getChild("a").getKinds());
+	}
+}
@@ -0,0 +1,91 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class QuarantineTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final SchemaConfig CONFIG = SchemaConfig.builder().records(true).typePaths("Response", "o/i@k:x").build();
+	private static final String GOOD = record("{\"n\":1,\"o\":{\"i\":[{\"k\":\"x\",\"v\":2}]}}");
+	private static final String BAD_ESCAPE = record("{\"n\":1,\"s\":\"\\uZZZZ\",\"o\":{\"i\":[]}}");
+	private static final String SIGNED_ESCAPE = record("{\"n\":1,\"s\":\"\\u-123\",\"o\":{\"i\":[]}}");
+	private static final String NOT_AN_ARRAY = record("{\"n\":1,\"o\":{\"i\":{\"k\":\"x\"}}}");
+	private static final String MISSING = record("{\"n\":1}");
+
+	private static String lines(String... records) {
+		StringBuilder sb = new StringBuilder();
+		for (String r : records) {
+			sb.append(r).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void everyBadRecordIsQuarantined() throws Exception {
+		File file = tmp.newFile("bad.json");
+		Quarantine quarantine = new Quarantine(file);
+		SchemaInferencer inferencer = new SchemaInferencer(CONFIG, quarantine);
+		SchemaRouter router = inferencer.newRouter();
+		inferencer.infer(router, "in.json", new BufferedReader(new StringReader(lines(GOOD, BAD_ESCAPE, SIGNED_ESCAPE, NOT_AN_ARRAY, MISSING, "{", GOOD))),
+				Shard.ALL, new InferenceBudget());
+		quarantine.close();
+		assertEquals(2, router.getRecords());
+		assertEquals(5, quarantine.getRecords());
+
+		String[] entries = TestSupport.read(file).split("\n");
+		assertEquals(5, entries.length);
+		int[] lines = {2, 3, 4, 5, 6};
+		for (int i = 0; i < entries.length; i++) {
+			JSONObject entry = new JSONObject(entries[i]);
+			assertEquals("in.json", entry.getString("file"));
+			assertEquals(lines[i], entry.getInt("line"));
+			assertTrue(entries[i], entry.getString("error").length() > 0);
+		}
+		assertTrue(entries[0], new JSONObject(entries[0]).getString("error").startsWith("Illegal escape."));
+		assertTrue(entries[1], new JSONObject(entries[1]).getString("error").startsWith("Illegal escape."));
+		assertTrue(entries[2], new JSONObject(entries[2]).getString("error").startsWith("Expected an array at o/i"));
+		assertEquals(MISSING, new JSONObject(entries[3]).getString("record"));
+	}
+
+	@Test
+	public void withoutAQuarantineTheFirstBadRecordFails() throws Exception {
+		SchemaInferencer inferencer = new SchemaInferencer(CONFIG);
+		for (String bad : new String[] {BAD_ESCAPE, SIGNED_ESCAPE, NOT_AN_ARRAY}) {
+			try {
+				inferencer.addRecord(inferencer.newRouter(), bad);
+				fail("accepted " + bad);
+			}
+			catch (JSONException e) {
+				// a parse error, not a NumberFormatException or ClassCastException
+			}
+		}
+		assertTrue(TestSupport.ddl(CONFIG, record("{\"s\":\"\\u00e9\\u00C9\",\"o\":{\"i\":[]}}")).contains("s:string"));
+	}
+
+	@Test
+	public void splitsQuarantineByOffset() throws Exception {
+		File input = TestSupport.write(tmp.newFile("in.json"), lines(GOOD, NOT_AN_ARRAY, GOOD));
+		File file = tmp.newFile("bad.json");
+		Quarantine quarantine = new Quarantine(file);
+		SchemaInferencer inferencer = new SchemaInferencer(CONFIG, quarantine);
+		SchemaRouter router = inferencer.newRouter();
+		inferencer.infer(router, input, 0, input.length(), new InferenceBudget());
+		quarantine.close();
+		assertEquals(2, router.getRecords());
+		assertEquals(GOOD.length() + 1, new JSONObject(TestSupport.read(file).trim()).getLong("offset"));
+	}
+}
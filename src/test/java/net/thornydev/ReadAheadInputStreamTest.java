@@ -0,0 +1,137 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReadAheadInputStreamTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private File file(String name, int size) throws IOException {
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		File file = tmp.newFile(name);
+		Files.write(file.toPath(), data);
+		return file;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[10000];
+		int n;
+		while ((n = in.read(b, 0, b.length)) >= 0) {
+			out.write(b, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void readsTheWholeFileAcrossBuffers() throws IOException {
+		File file = file("a.bin", ReadAheadInputStream.BUFFERS * ReadAheadInputStream.BUFFER_SIZE * 3 + 17);
+		ReadAheadInputStream in = new ReadAheadInputStream(file);
+		try {
+			assertArrayEquals(Files.readAllBytes(file.toPath()), readAll(in));
+			assertEquals(-1, in.read());
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void theNextFileReusesTheBuffersOfAClosedStream() throws IOException {
+		File a = file("a.bin", ReadAheadInputStream.BUFFER_SIZE * 2);
+		File b = file("b.bin", ReadAheadInputStream.BUFFER_SIZE * 5 + 1);
+		ReadAheadInputStream first = new ReadAheadInputStream(a);
+		readAll(first);
+		first.close();
+		first.close();
+
+		ReadAheadInputStream second = new ReadAheadInputStream(b);
+		// open at the same time, so it cannot share the ring
+		ReadAheadInputStream third = new ReadAheadInputStream(a);
+		try {
+			assertSame(first.ring, second.ring);
+			assertNotSame(second.ring, third.ring);
+			assertArrayEquals(Files.readAllBytes(b.toPath()), readAll(second));
+			assertArrayEquals(Files.readAllBytes(a.toPath()), readAll(third));
+		}
+		finally {
+			second.close();
+			third.close();
+		}
+	}
+
+	@Test
+	public void closingBeforeTheEndLeavesTheBuffersReusable() throws IOException {
+		File file = file("a.bin", ReadAheadInputStream.BUFFER_SIZE * 20);
+		ReadAheadInputStream partly = new ReadAheadInputStream(file);
+		partly.read();
+		partly.close();
+		ReadAheadInputStream whole = new ReadAheadInputStream(file);
+		try {
+			assertSame(partly.ring, whole.ring);
+			assertArrayEquals(Files.readAllBytes(file.toPath()), readAll(whole));
+		}
+		finally {
+			whole.close();
+		}
+	}
+
+	@Test
+	public void atMostAFewRingsAreKeptBetweenFiles() throws IOException {
+		File file = file("a.bin", ReadAheadInputStream.BUFFER_SIZE);
+		List<ReadAheadInputStream> streams = new ArrayList<ReadAheadInputStream>();
+		for (int i = 0; i < ReadAheadInputStream.IDLE_RINGS * 2; i++) {
+			streams.add(new ReadAheadInputStream(file));
+		}
+		for (ReadAheadInputStream stream : streams) {
+			stream.close();
+		}
+		assertEquals(ReadAheadInputStream.IDLE_RINGS, ReadAheadInputStream.IDLE.size());
+	}
+
+	@Test(timeout = 10000)
+	public void aClosedStreamFreesItsReaderThread() throws IOException {
+		// one thread for every reader: the next file only gets it once close() has stopped the last
+		ExecutorService readers = Executors.newSingleThreadExecutor();
+		try {
+			for (int i = 0; i < 20; i++) {
+				// every other file is closed after one byte, its reader waiting for a free buffer
+				File file = file(i + ".bin", ReadAheadInputStream.BUFFER_SIZE * (i % 2 == 0 ? 2 : ReadAheadInputStream.BUFFERS * 2) + i);
+				ReadAheadInputStream in = new ReadAheadInputStream(file, readers);
+				try {
+					if (i % 2 == 0) {
+						assertArrayEquals(Files.readAllBytes(file.toPath()), readAll(in));
+					}
+					else {
+						in.read();
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+		}
+		finally {
+			readers.shutdown();
+		}
+	}
+}
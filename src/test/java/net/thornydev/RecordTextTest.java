@@ -0,0 +1,106 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.json.XMLTokener;
+import org.junit.Test;
+
+public class RecordTextTest {
+	private static final String[] JSON = {
+		"{\"a\":[1,2.5,\"x\\ty\"],\"b\":{\"c\":null,\"d\":true}}",
+		"{\r\n\"a\":\r\n1,\n\"b\" : [ ]\r}",
+		"{\"a\":1,,}",
+		"{\"a\":\"unterminated",
+		"{\"a\" 1}",
+		"",
+		"[1,2]",
+	};
+
+	private static String outcome(JSONTokener x) {
+		try {
+			return new JSONObject(x).toString();
+		}
+		catch (JSONException e) {
+			return "error: " + e.getMessage();
+		}
+	}
+
+	@Test
+	public void aReusedTokenizerParsesLikeANewJsonTokener() {
+		RecordText.Json reused = new RecordText.Json();
+		for (int round = 0; round < 2; round++) {
+			for (String text : JSON) {
+				assertEquals(text, outcome(new JSONTokener(text)), outcome(reused.reset(text)));
+			}
+		}
+	}
+
+	@Test
+	public void everyTokenizerCallMatches() {
+		Random random = new Random(7);
+		RecordText.Json json = new RecordText.Json();
+		RecordText.Xml xml = new RecordText.Xml();
+		String[] texts = {JSON[0], JSON[1], "<r a=\"1\">\r\n<b>t&amp;x</b><![CDATA[c]]></r>"};
+		for (int round = 0; round < 200; round++) {
+			String text = texts[round % texts.length];
+			JSONTokener expected = (round % 2 == 0 ? new JSONTokener(text) : new XMLTokener(text));
+			JSONTokener actual = (round % 2 == 0 ? json.reset(text) : xml.reset(text));
+			for (int step = 0; step < 30; step++) {
+				String a;
+				String b;
+				switch (random.nextInt(4)) {
+				case 0:
+					a = String.valueOf((int)expected.next());
+					b = String.valueOf((int)actual.next());
+					break;
+				case 1:
+					a = String.valueOf((int)expected.nextClean());
+					b = String.valueOf((int)actual.nextClean());
+					break;
+				case 2:
+					char to = text.charAt(random.nextInt(text.length()));
+					a = String.valueOf((int)expected.skipTo(to));
+					b = String.valueOf((int)actual.skipTo(to));
+					break;
+				default:
+					a = back(expected);
+					b = back(actual);
+				}
+				assertEquals(text + " at step " + step, a, b);
+				assertEquals(expected.toString(), actual.toString());
+				assertEquals(expected.end(), actual.end());
+			}
+		}
+	}
+
+	private static String back(JSONTokener x) {
+		try {
+			x.back();
+			return "back";
+		}
+		catch (JSONException e) {
+			return e.getMessage();
+		}
+	}
+
+	@Test
+	public void aParserSharesRecurringKeysAndRecoversFromHugeStrings() {
+		DocumentParser parser = new DocumentParser(DocumentLimits.DEFAULT);
+		JSONObject first = parser.parseJson("{\"recurring\":1}");
+		String huge = new String(new char[100000]).replace('\0', 'h');
+		assertEquals(huge, parser.parseJson("{\"s\":\"" + huge + "\\n\"}").getString("s").trim());
+		JSONObject second = parser.parseJson("{\"recurring\":\"a\\\"b\"}");
+		assertSame(first.keySet().iterator().next(), second.keySet().iterator().next());
+		assertEquals("a\"b", second.getString("recurring"));
+		assertTrue(new JSONObject(JSON[1]).similar(parser.parseJson(JSON[1])));
+		assertEquals(123456789, parser.parseJson("{\"i\":123456789}").get("i"));
+		assertEquals(1234567890L, ((Number)parser.parseJson("{\"i\":1234567890}").get("i")).longValue());
+	}
+}
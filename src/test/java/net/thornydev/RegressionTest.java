@@ -0,0 +1,43 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The DDL of the sample documents and records, compared with the DDL the tool generated for them
+ * before: the JSON and XML documents with the original single-document code, the records when
+ * -discriminator was added.
+ */
+public class RegressionTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final File samples = TestSupport.resource("regression");
+
+	@Test
+	public void jsonDocument() throws Exception {
+		File output = tmp.newFile("json.ddl");
+		String ddl = TestSupport.run(samples, "-input", "sample.json", "-output", output.getPath(), "-typePaths", "Response", "-metadataTags", "keyData");
+		assertEquals(TestSupport.read(new File(samples, "sample-json.ddl")), ddl);
+	}
+
+	@Test
+	public void xmlDocument() throws Exception {
+		File output = tmp.newFile("xml.ddl");
+		String ddl = TestSupport.run(samples, "-input", "sample.xml", "-output", output.getPath(), "-inputType", "XML",
+				"-typePaths", "Response,Order/Item@sku:x2,Customer/", "-metadataTags", "keyData");
+		assertEquals(TestSupport.read(new File(samples, "sample-xml.ddl")), ddl);
+	}
+
+	@Test
+	public void discriminatedRecords() throws Exception {
+		File output = tmp.newFile("records.ddl");
+		String ddl = TestSupport.run(samples, "-input", "sample-records.json", "-output", output.getPath(), "-discriminator", "type", "-maxTables", "2");
+		assertEquals(TestSupport.read(new File(samples, "sample-records.ddl")), ddl);
+	}
+}
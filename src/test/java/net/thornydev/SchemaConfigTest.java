@@ -0,0 +1,96 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.parse;
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class SchemaConfigTest {
+	@Test
+	public void defaults() {
+		SchemaConfig config = SchemaConfig.builder().build();
+		assertEquals(SchemaConfig.DEFAULT_TABLE_NAME, config.getTableName());
+		assertEquals(SchemaConfig.DEFAULT_ROOT_TAG, config.getRootTag());
+		assertEquals(SchemaConfig.DEFAULT_RESPONSE_TAG, config.getResponseTag());
+		assertEquals(SchemaConfig.DEFAULT_MAX_TABLES, config.getMaxTables());
+		assertFalse(config.isXml());
+		assertFalse(config.isRecords());
+		assertNull(config.getDiscriminator());
+		assertEquals("[Response]", config.getTypePaths().toString());
+	}
+
+	@Test
+	public void readsTheCommandLine() throws Exception {
+		SchemaConfig config = SchemaConfig.fromCommandLine(parse("-tableName", "t", "-inputType", "xml", "-rootTag", "r",
+				"-metadataTags", "a,b", "-typePaths", "x/y,z", "-discriminator", "kind", "-maxTables", "7", "-allTypesString"));
+		assertEquals("t", config.getTableName());
+		assertTrue(config.isXml());
+		assertEquals("r", config.getRootTag());
+		assertEquals("[a, b]", config.getMetadataTags().toString());
+		assertEquals("[x/y, z]", config.getTypePaths().toString());
+		assertEquals("kind", config.getDiscriminator());
+		assertTrue("a discriminator implies records", config.isRecords());
+		assertEquals(7, config.getMaxTables());
+		assertTrue(config.isAllTypesString());
+	}
+
+	@Test
+	public void toBuilderCopiesWithoutSharing() {
+		String[] tags = {"a", "b"};
+		SchemaConfig config = SchemaConfig.builder().tableName("t").metadataTags(tags).build();
+		tags[0] = "changed";
+		assertEquals("[a, b]", config.getMetadataTags().toString());
+		SchemaConfig copy = config.toBuilder().tableName("u").build();
+		assertEquals("u", copy.getTableName());
+		assertEquals("t", config.getTableName());
+		assertEquals(config.getMetadataTags(), copy.getMetadataTags());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void listsAreImmutable() {
+		SchemaConfig.builder().typePaths("a").build().getTypePaths().add("b");
+	}
+
+	@Test
+	public void oneInferencerServesManyThreads() throws Exception {
+		final SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().discriminator("type").build());
+		final String[] records = new String[200];
+		for (int i = 0; i < records.length; i++) {
+			records[i] = record("{\"type\":\"t" + (i % 5) + "\",\"n" + (i % 7) + "\":" + i + "}");
+		}
+		String expected = TestSupport.ddl(inferencer.getConfig(), records);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> ddls = new ArrayList<Future<String>>();
+			for (int t = 0; t < 8; t++) {
+				ddls.add(pool.submit(new Callable<String>() {
+					public String call() {
+						SchemaRouter router = inferencer.newRouter();
+						for (String record : records) {
+							inferencer.addRecord(router, record);
+						}
+						return inferencer.render(router);
+					}
+				}));
+			}
+			for (Future<String> ddl : ddls) {
+				assertEquals(expected, ddl.get());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+}
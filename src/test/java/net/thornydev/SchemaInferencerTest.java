@@ -0,0 +1,64 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+public class SchemaInferencerTest {
+	private static String document(String items) {
+		return "{\"KeyedResponse\":{\"Response\":{\"id\":1,\"items\":" + items + "}}}";
+	}
+
+	private static String nested(int depth) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			sb.append('[');
+		}
+		sb.append('1');
+		for (int i = 0; i < depth; i++) {
+			sb.append(']');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void streamedEntriesGiveTheSchemaOfTheWholeDocument() throws Exception {
+		StringBuilder items = new StringBuilder("[");
+		for (int i = 0; i < 1000; i++) {
+			items.append(i > 0 ? "," : "").append("{\"n\":").append(i).append(i % 10 == 0 ? ",\"x\":{\"y\":\"s\"}" : "").append('}');
+		}
+		String document = document(items.append(']').toString());
+		SchemaInferencer whole = new SchemaInferencer(SchemaConfig.builder().build());
+		SchemaInferencer streaming = new SchemaInferencer(SchemaConfig.builder().streamArray("items").build());
+		SchemaRouter router = streaming.newRouter();
+		streaming.inferStreaming(router, new StringReader(document), 4);
+		assertEquals(whole.render(whole.infer(new BufferedReader(new StringReader(document)))), streaming.render(router));
+	}
+
+	@Test
+	public void deepEntriesNeedNoDeepStack() throws Exception {
+		// runs every entry at once on a new thread whose stack is too small for a recursive walk
+		Executor smallStacks = new Executor() {
+			public void execute(Runnable task) {
+				Thread worker = new Thread(null, task, "small stack", 64 * 1024);
+				worker.start();
+				try {
+					worker.join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		String document = document("[1," + nested(4000) + ",[[2.5]]]");
+		SchemaInferencer whole = new SchemaInferencer(SchemaConfig.builder().limits(DocumentLimits.builder().maxDepth(5000).build()).build());
+		SchemaInferencer streaming = new SchemaInferencer(SchemaConfig.builder().streamArray("items").limits(DocumentLimits.builder().maxDepth(5000).build()).build());
+		SchemaRouter router = streaming.newRouter();
+		streaming.inferStreaming(router, new StringReader(document), 2, smallStacks);
+		assertEquals(whole.render(whole.infer(new BufferedReader(new StringReader(document)))), streaming.render(router));
+	}
+}
@@ -0,0 +1,124 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class SchemaNodeTest {
+	/**
+	 * @return the kinds, counts and paths of the trie, children in name order
+	 */
+	static String describe(SchemaNode node) {
+		StringBuilder sb = new StringBuilder().append(node.getKinds()).append('#').append(node.getCount());
+		if (!node.getChildNames().isEmpty()) {
+			sb.append('{');
+			for (String name : node.getChildNames()) {
+				sb.append(name).append(':').append(describe(node.getChild(name))).append(',');
+			}
+			sb.append('}');
+		}
+		if (node.getElement() != null) {
+			sb.append('[').append(describe(node.getElement())).append(']');
+		}
+		return sb.toString();
+	}
+
+	private static SchemaNode add(String... values) {
+		SchemaNode node = new SchemaNode();
+		for (String value : values) {
+			node.add(new JSONArray("[" + value + "]").get(0));
+		}
+		return node;
+	}
+
+	@Test
+	public void kindsAreWidenedAndReportedAsChanges() {
+		SchemaNode node = new SchemaNode();
+		assertTrue(node.add(1));
+		assertFalse(node.add(2));
+		assertEquals("int", node.scalarType());
+		assertTrue(node.add(2.5));
+		assertEquals("double", node.scalarType());
+		assertTrue(node.add(true));
+		assertEquals("string", node.scalarType());
+		assertTrue(node.add(JSONObject.NULL));
+		assertEquals(SchemaNode.NULL | SchemaNode.BOOLEAN | SchemaNode.INT | SchemaNode.DOUBLE, node.getKinds());
+	}
+
+	@Test
+	public void structFieldsAreSortedCaseInsensitively() {
+		SchemaNode node = add("{\"b\":1,\"A\":{\"c\":\"x\"},\"a2\":null}");
+		assertTrue(node.isStruct());
+		assertEquals("[A, a2, b]", node.getChildNames().toString());
+		assertTrue(node.getChild("A").isStruct());
+		assertFalse(node.add(new JSONObject("{\"b\":2}")));
+		assertTrue(node.add(new JSONObject("{\"d\":2}")));
+	}
+
+	@Test
+	public void singleValuesAtAnArrayPathBelongToTheElement() {
+		SchemaNode arrayFirst = add("{\"a\":[1]}", "{\"a\":2.5}", "{\"a\":null}");
+		SchemaNode singleFirst = add("{\"a\":2.5}", "{\"a\":null}", "{\"a\":[1]}");
+		assertEquals(describe(arrayFirst), describe(singleFirst));
+		SchemaNode a = singleFirst.getChild("a");
+		assertTrue(a.isArray());
+		assertEquals(SchemaNode.ARRAY | SchemaNode.NULL, a.getKinds());
+		assertEquals("double", a.getElement().scalarType());
+		// the array and 2.5 at a, 1 and 2.5 at its element; the null is not counted
+		assertEquals(2, a.getCount());
+		assertEquals(2, a.getElement().getCount());
+	}
+
+	@Test
+	public void mergeIsTheSameAsAddingEverything() {
+		String[] values = {"{\"a\":1,\"b\":[{\"c\":1}]}", "{\"a\":\"x\",\"b\":{\"d\":true}}", "{\"e\":[[1],[2.0]]}", "{\"b\":null}"};
+		SchemaNode all = add(values);
+		SchemaNode first = add(values[0], values[1]);
+		SchemaNode second = add(values[2], values[3]);
+		assertTrue(first.merge(second));
+		assertEquals(describe(all), describe(first));
+		assertFalse(first.merge(add(values[3])));
+	}
+
+	@Test
+	public void mergeIsAssociativeAndCommutative() {
+		String[] values = {"{\"a\":[1],\"b\":null}", "{\"a\":{\"c\":1},\"b\":[\"x\"]}", "{\"a\":null,\"b\":{\"d\":[2.5]}}", "{\"a\":\"s\"}"};
+		String expected = describe(add(values));
+		for (int i = 0; i < values.length; i++) {
+			for (int j = 0; j < values.length; j++) {
+				if (i == j) {
+					continue;
+				}
+				// (i + j) + rest, and rest + (j + i)
+				SchemaNode pair = add(values[i]);
+				pair.merge(add(values[j]));
+				SchemaNode reversed = add(values[j]);
+				reversed.merge(add(values[i]));
+				SchemaNode rest = new SchemaNode();
+				for (int k = 0; k < values.length; k++) {
+					if (k != i && k != j) {
+						rest.merge(add(values[k]));
+					}
+				}
+				SchemaNode left = pair;
+				left.merge(rest);
+				SchemaNode right = rest;
+				right.merge(reversed);
+				assertEquals(expected, describe(left));
+				assertEquals(expected, describe(right));
+			}
+		}
+	}
+
+	@Test
+	public void jsonRoundTripKeepsTheTrie() {
+		SchemaNode node = add("{\"a\":[{\"b\":1}],\"c\":{\"d\":\"x\",\"e\":null}}", "{\"a\":{\"b\":2.5}}");
+		SchemaNode read = SchemaNode.fromJSON(new JSONArray(node.toJSON().toString()));
+		assertEquals(describe(node), describe(read));
+		assertEquals(describe(new SchemaNode()), describe(SchemaNode.fromJSON(new SchemaNode().toJSON())));
+	}
+}
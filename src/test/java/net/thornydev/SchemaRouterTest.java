@@ -0,0 +1,69 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class SchemaRouterTest {
+	private static List<String> names(SchemaRouter router) {
+		List<String> names = new ArrayList<String>();
+		for (TableAccumulator table : router.getTables()) {
+			names.add(table.getTableName() + ":" + table.getRecords());
+		}
+		return names;
+	}
+
+	/**
+	 * Adds a record whose template is its whole response object.
+	 */
+	private static void add(SchemaRouter router, String response) {
+		JSONObject respRoot = new JSONObject(response);
+		router.add(respRoot, new JSONObject().put("Response", respRoot), Collections.<String>emptyList());
+	}
+
+	@Test
+	public void routesEveryValueToItsOwnTable() {
+		SchemaRouter router = new SchemaRouter("events", "type", 2);
+		add(router, "{\"type\":\"click\",\"x\":1}");
+		add(router, "{\"type\":\"view\",\"page\":\"a\"}");
+		add(router, "{\"type\":\"click\",\"x\":2}");
+		assertEquals("[events_click:2, events_view:1]", names(router).toString());
+	}
+
+	@Test
+	public void valuesBeyondMaxTablesAndMissingValuesGoToOther() {
+		SchemaRouter router = new SchemaRouter("events", "type", 2);
+		add(router, "{\"type\":\"a\"}");
+		add(router, "{\"type\":\"b\"}");
+		add(router, "{\"type\":\"c\"}");
+		add(router, "{\"other\":1}");
+		add(router, "{\"type\":{\"nested\":true}}");
+		assertEquals("[events_a:1, events_b:1, events_other:3]", names(router).toString());
+		assertEquals(1, router.getOverflowRecords());
+	}
+
+	@Test
+	public void valuesAreSanitizedIntoTableNames() {
+		SchemaRouter router = new SchemaRouter("events", "type", 2);
+		add(router, "{\"type\":\"Page-View 2\"}");
+		assertEquals("[events_page_view_2:1]", names(router).toString());
+	}
+
+	@Test
+	public void mergeKeepsTheTableLimit() {
+		SchemaRouter first = new SchemaRouter("events", "type", 2);
+		add(first, "{\"type\":\"a\"}");
+		add(first, "{\"type\":\"b\"}");
+		SchemaRouter second = new SchemaRouter("events", "type", 2);
+		add(second, "{\"type\":\"c\"}");
+		add(second, "{\"type\":\"a\"}");
+		first.merge(second);
+		assertEquals("[events_a:2, events_b:1, events_other:1]", names(first).toString());
+		assertEquals(1, first.getOverflowRecords());
+	}
+}
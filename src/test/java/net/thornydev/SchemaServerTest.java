@@ -0,0 +1,172 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SchemaServerTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private SchemaServer server;
+	private Thread serving;
+	private String token;
+
+	@Before
+	public void start() throws IOException {
+		File tokenFile = new File(tmp.getRoot(), "private/server.token");
+		server = new SchemaServer(0, 2, tokenFile);
+		token = TestSupport.read(tokenFile);
+		serving = new Thread(new Runnable() {
+			public void run() {
+				try {
+					server.serve();
+				}
+				catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		});
+		serving.start();
+	}
+
+	@After
+	public void shutDown() throws Exception {
+		SchemaClient.send(server.getPort(), new JSONObject().put("token", token).put("command", "shutdown"));
+		serving.join(10000);
+	}
+
+	private JSONObject request(String token, File output) {
+		JSONArray args = new JSONArray().put("-input").put("sample.json").put("-output").put(output.getPath())
+				.put("-typePaths").put("Response").put("-metadataTags").put("keyData");
+		return new JSONObject().put("token", token).put("args", args).put("cwd", TestSupport.resource("regression").getPath());
+	}
+
+	@Test
+	public void theTokenFileIsPrivate() throws IOException {
+		File tokenFile = new File(tmp.getRoot(), "private/server.token");
+		assertEquals(64, token.length());
+		if (tokenFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+			assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.getParentFile().toPath())));
+		}
+	}
+
+	@Test
+	public void requestsWithTheTokenAreServed() throws Exception {
+		File output = new File(tmp.getRoot(), "out.ddl");
+		JSONObject reply = SchemaClient.send(server.getPort(), request(token, output));
+		String expected = TestSupport.read(new File(TestSupport.resource("regression"), "sample-json.ddl"));
+		assertEquals(expected, reply.getString("ddl"));
+		assertEquals(expected, TestSupport.read(output));
+	}
+
+	@Test
+	public void requestsWithoutTheTokenAreRefused() throws Exception {
+		File output = new File(tmp.getRoot(), "out.ddl");
+		JSONObject reply = SchemaClient.send(server.getPort(), request("not the token", output));
+		assertTrue(reply.getString("error"), reply.getString("error").contains("token"));
+		reply = SchemaClient.send(server.getPort(), new JSONObject().put("command", "shutdown"));
+		assertTrue(reply.has("error"));
+		assertFalse(output.exists());
+	}
+
+	@Test
+	public void idleConnectionsAreDropped() throws IOException {
+		server.setReadTimeout(200);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		try {
+			socket.setSoTimeout(10000);
+			assertEquals(-1, socket.getInputStream().read());
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void slowRequestsAreDroppedAtTheDeadline() throws Exception {
+		server.setReadTimeout(500);
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+		long start = System.currentTimeMillis();
+		try {
+			// one byte every 50 ms never trips a per-read timeout
+			OutputStream out = socket.getOutputStream();
+			while (System.currentTimeMillis() - start < 10000) {
+				out.write('x');
+				out.flush();
+				Thread.sleep(50);
+			}
+			fail("the connection was kept open for 10 seconds");
+		}
+		catch (IOException e) {
+			assertTrue("dropped after " + (System.currentTimeMillis() - start) + " ms", System.currentTimeMillis() - start < 5000);
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void requestsOverTheLengthLimitAreRefused() throws Exception {
+		server.setMaxRequestLength(1000);
+		StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			padding.append('x');
+		}
+		JSONObject reply = SchemaClient.send(server.getPort(), new JSONObject().put("token", token).put("padding", padding));
+		assertTrue(reply.getString("error"), reply.getString("error").contains("longer than 1000 bytes"));
+		File output = new File(tmp.getRoot(), "out.ddl");
+		assertTrue("shorter requests are still served", SchemaClient.send(server.getPort(), request(token, output)).has("ddl"));
+	}
+
+	@Test
+	public void theClientReportsAConnectionClosedWithoutAReply() throws IOException {
+		final ServerSocket closing = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+		Thread accepting = new Thread(new Runnable() {
+			public void run() {
+				try {
+					// reads the request, then hangs up
+					Socket socket = closing.accept();
+					new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+					socket.close();
+				}
+				catch (IOException e) {
+					// the test fails on the client side
+				}
+			}
+		});
+		accepting.start();
+		try {
+			SchemaClient.send(closing.getLocalPort(), new JSONObject().put("token", token).put("command", "shutdown"));
+			fail("no reply was sent");
+		}
+		catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("closed the connection without replying"));
+		}
+		finally {
+			closing.close();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SchemaSnapshotsTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static final SchemaConfig CONFIG = SchemaConfig.builder().records(true).build();
+
+	private static String records(int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(record("{\"id\":" + i + ",\"f" + (i / 10) + "\":1}")).append('\n');
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void theFileHoldsTheLatestSnapshot() throws Exception {
+		File file = new File(tmp.getRoot(), "snapshot.ddl");
+		SchemaSnapshots snapshots = new SchemaSnapshots(10, file);
+		SchemaInferencer inferencer = new SchemaInferencer(CONFIG);
+		SchemaRouter router = inferencer.newRouter();
+		inferencer.infer(router, "stdin", new BufferedReader(new StringReader(records(25))), Shard.ALL, new InferenceBudget(), snapshots);
+		assertEquals(2, snapshots.getSnapshots());
+		String snapshot = TestSupport.read(file);
+		assertTrue(snapshot, snapshot.startsWith("-- schema snapshot 2 after 20 records\n"));
+		// f0 and f1 by record 20, f2 only after it
+		assertTrue(snapshot, snapshot.contains("f1:int"));
+		assertFalse(snapshot, snapshot.contains("f2:int"));
+		assertFalse(new File(tmp.getRoot(), "snapshot.ddl.tmp").exists());
+	}
+
+	@Test
+	public void snapshotsAreAtLeastOneRecordApart() {
+		try {
+			new SchemaSnapshots(0, null);
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void standardInputGivesTheSameSchemaAsTheFile() throws Exception {
+		String text = records(500);
+		File file = TestSupport.write(tmp.newFile("records.json"), text);
+		InputStream in = System.in;
+		String fromStdin;
+		try {
+			System.setIn(new ByteArrayInputStream(text.getBytes("UTF-8")));
+			fromStdin = TestSupport.run(tmp.getRoot(), "-input", "-", "-output", "-", "-records", "-snapshotEvery", "100", "-snapshot", "s.ddl");
+		}
+		finally {
+			System.setIn(in);
+		}
+		assertEquals(TestSupport.run(tmp.getRoot(), "-input", file.getName(), "-output", "out.ddl", "-records"), fromStdin);
+		assertFalse(new File(tmp.getRoot(), "-").exists());
+		assertTrue(TestSupport.read(new File(tmp.getRoot(), "s.ddl")).startsWith("-- schema snapshot 5 after 500 records\n"));
+	}
+
+	@Test
+	public void standardInputIsTheOnlyInput() throws Exception {
+		File file = TestSupport.write(tmp.newFile("records.json"), records(1));
+		try {
+			TestSupport.run(tmp.getRoot(), "-input", "-," + file.getName(), "-output", "-", "-records");
+			fail();
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShapeCountsTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static TableAccumulator table(int maxShapes, String... templates) {
+		TableAccumulator table = new TableAccumulator("t", maxShapes);
+		for (String template : templates) {
+			table.add(new JSONObject(template), Collections.<String>emptyList());
+		}
+		return table;
+	}
+
+	@Test
+	public void recordsWithTheSameShapeAreCountedTogether() {
+		TableAccumulator table = table(4, "{\"a\":1,\"b\":\"x\"}", "{\"b\":\"y\",\"a\":2}", "{\"a\":3,\"b\":[1,2]}", "{\"a\":4,\"b\":\"z\"}");
+		assertEquals(4, table.getRecords());
+		assertEquals(2, table.getShapes().getShapes());
+		assertEquals(3L, (long)table.getShapes().getCountsByRecords().get(0).getValue());
+		assertEquals(1L, (long)table.getShapes().getCountsByRecords().get(1).getValue());
+	}
+
+	@Test
+	public void keysWithTheSameStringHashCodeAreDifferentShapes() {
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		assertNotEquals(ShapeFingerprint.of(new JSONObject("{\"Aa\":1}")), ShapeFingerprint.of(new JSONObject("{\"BB\":1}")));
+		assertEquals(2, table(4, "{\"Aa\":1}", "{\"BB\":1}").getShapes().getShapes());
+	}
+
+	@Test
+	public void shapesBeyondTheLimitAreOnlyCountedInTotal() {
+		TableAccumulator table = table(2, "{\"a\":1}", "{\"b\":1}", "{\"c\":1}", "{\"a\":2}", "{\"d\":1}");
+		assertEquals(2, table.getShapes().getShapes());
+		assertEquals(2, table.getShapes().getUncountedRecords());
+		assertTrue(table.getSchema().getChild("d") != null);
+
+		TableAccumulator merged = table(2, "{\"c\":1}");
+		merged.merge(table);
+		assertEquals(2, merged.getShapes().getShapes());
+		assertEquals(3, merged.getShapes().getUncountedRecords());
+	}
+
+	@Test
+	public void shapesAreOnlyCountedForAReport() throws Exception {
+		assertNull(table(0, "{\"a\":1}").getShapes());
+		assertEquals(0, SchemaConfig.fromCommandLine(TestSupport.parse("-records")).getMaxShapes());
+		assertEquals(ShapeCounts.DEFAULT_MAX_SHAPES, SchemaConfig.fromCommandLine(TestSupport.parse("-records", "-report", "-")).getMaxShapes());
+
+		TestSupport.write(new File(tmp.getRoot(), "in.json"), TestSupport.record("{\"a\":1}") + "\n" + TestSupport.record("{\"a\":2}") + "\n" + TestSupport.record("{\"b\":true}") + "\n");
+		File report = new File(tmp.getRoot(), "report.txt");
+		TestSupport.run(tmp.getRoot(), "-input", "in.json", "-output", "out.ddl", "-records", "-report", report.getPath());
+		String text = TestSupport.read(report);
+		assertTrue(text, text.contains("distinct shapes counted: 2"));
+		assertTrue(text, text.matches("(?s).*shape [0-9a-f]{16}: 2 records \\(66\\.67%\\).*"));
+		assertFalse(text, text.contains("beyond -maxShapes"));
+	}
+}
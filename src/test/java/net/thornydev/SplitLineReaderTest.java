@@ -0,0 +1,140 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SplitLineReaderTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private static List<String> read(File file, long start, long end) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		SplitLineReader reader = new SplitLineReader(file, start, end, DocumentLimits.DEFAULT);
+		try {
+			for (String line = reader.next(); line != null; line = reader.next()) {
+				lines.add(line);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	private static String repeat(char c, int n) {
+		char[] chars = new char[n];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	@Test
+	public void everyLineBelongsToExactlyOneSplitWhereverTheBoundaryFalls() throws IOException {
+		File file = TestSupport.write(tmp.newFile("lines.json"), "a\n\nbb\r\nccc\n\u00e9\u00e9\ndddd");
+		List<String> expected = Arrays.asList("a", "", "bb", "ccc", "\u00e9\u00e9", "dddd");
+		long length = file.length();
+		for (long cut = 0; cut <= length; cut++) {
+			List<String> lines = read(file, 0, cut);
+			lines.addAll(read(file, cut, length));
+			assertEquals("cut at " + cut, expected, lines);
+		}
+	}
+
+	@Test
+	public void moreSplitsThanBytesReadEveryLineOnce() throws IOException {
+		File file = TestSupport.write(tmp.newFile("tiny.json"), "a\nb");
+		long[] b = SplitLineReader.boundaries(0, file.length(), 8);
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 8; i++) {
+			lines.addAll(read(file, b[i], b[i + 1]));
+		}
+		assertEquals(Arrays.asList("a", "b"), lines);
+	}
+
+	@Test
+	public void linesLongerThanTheBufferAreRead() throws IOException {
+		String longLine = repeat('x', SplitLineReader.BUFFER_SIZE * 2 + 17);
+		File file = TestSupport.write(tmp.newFile("long.json"), "a\n" + longLine + "\nb\n");
+		for (int n = 1; n <= 7; n++) {
+			long[] b = SplitLineReader.boundaries(0, file.length(), n);
+			assertEquals(n + 1, b.length);
+			List<String> lines = new ArrayList<String>();
+			for (int i = 0; i < n; i++) {
+				lines.addAll(read(file, b[i], b[i + 1]));
+			}
+			assertEquals(n + " splits", Arrays.asList("a", longLine, "b"), lines);
+		}
+	}
+
+	@Test
+	public void aLineOverTheSizeLimitIsSkipped() throws IOException {
+		File file = TestSupport.write(tmp.newFile("limit.json"), "ok\n" + repeat('x', 100) + "\nnext\n");
+		SplitLineReader reader = new SplitLineReader(file, 0, file.length(), DocumentLimits.builder().maxDocumentSize(10).build());
+		try {
+			assertEquals("ok", reader.next());
+			try {
+				reader.next();
+				fail("the line is over the limit");
+			}
+			catch (JSONException e) {
+				assertEquals(3, reader.getLineStart());
+			}
+			assertEquals("next", reader.next());
+			assertNull(reader.next());
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void aLineTooLongForAnArrayIsSkippedWithoutALimit() throws IOException {
+		File file = TestSupport.write(tmp.newFile("huge.json"), "ok\n" + repeat('x', 100) + "\nnext\n");
+		SplitLineReader reader = new SplitLineReader(file, 0, file.length(), DocumentLimits.DEFAULT, 64);
+		try {
+			assertEquals("ok", reader.next());
+			try {
+				reader.next();
+				fail("the line does not fit");
+			}
+			catch (JSONException e) {
+				assertEquals("The line at byte 3 is longer than the limit of 64 characters", e.getMessage());
+			}
+			assertEquals("next", reader.next());
+			assertNull(reader.next());
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void splitsInferTheSameSchemaAsOneReader() throws IOException {
+		StringBuilder records = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			records.append(record("{\"id\":" + i + ",\"f" + (i % 13) + "\":" + (i % 2 == 0 ? "1" : "\"s\"") + "}")).append('\n');
+		}
+		File file = TestSupport.write(tmp.newFile("records.json"), records.toString());
+		SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().records(true).build());
+		String one = inferencer.render(inferencer.infer(file, 0, file.length(), 1, 1, new InferenceBudget()));
+		String many = inferencer.render(inferencer.infer(file, 0, file.length(), 7, 3, new InferenceBudget()));
+		assertEquals(one, many);
+		long total = 0;
+		for (TableAccumulator table : inferencer.infer(file, 0, file.length(), 7, 3, new InferenceBudget()).getTables()) {
+			total += table.getRecords();
+		}
+		assertEquals(500, total);
+	}
+}
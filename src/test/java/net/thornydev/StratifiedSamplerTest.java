@@ -0,0 +1,88 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class StratifiedSamplerTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().records(true).build());
+	private List<File> files;
+
+	private File records(String path, String field, int n) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(record(String.format("{\"id\":\"%03d\",\"%s\":1}", i, field))).append('\n');
+		}
+		return TestSupport.write(new File(tmp.getRoot(), path), sb.toString());
+	}
+
+	@Before
+	public void partitions() throws IOException {
+		// records of one size: dt=1 holds three times as much as dt=2, and only dt=2 has the field "later"
+		files = Arrays.asList(records("in/dt=1/a.json", "early", 300), records("in/dt=1/b.json", "early", 300),
+				records("in/dt=2/a.json", "later", 200));
+	}
+
+	@Test
+	public void filesAreGroupedByPartition() {
+		assertEquals("dt=1", StratifiedSampler.partition(files.get(0)));
+		assertEquals("dt=2/hour=3", StratifiedSampler.partition(new File("in/dt=2/hour=3/x.json")));
+		assertEquals("", StratifiedSampler.partition(new File("in/x.json")));
+		assertTrue(StratifiedSampler.hasPartitions(files));
+	}
+
+	@Test
+	public void everyPartitionGetsItsShareOfTheSample() throws IOException {
+		StratifiedSampler proportional = new StratifiedSampler(inferencer, files, true, true);
+		SchemaRouter router = proportional.sample(100, 0, 0, new InferenceBudget(), 2);
+		// 75 from the 600 records of dt=1, 25 from the 200 of dt=2
+		assertEquals(100, router.getRecords());
+		assertTrue(inferencer.render(router).contains("later:int"));
+		assertEquals("record budget of 75 reached in 1 of 2 strata, record budget of 25 reached in 1 of 2 strata", proportional.getStopReason());
+
+		StratifiedSampler even = new StratifiedSampler(inferencer, files, true, false);
+		assertEquals(100, even.sample(100, 0, 0, new InferenceBudget(), 2).getRecords());
+		assertEquals("record budget of 50 reached in 2 of 2 strata", even.getStopReason());
+	}
+
+	@Test
+	public void strataThatReadToTheEndAreNotStopped() throws IOException {
+		StratifiedSampler sampler = new StratifiedSampler(inferencer, files, false, false);
+		assertEquals(800, sampler.sample(3000, 0, 0, new InferenceBudget(), 2).getRecords());
+		assertEquals(null, sampler.getStopReason());
+	}
+
+	@Test
+	public void theRunsTimeBudgetStopsEveryStratum() throws Exception {
+		InferenceBudget budget = new InferenceBudget(0, 0, 1, 0);
+		Thread.sleep(20);
+		StratifiedSampler sampler = new StratifiedSampler(inferencer, files, false, false);
+		SchemaRouter router = sampler.sample(3000, 0, 0, budget, 2);
+		// every stratum stops at its first record
+		assertTrue(router.getRecords() + " records", router.getRecords() <= 3);
+		assertEquals("time budget reached", budget.getStopReason());
+		assertEquals("time budget reached in 3 of 3 strata", sampler.getStopReason());
+	}
+
+	@Test
+	public void theReportSaysTheQuotasStoppedReading() throws Exception {
+		File report = new File(tmp.getRoot(), "report.txt");
+		TestSupport.run(tmp.getRoot(), "-input", "in", "-output", "out.ddl", "-records", "-sampleRecords", "100", "-report", report.getPath());
+		String text = TestSupport.read(report);
+		assertTrue(text, text.contains("record budget of 75 reached in 1 of 2 strata"));
+		assertTrue(text, text.contains("stopped: record budget of 25 reached"));
+	}
+}
@@ -0,0 +1,106 @@
+package net.thornydev;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TaskGroupTest {
+	private final ExecutorService pool = Executors.newFixedThreadPool(1);
+
+	@After
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	@Test(timeout = 10000)
+	public void nestedGroupsOnOneThreadFinish() throws Exception {
+		final TaskGroup<Integer> outer = new TaskGroup<Integer>(pool, 1);
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 3; i++) {
+			final int n = i;
+			results.add(outer.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					TaskGroup<Integer> inner = new TaskGroup<Integer>(pool, 1);
+					List<Future<Integer>> parts = new ArrayList<Future<Integer>>();
+					try {
+						for (int j = 0; j < 4; j++) {
+							final int part = j;
+							parts.add(inner.submit(new Callable<Integer>() {
+								public Integer call() {
+									return n * 10 + part;
+								}
+							}));
+						}
+						inner.join("adding");
+						int sum = 0;
+						for (Future<Integer> f : parts) {
+							sum += f.get();
+						}
+						return sum;
+					}
+					finally {
+						inner.close();
+					}
+				}
+			}));
+		}
+		outer.join("adding");
+		outer.close();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i * 40 + 6, (int)results.get(i).get());
+		}
+	}
+
+	@Test
+	public void theFirstFailureCancelsTheTasksNotStarted() throws Exception {
+		TaskGroup<Void> group = new TaskGroup<Void>(null, 1);
+		final AtomicInteger ran = new AtomicInteger();
+		final IOException failure = new IOException("bad");
+		List<Future<Void>> tasks = new ArrayList<Future<Void>>();
+		try {
+			tasks.add(group.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					throw failure;
+				}
+			}));
+			for (int i = 0; i < 100; i++) {
+				tasks.add(group.submit(new Callable<Void>() {
+					public Void call() {
+						ran.incrementAndGet();
+						return null;
+					}
+				}));
+			}
+			group.join("testing");
+			fail();
+		}
+		catch (IOException e) {
+			assertSame(failure, e);
+		}
+		finally {
+			group.close();
+		}
+		assertTrue(ran.get() + " ran", ran.get() < 100);
+		assertTrue(tasks.get(tasks.size() - 1).isCancelled());
+		try {
+			group.checkFailure();
+			fail();
+		}
+		catch (IOException e) {
+			assertSame(failure, e);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package net.thornydev;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Helpers shared by the tests: test resources, small files and command line runs.
+ */
+final class TestSupport {
+	private TestSupport() {}
+
+	/**
+	 * @return a file or directory under src/test/resources
+	 */
+	static File resource(String path) {
+		try {
+			return new File(TestSupport.class.getResource("/" + path).toURI());
+		}
+		catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+	}
+
+	static File write(File file, String text) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+
+	static CommandLine parse(String... args) throws ParseException {
+		return new DefaultParser().parse(JsonHiveSchema.options(), args);
+	}
+
+	/**
+	 * Runs the tool as the command line would, relative file names resolved against <code>baseDir</code>.
+	 */
+	static String run(File baseDir, String... args) throws Exception {
+		return JsonHiveSchema.run(parse(args), baseDir);
+	}
+
+	/**
+	 * @return one JSON record with the default root and response tags around <code>response</code>
+	 */
+	static String record(String response) {
+		return "{\"KeyedResponse\":{\"Response\":" + response + "}}";
+	}
+
+	/**
+	 * @return the DDL of the records, inferred with the config
+	 */
+	static String ddl(SchemaConfig config, String... records) {
+		SchemaInferencer inferencer = new SchemaInferencer(config);
+		SchemaRouter router = inferencer.newRouter();
+		for (String record : records) {
+			inferencer.addRecord(router, record);
+		}
+		return inferencer.render(router);
+	}
+}
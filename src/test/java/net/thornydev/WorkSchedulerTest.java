@@ -0,0 +1,100 @@
+package net.thornydev;
+
+import static net.thornydev.TestSupport.record;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.JSONException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkSchedulerTest {
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	private final SchemaInferencer inferencer = new SchemaInferencer(SchemaConfig.builder().records(true).build());
+
+	private static String records(int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(record("{\"id\":" + i + "}")).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private File gzip(String name, byte[] data) throws IOException {
+		File file = tmp.newFile(name);
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+		try {
+			out.write(data);
+		}
+		finally {
+			out.close();
+		}
+		return file;
+	}
+
+	@Test
+	public void aGzippedFileCountsWithItsUncompressedSize() throws IOException {
+		byte[] text = records(5000).getBytes("UTF-8");
+		File gz = gzip("records.json.gz", text);
+		assertTrue(gz.length() < text.length / 10);
+		assertEquals(text.length, ReadAheadInputStream.uncompressedLength(gz));
+
+		// incompressible: the trailer gives a little less than the file, which is no wrap around
+		byte[] noise = new byte[100000];
+		new Random(1).nextBytes(noise);
+		assertEquals(noise.length, ReadAheadInputStream.uncompressedLength(gzip("noise.gz", noise)));
+
+		File plain = TestSupport.write(tmp.newFile("records.json"), records(10));
+		assertEquals(plain.length(), ReadAheadInputStream.uncompressedLength(plain));
+	}
+
+	@Test
+	public void gzippedFilesAreInferredWhole() throws IOException {
+		List<File> files = new ArrayList<File>();
+		files.add(gzip("a.json.gz", records(3000).getBytes("UTF-8")));
+		files.add(TestSupport.write(tmp.newFile("b.json"), records(3000)));
+		WorkScheduler scheduler = new WorkScheduler(inferencer, 2, 1 << 20, 4096);
+		assertEquals(6000, scheduler.run(files, new InferenceBudget()).getRecords());
+	}
+
+	@Test
+	public void theFirstFailureEndsTheRun() throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 100; i++) {
+			files.add(TestSupport.write(tmp.newFile("good" + i + ".json"), records(200)));
+		}
+		// the biggest file, so it runs first
+		files.add(TestSupport.write(tmp.newFile("bad.json"), "not json\n" + records(1000)));
+		final AtomicLong spent = new AtomicLong();
+		InferenceBudget counting = new InferenceBudget() {
+			@Override
+			public boolean spend(long length, SchemaRouter router) {
+				spent.incrementAndGet();
+				return super.spend(length, router);
+			}
+		};
+		WorkScheduler scheduler = new WorkScheduler(inferencer, 1, 1L << 30, 1L << 30);
+		try {
+			scheduler.run(files, counting);
+			fail("the bad record was accepted");
+		}
+		catch (JSONException e) {
+			// the units still queued were dropped, only those the thread took before that ran
+			assertTrue(spent.get() + " records", spent.get() < 10000);
+		}
+	}
+}